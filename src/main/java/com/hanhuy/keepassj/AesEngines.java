@@ -4,7 +4,18 @@ import org.bouncycastle.crypto.BlockCipher;
 import org.bouncycastle.crypto.engines.AESEngine;
 import org.bouncycastle.crypto.params.KeyParameter;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author pfnguyen
@@ -37,37 +48,177 @@ public class AesEngines {
         return keyTransformer.transformKey(key, seed, rounds);
     }
 
+    public static KeyTransformer getKeyTransformer() {
+        return keyTransformer;
+    }
+
     public static void setKeyTransformer(KeyTransformer transformer) {
+        if (transformer == null) throw new IllegalArgumentException("transformer");
         keyTransformer = transformer;
     }
 
-    private static KeyTransformer keyTransformer = new KeyTransformer() {
+    /**
+     * Transforms both 16-byte halves of the key on the calling thread,
+     * using the engine from {@link #createAesEngine()}.
+     */
+    public static final KeyTransformer SEQUENTIAL_KEY_TRANSFORMER = new KeyTransformer() {
         @Override
         public boolean transformKey(byte[] key, byte[] seed, long rounds) {
-            byte[] pbIV = new byte[16];
-            Arrays.fill(pbIV, (byte) 0);
+            BlockCipher engine = createTransformEngine(seed);
+            for (long i = 0; i < rounds; ++i) {
+                engine.processBlock(key, 0, key, 0);
+                engine.processBlock(key, 16, key, 16);
+            }
 
-            try {
-                BlockCipher engine = AesEngines.createAesEngine();
-                engine.init(true, new KeyParameter(seed));
-                if (engine.getBlockSize() != (128 / 8)) // AES block size
-                {
-                    assert false;
-                    throw new RuntimeException();
+            return true;
+        }
+    };
+
+    /**
+     * Transforms the two halves of the key concurrently, each with its
+     * own engine from {@link #createAesEngine()}. The halves are
+     * independent, so the result equals the sequential transformation.
+     */
+    public static final KeyTransformer PARALLEL_KEY_TRANSFORMER = new ParallelKeyTransformer() {
+        @Override
+        protected void transformHalf(byte[] key, int offset, byte[] seed, long rounds)
+                throws InterruptedException {
+            BlockCipher engine = createTransformEngine(seed);
+            for (long i = 0; i < rounds; ++i) {
+                checkInterrupted(i);
+                engine.processBlock(key, offset, key, offset);
+            }
+        }
+    };
+
+    /**
+     * Like {@link #PARALLEL_KEY_TRANSFORMER}, but using the JCE
+     * "AES/ECB/NoPadding" cipher, which is backed by AES-NI instructions
+     * on most HotSpot VMs. Returns <code>false</code> if the JCE provider
+     * does not support AES-256.
+     */
+    public static final KeyTransformer JCE_KEY_TRANSFORMER = new ParallelKeyTransformer() {
+        @Override
+        protected void transformHalf(byte[] key, int offset, byte[] seed, long rounds)
+                throws Exception {
+            Cipher c = Cipher.getInstance("AES/ECB/NoPadding");
+            c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(seed, "AES"));
+            for (long i = 0; i < rounds; ++i) {
+                checkInterrupted(i);
+                c.update(key, offset, 16, key, offset);
+            }
+        }
+    };
+
+    private static KeyTransformer keyTransformer =
+            (Runtime.getRuntime().availableProcessors() > 1) ?
+                    PARALLEL_KEY_TRANSFORMER : SEQUENTIAL_KEY_TRANSFORMER;
+
+    private static BlockCipher createTransformEngine(byte[] seed) {
+        BlockCipher engine = AesEngines.createAesEngine();
+        engine.init(true, new KeyParameter(seed));
+        if (engine.getBlockSize() != (128 / 8)) // AES block size
+        {
+            assert false;
+            throw new RuntimeException();
+        }
+        return engine;
+    }
+
+    /**
+     * Throws if the current thread has been interrupted. Only checks
+     * every 4096 rounds, such that a canceled transformation stops
+     * within a few milliseconds.
+     */
+    private static void checkInterrupted(long round) throws InterruptedException {
+        if (((round & 0xFFF) == 0) && Thread.interrupted())
+            throw new InterruptedException();
+    }
+
+    private static ExecutorService transformExecutor = null;
+
+    private static synchronized ExecutorService getTransformExecutor() {
+        if (transformExecutor == null) {
+            transformExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "keepassj-key-transform");
+                    t.setDaemon(true);
+                    return t;
                 }
+            });
+        }
+        return transformExecutor;
+    }
 
-//                IvParameterSpec ivspec = new IvParameterSpec(pbIV);
-//                SecretKeySpec key = new SecretKeySpec(pbKeySeed32, "AES");
-//                c.init(Cipher.ENCRYPT_MODE, key, ivspec);
+    /**
+     * Transforms the upper half of the key on a pooled thread and the
+     * lower half on the calling thread.
+     */
+    private static abstract class ParallelKeyTransformer implements KeyTransformer {
+        protected abstract void transformHalf(byte[] key, int offset, byte[] seed,
+                                              long rounds) throws Exception;
 
-                for (long i = 0; i < rounds; ++i) {
-                    engine.processBlock(key, 0, key, 0);
-                    engine.processBlock(key, 16, key, 16);
+        @Override
+        public boolean transformKey(final byte[] key, final byte[] seed, final long rounds) {
+            // Each half is transformed in a private copy, such that the
+            // threads never write to the same array
+            final byte[] upper = Arrays.copyOfRange(key, 16, 32);
+            final AtomicBoolean started = new AtomicBoolean();
+            final CountDownLatch done = new CountDownLatch(1);
+            Future<?> f = getTransformExecutor().submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    // Abandoned by the caller before it could start
+                    if (!started.compareAndSet(false, true)) return null;
+                    try {
+                        transformHalf(upper, 0, seed, rounds);
+                    } finally {
+                        done.countDown();
+                    }
+                    return null;
                 }
-//                engine.doFinal();
-            } catch (Exception e) { throw new RuntimeException(e); }
+            });
+
+            try {
+                transformHalf(key, 0, seed, rounds);
+                f.get();
+                System.arraycopy(upper, 0, key, 16, 16);
+            } catch (ExecutionException e) {
+                if (isUnsupported(e.getCause())) return false;
+                throw new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+                f.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (Exception e) {
+                f.cancel(true);
+                if (isUnsupported(e)) return false;
+                throw new RuntimeException(e);
+            } finally {
+                // A canceled worker may still be writing to upper
+                if (!started.compareAndSet(false, true)) awaitUninterruptibly(done);
+                MemUtil.ZeroByteArray(upper);
+            }
 
             return true;
         }
-    };
+
+        private static void awaitUninterruptibly(CountDownLatch latch) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        private static boolean isUnsupported(Throwable t) {
+            return (t instanceof GeneralSecurityException);
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package com.hanhuy.keepassj;
+/*
+  KeePass Password Safe - The Open-Source Password Manager
+  Copyright (C) 2003-2014 Dominik Reichl <dominik.reichl@t-online.de>
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+import java.util.Arrays;
+import java.util.Locale;
+
+	/// <summary>
+	/// Precompiled case-insensitive substring search (Boyer-Moore-Horspool
+	/// on case-folded characters). <c>Find(str)</c> returns the same as
+	/// <c>str.toLowerCase().contains(strTerm.toLowerCase())</c>, without
+	/// creating a lower-case copy of <c>str</c>.
+	/// Instances are immutable and can be used concurrently.
+	/// </summary>
+	final class CaseFoldingMatcher
+	{
+		private final String m_strLower;
+		private final char[] m_vPattern;
+		// Shift per bucket (low 8 bits) of the case-folded text character
+		private final int[] m_vShift = new int[256];
+		// Locales whose lower-case mappings are not per character
+		private final boolean m_bSpecialLocale;
+
+		public CaseFoldingMatcher(String strTerm)
+		{
+			if(strTerm == null) throw new IllegalArgumentException("strTerm");
+
+			m_strLower = strTerm.toLowerCase();
+			m_vPattern = m_strLower.toCharArray();
+
+			m_bSpecialLocale = IsSpecialLocale();
+
+			int m = m_vPattern.length;
+			Arrays.fill(m_vShift, Math.max(m, 1));
+			for(int k = 0; k < (m - 1); ++k)
+				m_vShift[m_vPattern[k] & 0xFF] = m - 1 - k;
+		}
+
+		/// <summary>
+		/// Test whether the lower-case mappings of the default locale
+		/// differ from the per-character ones (Turkish, Azerbaijani and
+		/// Lithuanian).
+		/// </summary>
+		static boolean IsSpecialLocale()
+		{
+			String strLang = Locale.getDefault().getLanguage();
+			return (strLang.equals("tr") || strLang.equals("az") ||
+				strLang.equals("lt"));
+		}
+
+		public boolean Find(CharSequence str)
+		{
+			int m = m_vPattern.length;
+			if(m == 0) return true;
+			int n = str.length();
+
+			if(m_bSpecialLocale || !IsFoldable(str))
+				return str.toString().toLowerCase().contains(m_strLower);
+
+			int i = 0;
+			while(i <= (n - m))
+			{
+				char chLast = Fold(str.charAt(i + m - 1));
+				if(chLast == m_vPattern[m - 1])
+				{
+					int j = m - 2;
+					while((j >= 0) && (Fold(str.charAt(i + j)) == m_vPattern[j])) --j;
+					if(j < 0) return true;
+				}
+
+				i += m_vShift[chLast & 0xFF];
+			}
+
+			return false;
+		}
+
+		// String.toLowerCase maps every character on its own, except for
+		// U+0130 (two characters), the final sigma (context-dependent)
+		// and supplementary characters
+		private static boolean IsFoldable(CharSequence str)
+		{
+			for(int i = 0; i < str.length(); ++i)
+			{
+				char ch = str.charAt(i);
+				if((ch >= 'İ') && ((ch == 'İ') || (ch == 'Σ') ||
+					Character.isSurrogate(ch)))
+					return false;
+			}
+
+			return true;
+		}
+
+		private static char Fold(char ch)
+		{
+			if(ch < 0x80) return (((ch >= 'A') && (ch <= 'Z')) ? (char)(ch + 32) : ch);
+			return Character.toLowerCase(ch);
+		}
+	}
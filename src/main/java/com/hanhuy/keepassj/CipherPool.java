@@ -39,7 +39,11 @@ import java.util.List;
 				if(m_poolGlobal != null) return m_poolGlobal;
 
 				m_poolGlobal = new CipherPool();
-				m_poolGlobal.AddCipher(new StandardAesEngine());
+				// Prefer the platform's (usually hardware accelerated) AES
+				// implementation; both engines share the same UUID
+				if(JceAesEngine.IsSupported())
+					m_poolGlobal.AddCipher(new JceAesEngine());
+				else m_poolGlobal.AddCipher(new StandardAesEngine());
 
 				return m_poolGlobal;
 		}
@@ -18,12 +18,9 @@ package com.hanhuy.keepassj;
   Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
 */
 
-import org.bouncycastle.crypto.BlockCipher;
-import org.bouncycastle.crypto.params.KeyParameter;
 
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /// <summary>
@@ -150,31 +147,16 @@ import java.util.List;
 		{
 			ValidateUserKeys();
 
-			// Concatenate user key data
+			// Hash the concatenation of the user key data
 			List<byte[]> lData = new ArrayList<byte[]>();
-			int cbData = 0;
 			for(IUserKey pKey : m_vUserKeys)
 			{
 				ProtectedBinary b = pKey.getKeyData();
-				if(b != null)
-				{
-					byte[] pbKeyData = b.ReadData();
-					lData.add(pbKeyData);
-					cbData += pbKeyData.length;
-				}
+				if(b != null) lData.add(b.ReadData());
 			}
-			byte[] pbAllData = new byte[cbData];
-			int p = 0;
-			for(byte[] pbData : lData)
-			{
-				System.arraycopy(pbData, 0, pbAllData, p, pbData.length);
-				p += pbData.length;
-				MemUtil.ZeroByteArray(pbData);
-			}
-			assert(p == cbData);
 
-			byte[] pbHash = Digests.sha256(pbAllData);
-			MemUtil.ZeroByteArray(pbAllData);
+			byte[] pbHash = Digests.sha256(lData.toArray(new byte[lData.size()][]));
+			for(byte[] pbData : lData) MemUtil.ZeroByteArray(pbData);
 			return pbHash;
 		}
 
@@ -284,6 +266,22 @@ import java.util.List;
 		/// amount of time. Maximum value is <c>int.MaxValue</c>.</returns>
 		public static long TransformKeyBenchmark(long uMilliseconds, long uStep)
 		{
+			return TransformKeyBenchmark(uMilliseconds, uStep,
+				AesEngines.getKeyTransformer());
+		}
+
+		/// <summary>
+		/// Benchmark a specific key transformer, e.g. to compare the
+		/// built-in transformers of <c>AesEngines</c>.
+		/// </summary>
+		/// <returns>Number of transformations performed in the specified
+		/// amount of time, or <c>0</c> if the transformer is not
+		/// supported on this platform.</returns>
+		public static long TransformKeyBenchmark(long uMilliseconds, long uStep,
+			AesEngines.KeyTransformer xf)
+		{
+			if(xf == null) throw new IllegalArgumentException("xf");
+
 			long uRounds;
 
 			// Try native method
@@ -298,38 +296,36 @@ import java.util.List;
 				pbNewKey[i] = (byte)i;
 			}
 
-			byte[] pbIV = new byte[16];
-			Arrays.fill(pbIV, (byte) 0);
-            try {
-                BlockCipher engine = AesEngines.createAesEngine();
-                engine.init(true, new KeyParameter(pbKey));
-
-                if (engine.getBlockSize() != (128 / 8)) // AES block size
-                {
-                    throw new RuntimeException();
-                }
-
-                uRounds = 0;
-                long tStart = System.currentTimeMillis();
-                while (true) {
-                    for (long j = 0; j < uStep; ++j) {
-                        engine.processBlock(pbNewKey, 0, pbNewKey, 0);
-                        engine.processBlock(pbNewKey, 16, pbNewKey, 16);
-                    }
-
-                    uRounds += uStep;
-                    if (uRounds < uStep) // Overflow check
-                    {
-                        uRounds = Long.MAX_VALUE;
-                        break;
-                    }
-
-                    long tElapsed = System.currentTimeMillis() - tStart;
-                    if (tElapsed > uMilliseconds) break;
-                }
-
-                return uRounds;
-            } catch (Exception e) { throw new RuntimeException(e); }
+			// Transformers may have a fixed cost per call (e.g. handing
+			// half of the key to another thread), which would distort the
+			// rate if the time were spent in many short calls; therefore
+			// the calls grow, the last one filling the remaining time
+			uRounds = 0;
+			long uCall = Math.max(uStep, 1);
+			long tStart = System.nanoTime();
+			long tDuration = uMilliseconds * 1000000L;
+			while(true)
+			{
+				if(!xf.transformKey(pbNewKey, pbKey, uCall))
+					return 0;
+
+				uRounds += uCall;
+				if(uRounds < uCall) // Overflow check
+				{
+					uRounds = Long.MAX_VALUE;
+					break;
+				}
+
+				long tElapsed = System.nanoTime() - tStart;
+				if(tElapsed > tDuration) break;
+
+				double dRoundsPerNs = (double)uRounds / Math.max(tElapsed, 1L);
+				long uRemaining = (long)(dRoundsPerNs * (tDuration - tElapsed));
+				uCall = Math.max(uStep, Math.min(uRemaining, (uCall <
+					(Long.MAX_VALUE / 2)) ? (uCall * 2) : uCall));
+			}
+
+			return uRounds;
 		}
 	}
 
@@ -19,10 +19,12 @@ package com.hanhuy.keepassj;
 */
 
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /// <summary>
 	/// Cryptographically strong random number generator. The returned values
@@ -31,14 +33,30 @@ import java.util.*;
 	/// </summary>
 	public class CryptoRandom
 	{
+		/// <summary>
+		/// Number of bytes that a per-thread generator produces before it
+		/// is reseeded from the entropy pool.
+		/// </summary>
+		public final static int DrbgReseedInterval = 64 * 1024;
+
 		private byte[] m_pbEntropyPool = new byte[64];
 		private int m_uCounter;
 		private SecureRandom m_rng = new SecureRandom();
-		private long m_uGeneratedBytesCount = 0;
+		private final AtomicLong m_uGeneratedBytesCount = new AtomicLong();
 		private final static Object lock = new Object();
 
 		private final Object m_oSyncRoot = new Object();
 
+		// Incremented whenever entropy is added, such that the per-thread
+		// generators reseed and pick it up
+		private volatile long m_lPoolGeneration = 0;
+
+		private volatile boolean m_bUseThreadLocalDrbg = false;
+		private final ThreadLocal<Drbg> m_tlDrbg = new ThreadLocal<Drbg>() {
+			@Override
+			protected Drbg initialValue() { return new Drbg(); }
+		};
+
 		private static CryptoRandom m_pInstance = null;
 		public static CryptoRandom getInstance()
 		{
@@ -60,9 +78,24 @@ import java.util.*;
 		/// </summary>
 		public long getGeneratedBytesCount()
 		{
-				long u;
-				synchronized(m_oSyncRoot) { u = m_uGeneratedBytesCount; }
-				return u;
+			return m_uGeneratedBytesCount.get();
+		}
+
+		/// <summary>
+		/// If <c>true</c>, <c>GetRandomBytes</c> uses a generator per thread,
+		/// which is seeded from the entropy pool (like <c>GenerateRandom256</c>
+		/// output) and reseeded every <c>DrbgReseedInterval</c> bytes and
+		/// whenever entropy is added. Requests then do not take the global
+		/// lock and are satisfied in one pass.
+		/// </summary>
+		public boolean getUseThreadLocalDrbg()
+		{
+			return m_bUseThreadLocalDrbg;
+		}
+
+		public void setUseThreadLocalDrbg(boolean bUse)
+		{
+			m_bUseThreadLocalDrbg = bUse;
 		}
 
 		/// <summary>
@@ -98,15 +131,10 @@ import java.util.*;
 				pbNewData = Digests.sha512(pbEntropy);
 			}
 
-			ByteArrayOutputStream ms = new ByteArrayOutputStream();
 			synchronized(m_oSyncRoot)
 			{
-				ms.write(m_pbEntropyPool, 0, m_pbEntropyPool.length);
-				ms.write(pbNewData, 0, pbNewData.length);
-
-				byte[] pbFinal = ms.toByteArray();
-				// TODO try to fetch SHA-512 as well
-				m_pbEntropyPool = Digests.sha512(pbFinal);
+				m_pbEntropyPool = Digests.sha512(m_pbEntropyPool, pbNewData);
+				++m_lPoolGeneration;
 			}
 		}
 
@@ -164,29 +192,21 @@ import java.util.*;
 				h.delegate(this, null);
 			}
 
-			byte[] pbFinal;
+			byte[] pbPool, pbCounter;
 			synchronized (m_oSyncRoot)
 			{
 				m_uCounter += 386047; // Prime number
-				byte[] pbCounter = MemUtil.UInt32ToBytes(m_uCounter);
-
-				byte[] pbCspRandom = GetCspData();
-
-				ByteArrayOutputStream ms = new ByteArrayOutputStream();
-				ms.write(m_pbEntropyPool, 0, m_pbEntropyPool.length);
-				ms.write(pbCounter, 0, pbCounter.length);
-				ms.write(pbCspRandom, 0, pbCspRandom.length);
-				pbFinal = ms.toByteArray();
-				assert pbFinal.length == (m_pbEntropyPool.length +
-					pbCounter.length + pbCspRandom.length);
-                try {
-                    ms.close();
-                } catch (IOException e) { }
-
-				m_uGeneratedBytesCount += 32;
+				pbCounter = MemUtil.UInt32ToBytes(m_uCounter);
+
+				// The pool array is replaced, never modified
+				pbPool = m_pbEntropyPool;
 			}
+			m_uGeneratedBytesCount.addAndGet(32);
 
-			return Digests.sha256(pbFinal);
+			byte[] pbCspRandom = GetCspData();
+			byte[] pbRandom256 = Digests.sha256(pbPool, pbCounter, pbCspRandom);
+			MemUtil.ZeroByteArray(pbCspRandom);
+			return pbRandom256;
 		}
 
 		/// <summary>
@@ -201,6 +221,12 @@ import java.util.*;
 			if(uRequestedBytes == 0) return new byte[0]; // Allow zero-length array
 
 			byte[] pbRes = new byte[uRequestedBytes];
+			if(m_bUseThreadLocalDrbg)
+			{
+				m_tlDrbg.get().Generate(pbRes);
+				return pbRes;
+			}
+
 			long lPos = 0;
 
 			while(uRequestedBytes != 0)
@@ -219,4 +245,80 @@ import java.util.*;
 			assert (int)lPos == pbRes.length;
 			return pbRes;
 		}
+
+		/// <summary>
+		/// Hash-based generator of one thread. Output block <c>i</c> is
+		/// SHA-256(0x00 || key || i); after each request the key is replaced
+		/// by SHA-256(0x01 || key || counter), such that earlier output
+		/// cannot be reconstructed from the state.
+		/// </summary>
+		private final class Drbg
+		{
+			private final MessageDigest m_md = Digests.getInstance().sha256();
+			private final byte[] m_pbKey = new byte[32];
+			private final byte[] m_pbCounter = new byte[8];
+			private final byte[] m_pbBlock = new byte[32];
+			private long m_lCounter = 0;
+			private long m_cbSinceReseed = 0;
+			private long m_lSeedGeneration = -1;
+
+			private void Reseed()
+			{
+				m_lSeedGeneration = m_lPoolGeneration;
+
+				byte[] pbSeed = GenerateRandom256();
+				m_md.update((byte)0x02);
+				m_md.update(m_pbKey);
+				m_md.update(pbSeed);
+				m_md.update(MemUtil.UInt64ToBytes(Thread.currentThread().getId()));
+				Digest(m_pbKey, 0);
+				MemUtil.ZeroByteArray(pbSeed);
+
+				m_cbSinceReseed = 0;
+			}
+
+			private void Digest(byte[] pbOut, int iOffset)
+			{
+				try { m_md.digest(pbOut, iOffset, 32); }
+				catch(DigestException e) { throw new IllegalStateException(e); }
+			}
+
+			private void Hash(byte bDomain, byte[] pbOut, int iOffset)
+			{
+				++m_lCounter;
+				for(int i = 0; i < 8; ++i)
+					m_pbCounter[i] = (byte)(m_lCounter >>> (i * 8));
+
+				m_md.update(bDomain);
+				m_md.update(m_pbKey);
+				m_md.update(m_pbCounter);
+				Digest(pbOut, iOffset);
+			}
+
+			public void Generate(byte[] pbOut)
+			{
+				if((m_cbSinceReseed >= DrbgReseedInterval) ||
+					(m_lSeedGeneration != m_lPoolGeneration))
+					Reseed();
+
+				int iPos = 0;
+				while(iPos < pbOut.length)
+				{
+					int cb = pbOut.length - iPos;
+					if(cb >= 32) Hash((byte)0x00, pbOut, iPos);
+					else
+					{
+						Hash((byte)0x00, m_pbBlock, 0);
+						System.arraycopy(m_pbBlock, 0, pbOut, iPos, cb);
+						MemUtil.ZeroByteArray(m_pbBlock);
+					}
+					iPos += Math.min(cb, 32);
+				}
+
+				Hash((byte)0x01, m_pbKey, 0);
+
+				m_cbSinceReseed += pbOut.length;
+				m_uGeneratedBytesCount.addAndGet(pbOut.length);
+			}
+		}
 	}
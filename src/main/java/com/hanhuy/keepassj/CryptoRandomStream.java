@@ -18,6 +18,10 @@ package com.hanhuy.keepassj;
   Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
 */
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+
 /// <summary>
 	/// Algorithms supported by <c>CryptoRandomStream</c>.
 	/// </summary>
@@ -149,6 +153,72 @@ package com.hanhuy.keepassj;
 			return pbRet;
 		}
 
+		/// <summary>
+		/// XOR the next <paramref name="cb" /> random bytes into a buffer,
+		/// without allocating them. The stream advances exactly as with
+		/// <c>GetRandomBytes(cb)</c>.
+		/// </summary>
+		/// <param name="pb">Buffer to XOR the random bytes into.</param>
+		/// <param name="iOffset">Offset in <paramref name="pb" />.</param>
+		/// <param name="cb">Number of bytes.</param>
+		public void XorInto(byte[] pb, int iOffset, int cb)
+		{
+			if(pb == null) throw new IllegalArgumentException("pb");
+			if((iOffset < 0) || (cb < 0) || (iOffset > (pb.length - cb)))
+				throw new IllegalArgumentException();
+			if(cb == 0) return;
+
+			if(m_crsAlgorithm == CrsAlgorithm.Salsa20)
+				m_salsa20.Encrypt(pb, iOffset, cb);
+			else
+			{
+				byte[] pbPad = GetRandomBytes(cb);
+				MemUtil.XorArray(pbPad, 0, pb, iOffset, cb);
+				MemUtil.ZeroByteArray(pbPad);
+			}
+		}
+
+		/// <summary>
+		/// Write the next random bytes into the remaining space of a
+		/// buffer, i.e. from its position up to its limit. The position
+		/// is set to the limit. The stream advances exactly as with
+		/// <c>GetRandomBytes(bb.remaining())</c>.
+		/// </summary>
+		/// <param name="bb">Buffer to fill.</param>
+		/// <exception cref="java.nio.ReadOnlyBufferException">Thrown if
+		/// <paramref name="bb" /> is read-only. The stream does not
+		/// advance in this case.</exception>
+		public void Fill(ByteBuffer bb)
+		{
+			if(bb == null) throw new IllegalArgumentException("bb");
+			if(bb.isReadOnly()) throw new ReadOnlyBufferException();
+
+			if(bb.hasArray())
+			{
+				byte[] pb = bb.array();
+				int iStart = bb.arrayOffset() + bb.position();
+				int cb = bb.remaining();
+
+				Arrays.fill(pb, iStart, iStart + cb, (byte)0);
+				XorInto(pb, iStart, cb);
+				bb.position(bb.limit());
+				return;
+			}
+
+			// Direct buffer; go through a block-sized array
+			byte[] pbBlock = new byte[Math.min(bb.remaining(), FillBlockSize)];
+			while(bb.hasRemaining())
+			{
+				int cb = Math.min(bb.remaining(), pbBlock.length);
+				Arrays.fill(pbBlock, 0, cb, (byte)0);
+				XorInto(pbBlock, 0, cb);
+				bb.put(pbBlock, 0, cb);
+			}
+			MemUtil.ZeroByteArray(pbBlock);
+		}
+
+		private static final int FillBlockSize = 4096;
+
 		public long GetRandomUInt64()
 		{
 			byte[] pb = GetRandomBytes(8);
@@ -2,39 +2,147 @@ package com.hanhuy.keepassj;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author pfnguyen
  */
 public class Digests {
     public interface DigestProvider {
+        /**
+         * Returns a digest instance that the caller owns exclusively.
+         */
         public MessageDigest sha256();
         public MessageDigest sha512();
     }
 
-    private static DigestProvider INSTANCE = new DigestProvider() {
-        public MessageDigest sha256() {
+    private static final AtomicLong lookupCount = new AtomicLong();
+    private static final AtomicLong hashCount = new AtomicLong();
+
+    /**
+     * Looks up the provider of an algorithm once; further instances are
+     * cloned from a prototype that is never updated. The static hash
+     * methods use one reset instance per thread.
+     */
+    private static final class CachedAlgorithm {
+        private final String name;
+        private volatile MessageDigest prototype = null;
+
+        private final ThreadLocal<MessageDigest> local = new ThreadLocal<MessageDigest>() {
+            @Override
+            protected MessageDigest initialValue() {
+                return create();
+            }
+        };
+
+        CachedAlgorithm(String name) {
+            this.name = name;
+        }
+
+        private MessageDigest lookup() {
+            lookupCount.incrementAndGet();
             try {
-                return MessageDigest.getInstance("SHA-256");
+                return MessageDigest.getInstance(name);
             } catch (NoSuchAlgorithmException e) {
                 throw new RuntimeException(e);
             }
         }
-        public MessageDigest sha512() {
+
+        MessageDigest create() {
+            MessageDigest md = prototype;
+            if (md == null) {
+                md = lookup();
+                prototype = md;
+            }
             try {
-                return MessageDigest.getInstance("SHA-512");
-            } catch (NoSuchAlgorithmException e) {
-                throw new RuntimeException(e);
+                return (MessageDigest) md.clone();
+            } catch (CloneNotSupportedException e) {
+                return lookup();
             }
         }
+
+        MessageDigest local() {
+            MessageDigest md = local.get();
+            md.reset();
+            return md;
+        }
+    }
+
+    private static final CachedAlgorithm SHA256 = new CachedAlgorithm("SHA-256");
+    private static final CachedAlgorithm SHA512 = new CachedAlgorithm("SHA-512");
+
+    /**
+     * The default provider; it performs a provider lookup only once per
+     * algorithm.
+     */
+    public static final DigestProvider CACHED_PROVIDER = new DigestProvider() {
+        public MessageDigest sha256() {
+            return SHA256.create();
+        }
+        public MessageDigest sha512() {
+            return SHA512.create();
+        }
     };
 
+    private static DigestProvider INSTANCE = CACHED_PROVIDER;
+
+    private static MessageDigest sha256Digest() {
+        hashCount.incrementAndGet();
+        return (INSTANCE == CACHED_PROVIDER) ? SHA256.local() : INSTANCE.sha256();
+    }
+
+    private static MessageDigest sha512Digest() {
+        hashCount.incrementAndGet();
+        return (INSTANCE == CACHED_PROVIDER) ? SHA512.local() : INSTANCE.sha512();
+    }
+
     public static byte[] sha256(byte[] data) {
-        return getInstance().sha256().digest(data);
+        return sha256Digest().digest(data);
+    }
+
+    public static byte[] sha256(byte[] data, int offset, int length) {
+        MessageDigest md = sha256Digest();
+        md.update(data, offset, length);
+        return md.digest();
+    }
+
+    /**
+     * Hashes the concatenation of all arrays, without concatenating them.
+     */
+    public static byte[] sha256(byte[]... parts) {
+        MessageDigest md = sha256Digest();
+        for (byte[] part : parts)
+            md.update(part);
+        return md.digest();
     }
 
     public static byte[] sha512(byte[] data) {
-        return getInstance().sha512().digest(data);
+        return sha512Digest().digest(data);
+    }
+
+    /**
+     * Hashes the concatenation of all arrays, without concatenating them.
+     */
+    public static byte[] sha512(byte[]... parts) {
+        MessageDigest md = sha512Digest();
+        for (byte[] part : parts)
+            md.update(part);
+        return md.digest();
+    }
+
+    /**
+     * Number of <code>MessageDigest.getInstance</code> calls made by
+     * {@link #CACHED_PROVIDER}.
+     */
+    public static long getLookupCount() {
+        return lookupCount.get();
+    }
+
+    /**
+     * Number of hashes computed by the static methods of this class.
+     */
+    public static long getHashCount() {
+        return hashCount.get();
     }
 
     public static DigestProvider getInstance() {
@@ -42,6 +150,7 @@ public class Digests {
     }
 
     public static void setInstance(DigestProvider p) {
+        if (p == null) throw new IllegalArgumentException("p");
         INSTANCE = p;
     }
 }
@@ -0,0 +1,326 @@
+package com.hanhuy.keepassj;
+/*
+  KeePass Password Safe - The Open-Source Password Manager
+  Copyright (C) 2003-2014 Dominik Reichl <dominik.reichl@t-online.de>
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+	/// <summary>
+	/// Evaluates a single search term against entries, as done by
+	/// <c>PwGroup.SearchEntries</c>. Instances do not have any mutable
+	/// state, thus entries can be evaluated concurrently.
+	/// </summary>
+	final class EntrySearcher
+	{
+		/// <summary>
+		/// Number of entries below which a fork/join task does not split.
+		/// </summary>
+		final static int ParallelThreshold = 256;
+
+		private final SearchParameters m_sp;
+		private final Pattern m_rx;
+		// Matchers are not thread-safe; one per evaluating thread
+		private final ThreadLocal<Matcher> m_tlMatcher;
+		private final String m_strSearch;
+		private final CaseFoldingMatcher m_cfm;
+		private final Utf8Matcher m_u8m;
+		private final boolean m_bIgnoreCase;
+		private final boolean m_bReportAll;
+		private final Date m_dtNow = new Date();
+
+		public EntrySearcher(SearchParameters spIn)
+		{
+			m_sp = spIn.Clone();
+			m_sp.setSearchString(m_sp.getSearchString().trim());
+
+			StringComparison mode = m_sp.getComparisonMode();
+			m_bIgnoreCase = ((mode == StringComparison.OrdinalIgnoreCase) ||
+				(mode == StringComparison.CurrentCultureIgnoreCase) ||
+				(mode == StringComparison.InvariantCultureIgnoreCase));
+
+			m_bReportAll = (m_sp.getSearchString().length() <= 0);
+			m_strSearch = (m_bIgnoreCase ? m_sp.getSearchString().toLowerCase() :
+				m_sp.getSearchString());
+			m_cfm = (m_bIgnoreCase ? new CaseFoldingMatcher(m_strSearch) : null);
+			m_u8m = (m_sp.getRegularExpression() ? null :
+				Utf8Matcher.Create(m_strSearch, m_bIgnoreCase));
+
+			if(m_sp.getRegularExpression())
+			{
+				m_rx = Pattern.compile(m_sp.getSearchString(),
+					(m_bIgnoreCase ? Pattern.CASE_INSENSITIVE : 0));
+				m_tlMatcher = new ThreadLocal<Matcher>() {
+					@Override
+					protected Matcher initialValue()
+					{
+						return m_rx.matcher("");
+					}
+				};
+			}
+			else { m_rx = null; m_tlMatcher = null; }
+		}
+
+		/// <summary>
+		/// Get the lower-case search term, if the search is a case-
+		/// insensitive substring search in fields that <c>PwSearchIndex</c>
+		/// covers; otherwise <c>null</c>.
+		/// </summary>
+		public String GetIndexableTerm()
+		{
+			if((m_rx != null) || m_bReportAll || !m_bIgnoreCase) return null;
+			if(m_sp.getDataTransformationFn() != null) return null;
+			if(m_sp.getSearchInPasswords() || m_sp.getSearchInUuids() ||
+				m_sp.getSearchInGroupNames()) return null;
+
+			return m_strSearch;
+		}
+
+		/// <summary>
+		/// Test whether an entry is a search result.
+		/// </summary>
+		public boolean Matches(PwEntry pe)
+		{
+			if(m_sp.getRespectEntrySearchingDisabled() && !pe.GetSearchingEnabled())
+				return false;
+			if(m_sp.getExcludeExpired() && pe.getExpires() &&
+				(m_dtNow.getTime() > pe.getExpiryTime().getTime()))
+				return false;
+
+			if(m_bReportAll) return true;
+
+			for(Map.Entry<String, ProtectedString> kvp : pe.getStrings())
+			{
+				String strKey = kvp.getKey();
+
+				boolean bSearch;
+				if(strKey.equals(PwDefs.TitleField)) bSearch = m_sp.getSearchInTitles();
+				else if(strKey.equals(PwDefs.UserNameField)) bSearch = m_sp.getSearchInUserNames();
+				else if(strKey.equals(PwDefs.PasswordField)) bSearch = m_sp.getSearchInPasswords();
+				else if(strKey.equals(PwDefs.UrlField)) bSearch = m_sp.getSearchInUrls();
+				else if(strKey.equals(PwDefs.NotesField)) bSearch = m_sp.getSearchInNotes();
+				else bSearch = m_sp.getSearchInOther();
+
+				if(bSearch && Matches(kvp.getValue(), pe)) return true;
+			}
+
+			if(m_sp.getSearchInUuids() && Matches(pe.getUuid().ToHexString(), pe))
+				return true;
+
+			if(m_sp.getSearchInGroupNames() && (pe.getParentGroup() != null) &&
+				Matches(pe.getParentGroup().getName(), pe))
+				return true;
+
+			if(m_sp.getSearchInTags())
+			{
+				for(String strTag : pe.getTags())
+				{
+					if(Matches(strTag, pe)) return true;
+				}
+			}
+
+			return false;
+		}
+
+		private boolean Matches(ProtectedString ps, PwEntry pe)
+		{
+			String str = ps.ReadStringIfPlainText();
+			if(str != null) return Matches(str, pe);
+
+			// Search the decrypted UTF-8 data in place, instead of
+			// ReadString, which would leave the String unprotected
+			byte[] pbUtf8 = ps.ReadUtf8();
+			try
+			{
+				if(m_u8m != null)
+				{
+					Boolean b = m_u8m.Find(pbUtf8);
+					if((b != null) && (b || (m_sp.getDataTransformationFn() == null)))
+						return b;
+				}
+
+				CharBuffer cb = StrUtil.Utf8.decode(ByteBuffer.wrap(pbUtf8));
+				try { return Matches(cb, pe); }
+				finally { Arrays.fill(cb.array(), (char)0); }
+			}
+			finally { MemUtil.ZeroByteArray(pbUtf8); }
+		}
+
+		private boolean Matches(CharSequence strDataField, PwEntry pe)
+		{
+			if(MatchesText(strDataField)) return true;
+
+			if(m_sp.getDataTransformationFn() != null)
+			{
+				String strData = strDataField.toString();
+				String strCmp = m_sp.getDataTransformationFn().delegate(strData, pe);
+				if(!strCmp.equals(strData)) return MatchesText(strCmp);
+			}
+
+			return false;
+		}
+
+		private boolean MatchesText(CharSequence str)
+		{
+			// Like Regex.IsMatch, the expression may match any part of the text
+			if(m_rx != null) return m_tlMatcher.get().reset(str).find();
+
+			if(m_cfm != null) return m_cfm.Find(str);
+			return Contains(str, m_strSearch);
+		}
+
+		// Without creating a String from decrypted text
+		private static boolean Contains(CharSequence str, String strTerm)
+		{
+			if(str instanceof String) return ((String)str).contains(strTerm);
+
+			int m = strTerm.length(), n = str.length();
+			for(int i = 0; i <= (n - m); ++i)
+			{
+				int j = 0;
+				while((j < m) && (str.charAt(i + j) == strTerm.charAt(j))) ++j;
+				if(j == m) return true;
+			}
+
+			return false;
+		}
+
+		/// <summary>
+		/// Evaluate entries on a fork/join pool.
+		/// </summary>
+		/// <param name="lEntries">Entries to evaluate.</param>
+		/// <param name="fjp">Pool to run the evaluation on.</param>
+		/// <param name="slStatus">Optional status logger. It is only called
+		/// on the calling thread; if it requests cancellation, the
+		/// evaluation is stopped and <c>null</c> is returned.</param>
+		/// <param name="uCurEntries">Counter of evaluated entries, which
+		/// is used for the progress.</param>
+		/// <param name="uTotalEntries">Total number of entries, used for
+		/// the progress.</param>
+		/// <returns>Array whose item <c>i</c> specifies whether entry
+		/// <c>i</c> is a search result.</returns>
+		public boolean[] MatchAll(List<PwEntry> lEntries, ForkJoinPool fjp,
+			IStatusLogger slStatus, long[] uCurEntries, long uTotalEntries)
+		{
+			boolean[] vMatches = new boolean[lEntries.size()];
+			AtomicLong lDone = new AtomicLong();
+			MatchTask t = new MatchTask(lEntries, vMatches, 0, lEntries.size(),
+				lDone);
+
+			fjp.execute(t);
+			try
+			{
+				while(true)
+				{
+					try
+					{
+						t.get(50, TimeUnit.MILLISECONDS);
+						break;
+					}
+					catch(TimeoutException e)
+					{
+						if((slStatus != null) && !slStatus.SetProgress((int)
+							(((uCurEntries[0] + lDone.get()) * 100L) / uTotalEntries)))
+						{
+							t.m_bCancel.set(true);
+							t.quietlyJoin();
+							return null;
+						}
+					}
+				}
+			}
+			catch(InterruptedException e)
+			{
+				t.m_bCancel.set(true);
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			catch(ExecutionException e)
+			{
+				Throwable tCause = e.getCause();
+				if(tCause instanceof RuntimeException) throw (RuntimeException)tCause;
+				if(tCause instanceof Error) throw (Error)tCause;
+				throw new RuntimeException(tCause);
+			}
+			finally { uCurEntries[0] += lDone.get(); }
+
+			return vMatches;
+		}
+
+		private final class MatchTask extends RecursiveAction
+		{
+			private static final long serialVersionUID = 1L;
+
+			private final List<PwEntry> m_lEntries;
+			private final boolean[] m_vMatches;
+			private final int m_iStart, m_iEnd;
+			private final AtomicLong m_lDone;
+			// Shared by all subtasks
+			final AtomicBoolean m_bCancel;
+
+			MatchTask(List<PwEntry> lEntries, boolean[] vMatches, int iStart,
+				int iEnd, AtomicLong lDone)
+			{
+				this(lEntries, vMatches, iStart, iEnd, lDone, new AtomicBoolean());
+			}
+
+			private MatchTask(List<PwEntry> lEntries, boolean[] vMatches,
+				int iStart, int iEnd, AtomicLong lDone, AtomicBoolean bCancel)
+			{
+				m_lEntries = lEntries;
+				m_vMatches = vMatches;
+				m_iStart = iStart;
+				m_iEnd = iEnd;
+				m_lDone = lDone;
+				m_bCancel = bCancel;
+			}
+
+			@Override
+			protected void compute()
+			{
+				if((m_iEnd - m_iStart) > ParallelThreshold)
+				{
+					int iMid = (m_iStart + m_iEnd) >>> 1;
+					invokeAll(new MatchTask(m_lEntries, m_vMatches, m_iStart,
+						iMid, m_lDone, m_bCancel), new MatchTask(m_lEntries,
+						m_vMatches, iMid, m_iEnd, m_lDone, m_bCancel));
+					return;
+				}
+
+				for(int i = m_iStart; i < m_iEnd; ++i)
+				{
+					if(m_bCancel.get()) return;
+					m_vMatches[i] = Matches(m_lEntries.get(i));
+				}
+				m_lDone.addAndGet(m_iEnd - m_iStart);
+			}
+		}
+	}
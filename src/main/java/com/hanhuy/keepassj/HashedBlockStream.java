@@ -23,6 +23,9 @@ import com.google.common.io.LittleEndianDataInputStream;
 import com.google.common.io.LittleEndianDataOutputStream;
 
 import java.io.*;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
 
 public class HashedBlockStream {
 
@@ -33,10 +36,17 @@ public class HashedBlockStream {
         private byte[] m_pbBuffer;
         private int m_nBufferPos = 0;
         private int m_uBufferIndex = 0;
+
+        // Used by this stream only; reset by each digest() call
+        private final MessageDigest m_hash = Digests.getInstance().sha256();
+        private final byte[] m_pbHash = new byte[32];
+
         @Override
         public void write(int b) throws IOException {
-            byte[] buf = { (byte) b };
-            write(buf, 0, buf.length);
+            if(m_nBufferPos == m_pbBuffer.length)
+                WriteHashedBlock();
+
+            m_pbBuffer[m_nBufferPos++] = (byte)b;
         }
         @Override
         public void write(byte[] pbBuffer, int nOffset, int nCount) throws IOException
@@ -46,6 +56,16 @@ public class HashedBlockStream {
                 if(m_nBufferPos == m_pbBuffer.length)
                     WriteHashedBlock();
 
+                // Write full blocks directly from the caller's array
+                if((m_nBufferPos == 0) && (nCount >= m_pbBuffer.length))
+                {
+                    WriteHashedBlock(pbBuffer, nOffset, m_pbBuffer.length);
+
+                    nOffset += m_pbBuffer.length;
+                    nCount -= m_pbBuffer.length;
+                    continue;
+                }
+
                 int nCopy = Math.min(m_pbBuffer.length - m_nBufferPos, nCount);
 
                 System.arraycopy(pbBuffer, nOffset, m_pbBuffer, m_nBufferPos, nCopy);
@@ -58,23 +78,24 @@ public class HashedBlockStream {
         }
 
         private void WriteHashedBlock() throws IOException
+        {
+            WriteHashedBlock(m_pbBuffer, 0, m_nBufferPos);
+            m_nBufferPos = 0;
+        }
+
+        private void WriteHashedBlock(byte[] pbData, int nOffset, int nCount)
+            throws IOException
         {
             m_bwOutput.writeInt(m_uBufferIndex);
             ++m_uBufferIndex;
 
-            if(m_nBufferPos > 0)
+            if(nCount > 0)
             {
-                byte[] pbHash;
-                if(m_nBufferPos == m_pbBuffer.length)
-                    pbHash = Digests.sha256(m_pbBuffer);
-                else
-                {
-                    byte[] pbData = new byte[m_nBufferPos];
-                    System.arraycopy(m_pbBuffer, 0, pbData, 0, m_nBufferPos);
-                    pbHash = Digests.sha256(pbData);
-                }
+                m_hash.update(pbData, nOffset, nCount);
+                try { m_hash.digest(m_pbHash, 0, m_pbHash.length); }
+                catch(DigestException e) { throw new IOException(e); }
 
-                m_bwOutput.write(pbHash);
+                m_bwOutput.write(m_pbHash);
             }
             else
             {
@@ -84,12 +105,10 @@ public class HashedBlockStream {
                 m_bwOutput.writeLong(0);
             }
 
-            m_bwOutput.writeInt(m_nBufferPos);
-
-            if(m_nBufferPos > 0)
-                m_bwOutput.write(m_pbBuffer, 0, m_nBufferPos);
+            m_bwOutput.writeInt(nCount);
 
-            m_nBufferPos = 0;
+            if(nCount > 0)
+                m_bwOutput.write(pbData, nOffset, nCount);
         }
         @Override
         public void flush() throws IOException
@@ -126,19 +145,28 @@ public class HashedBlockStream {
         private boolean m_bVerify;
         private boolean m_bEos = false;
 
-
+        // Reused for all blocks; only grows
         private byte[] m_pbBuffer;
+        private int m_nBufferLength = 0;
         private int m_nBufferPos = 0;
 
         private int m_uBufferIndex = 0;
 
         private LittleEndianDataInputStream m_brInput;
+
+        // Used by this stream only; reset by each digest() call
+        private final MessageDigest m_hash = Digests.getInstance().sha256();
+        private final byte[] m_pbStoredHash = new byte[32];
+        private final byte[] m_pbComputedHash = new byte[32];
+
         @Override
         public int read() throws IOException {
-            byte[] buf = new byte[1];
-            if (read(buf, 0, 1) == 1)
-                return buf[0] & 0xff;
-            else throw new IOException("could not read 1 byte");
+            if(m_nBufferPos == m_nBufferLength)
+            {
+                if(!ReadHashedBlock()) return -1;
+            }
+
+            return (m_pbBuffer[m_nBufferPos++] & 0xff);
         }
 
         @Override
@@ -148,13 +176,29 @@ public class HashedBlockStream {
             int nRemaining = nCount;
             while(nRemaining > 0)
             {
-                if(m_nBufferPos == m_pbBuffer.length)
+                if(m_nBufferPos == m_nBufferLength)
                 {
-                    if(!ReadHashedBlock())
+                    int nBlock = ReadBlockHeader();
+                    if(nBlock < 0)
                         return !m_bEos || nCount - nRemaining > 0 ? nCount - nRemaining : -1; // Bytes actually read
+
+                    // Read blocks that fit completely into the caller's
+                    // array directly into it
+                    if(nBlock <= nRemaining)
+                    {
+                        ReadBlockData(pbBuffer, nOffset, nBlock);
+
+                        nOffset += nBlock;
+                        nRemaining -= nBlock;
+                        continue;
+                    }
+
+                    if(m_pbBuffer.length < nBlock) m_pbBuffer = new byte[nBlock];
+                    ReadBlockData(m_pbBuffer, 0, nBlock);
+                    m_nBufferLength = nBlock;
                 }
 
-                int nCopy = Math.min(m_pbBuffer.length - m_nBufferPos, nRemaining);
+                int nCopy = Math.min(m_nBufferLength - m_nBufferPos, nRemaining);
 
                 System.arraycopy(m_pbBuffer, m_nBufferPos, pbBuffer, nOffset, nCopy);
 
@@ -169,18 +213,32 @@ public class HashedBlockStream {
 
         private boolean ReadHashedBlock() throws IOException
         {
-            if(m_bEos) return false; // End of stream reached already
+            int nBlock = ReadBlockHeader();
+            if(nBlock < 0) return false;
+
+            if(m_pbBuffer.length < nBlock) m_pbBuffer = new byte[nBlock];
+            ReadBlockData(m_pbBuffer, 0, nBlock);
+            m_nBufferLength = nBlock;
+            return true;
+        }
+
+        /// <summary>
+        /// Read the header of the next block.
+        /// </summary>
+        /// <returns>Size of the block data, or <c>-1</c> if the
+        /// terminating block has been reached.</returns>
+        private int ReadBlockHeader() throws IOException
+        {
+            if(m_bEos) return -1; // End of stream reached already
 
             m_nBufferPos = 0;
+            m_nBufferLength = 0;
 
             if(m_brInput.readInt() != m_uBufferIndex)
                 throw new KdbxFileFormatException("invalid hashed data");
             ++m_uBufferIndex;
 
-            byte[] pbStoredHash = new byte[32];
-            m_brInput.readFully(pbStoredHash);
-            if((pbStoredHash == null) || (pbStoredHash.length != 32))
-                throw new KdbxFileFormatException("invalid hashed data");
+            m_brInput.readFully(m_pbStoredHash);
 
             int nBufferSize = m_brInput.readInt();
 
@@ -191,42 +249,46 @@ public class HashedBlockStream {
             {
                 for(int iHash = 0; iHash < 32; ++iHash)
                 {
-                    if(pbStoredHash[iHash] != 0)
+                    if(m_pbStoredHash[iHash] != 0)
                         throw new KdbxFileFormatException("invalid hash");
                 }
 
                 m_bEos = true;
-                m_pbBuffer = new byte[0];
-                return false;
+                return -1;
             }
 
-            m_pbBuffer = new byte[nBufferSize];
-//            m_brInput.readFully(m_pbBuffer);
+            return nBufferSize;
+        }
 
+        private void ReadBlockData(byte[] pbData, int nOffset, int nBufferSize)
+            throws IOException
+        {
             int read = 0;
-            int r = 0;
-            while (read < nBufferSize && r != -1) {
-                r = m_brInput.read(m_pbBuffer, read, nBufferSize - read);
+            while (read < nBufferSize) {
+                int r = m_brInput.read(pbData, nOffset + read, nBufferSize - read);
+                if (r < 0) {
+                    // Truncated block; only readable in repair mode
+                    Arrays.fill(pbData, nOffset + read, nOffset + nBufferSize, (byte)0);
+                    break;
+                }
                 read += r;
             }
 
             if(m_bVerify)
             {
-                byte[] pbComputedHash = Digests.sha256(m_pbBuffer);
-                if((pbComputedHash == null) || (pbComputedHash.length != 32))
-                    throw new KdbxFileFormatException("invalid hash");
+                m_hash.update(pbData, nOffset, nBufferSize);
+                try { m_hash.digest(m_pbComputedHash, 0, m_pbComputedHash.length); }
+                catch(DigestException e) { throw new IOException(e); }
 
                 for(int iHashPos = 0; iHashPos < 32; ++iHashPos)
                 {
-                    if(pbStoredHash[iHashPos] != pbComputedHash[iHashPos])
+                    if(m_pbStoredHash[iHashPos] != m_pbComputedHash[iHashPos])
                         throw new KdbxFileFormatException("invalid hash: " +
-                            BaseEncoding.base16().encode(pbStoredHash) +
+                            BaseEncoding.base16().encode(m_pbStoredHash) +
                                     " != " +
-                                    BaseEncoding.base16().encode(pbComputedHash));
+                                    BaseEncoding.base16().encode(m_pbComputedHash));
                 }
             }
-
-            return true;
         }
         @Override
         public void close() throws IOException
@@ -0,0 +1,268 @@
+package com.hanhuy.keepassj;
+/*
+  KeePass Password Safe - The Open-Source Password Manager
+  Copyright (C) 2003-2014 Dominik Reichl <dominik.reichl@t-online.de>
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+/// <summary>
+	/// AES cipher implementation using the JCE provider of the platform
+	/// (AES-NI accelerated on most desktop VMs). It has the same UUID as
+	/// <c>StandardAesEngine</c>, which is used if the JCE provider does
+	/// not support 256-bit AES keys.
+	/// </summary>
+	public class JceAesEngine implements ICipherEngine
+	{
+		private final static String CipherName = "AES/CBC/PKCS5Padding";
+
+		// Size of the chunks passed to the cipher
+		private final static int BufferSize = 64 * 1024;
+
+		private static Boolean m_bSupported = null;
+
+		/// <summary>
+		/// Test whether the JCE provider supports AES-256 in CBC mode.
+		/// </summary>
+		public static synchronized boolean IsSupported()
+		{
+			if(m_bSupported == null)
+			{
+				try
+				{
+					CreateCipher(Cipher.ENCRYPT_MODE, new byte[32], new byte[16]);
+					m_bSupported = true;
+				}
+				catch(Exception e) { m_bSupported = false; }
+			}
+
+			return m_bSupported;
+		}
+
+		public PwUuid getCipherUuid()
+		{
+			return StandardAesEngine.getAesUuid();
+		}
+
+		public String getDisplayName() { return "AES"; }
+
+		private static Cipher CreateCipher(int nMode, byte[] pbKey, byte[] pbIV)
+			throws GeneralSecurityException
+		{
+			byte[] pbLocalIV = new byte[16];
+			System.arraycopy(pbIV, 0, pbLocalIV, 0, 16);
+
+			byte[] pbLocalKey = new byte[32];
+			System.arraycopy(pbKey, 0, pbLocalKey, 0, 32);
+
+			try
+			{
+				Cipher c = Cipher.getInstance(CipherName);
+				c.init(nMode, new SecretKeySpec(pbLocalKey, "AES"),
+					new IvParameterSpec(pbLocalIV));
+				return c;
+			}
+			finally { MemUtil.ZeroByteArray(pbLocalKey); }
+		}
+
+		public OutputStream EncryptStream(OutputStream sPlainText, byte[] pbKey, byte[] pbIV)
+		{
+			try
+			{
+				return new CipherOutputStream(sPlainText,
+					CreateCipher(Cipher.ENCRYPT_MODE, pbKey, pbIV));
+			}
+			catch(GeneralSecurityException e) { throw new IllegalStateException(e); }
+		}
+
+		public InputStream DecryptStream(InputStream sEncrypted, byte[] pbKey, byte[] pbIV)
+		{
+			try
+			{
+				return new CipherInputStream(sEncrypted,
+					CreateCipher(Cipher.DECRYPT_MODE, pbKey, pbIV));
+			}
+			catch(GeneralSecurityException e) { throw new IllegalStateException(e); }
+		}
+
+		/// <summary>
+		/// Reads large chunks from the encrypted stream and decrypts them
+		/// with a single cipher call each.
+		/// </summary>
+		private static final class CipherInputStream extends InputStream
+		{
+			private final InputStream m_sBase;
+			private final Cipher m_c;
+			private final byte[] m_pbIn = new byte[BufferSize];
+			private byte[] m_pbOut;
+			private int m_iOutPos = 0;
+			private int m_iOutEnd = 0;
+			private boolean m_bEos = false;
+
+			public CipherInputStream(InputStream sBase, Cipher c)
+			{
+				m_sBase = sBase;
+				m_c = c;
+				m_pbOut = new byte[c.getOutputSize(BufferSize)];
+			}
+
+			private boolean Fill() throws IOException
+			{
+				while(m_iOutPos == m_iOutEnd)
+				{
+					if(m_bEos) return false;
+
+					int n = m_sBase.read(m_pbIn, 0, m_pbIn.length);
+					try
+					{
+						m_iOutPos = 0;
+						if(n < 0)
+						{
+							m_bEos = true;
+							m_pbOut = EnsureSize(m_pbOut, m_c.getOutputSize(0));
+							m_iOutEnd = m_c.doFinal(m_pbOut, 0);
+						}
+						else
+						{
+							m_pbOut = EnsureSize(m_pbOut, m_c.getOutputSize(n));
+							m_iOutEnd = m_c.update(m_pbIn, 0, n, m_pbOut, 0);
+						}
+					}
+					catch(GeneralSecurityException e) { throw new IOException(e); }
+				}
+
+				return true;
+			}
+
+			@Override
+			public int read() throws IOException
+			{
+				if(!Fill()) return -1;
+				return (m_pbOut[m_iOutPos++] & 0xFF);
+			}
+
+			@Override
+			public int read(byte[] pb, int iOffset, int nCount) throws IOException
+			{
+				if(nCount == 0) return 0;
+				if(!Fill()) return -1;
+
+				int n = Math.min(nCount, m_iOutEnd - m_iOutPos);
+				System.arraycopy(m_pbOut, m_iOutPos, pb, iOffset, n);
+				m_iOutPos += n;
+				return n;
+			}
+
+			@Override
+			public int available()
+			{
+				return (m_iOutEnd - m_iOutPos);
+			}
+
+			@Override
+			public void close() throws IOException
+			{
+				MemUtil.ZeroByteArray(m_pbOut);
+				m_sBase.close();
+			}
+		}
+
+		/// <summary>
+		/// Buffers plain-text until a large chunk is available and
+		/// encrypts it with a single cipher call.
+		/// </summary>
+		private static final class CipherOutputStream extends OutputStream
+		{
+			private final OutputStream m_sBase;
+			private final Cipher m_c;
+			private final byte[] m_pbIn = new byte[BufferSize];
+			private int m_nIn = 0;
+			private byte[] m_pbOut;
+			private boolean m_bClosed = false;
+
+			public CipherOutputStream(OutputStream sBase, Cipher c)
+			{
+				m_sBase = sBase;
+				m_c = c;
+				m_pbOut = new byte[c.getOutputSize(BufferSize)];
+			}
+
+			private void Flush(boolean bFinal) throws IOException
+			{
+				try
+				{
+					m_pbOut = EnsureSize(m_pbOut, m_c.getOutputSize(m_nIn));
+					int n = (bFinal ? m_c.doFinal(m_pbIn, 0, m_nIn, m_pbOut, 0) :
+						m_c.update(m_pbIn, 0, m_nIn, m_pbOut, 0));
+					m_nIn = 0;
+					m_sBase.write(m_pbOut, 0, n);
+				}
+				catch(GeneralSecurityException e) { throw new IOException(e); }
+			}
+
+			@Override
+			public void write(int b) throws IOException
+			{
+				if(m_nIn == m_pbIn.length) Flush(false);
+				m_pbIn[m_nIn++] = (byte)b;
+			}
+
+			@Override
+			public void write(byte[] pb, int iOffset, int nCount) throws IOException
+			{
+				while(nCount > 0)
+				{
+					if(m_nIn == m_pbIn.length) Flush(false);
+
+					int n = Math.min(nCount, m_pbIn.length - m_nIn);
+					System.arraycopy(pb, iOffset, m_pbIn, m_nIn, n);
+					m_nIn += n;
+					iOffset += n;
+					nCount -= n;
+				}
+			}
+
+			@Override
+			public void close() throws IOException
+			{
+				if(m_bClosed) return;
+				m_bClosed = true;
+
+				try
+				{
+					Flush(true);
+					m_sBase.flush();
+				}
+				finally
+				{
+					MemUtil.ZeroByteArray(m_pbIn);
+					m_sBase.close();
+				}
+			}
+		}
+
+		private static byte[] EnsureSize(byte[] pb, int cb)
+		{
+			return ((pb.length >= cb) ? pb : new byte[cb]);
+		}
+	}
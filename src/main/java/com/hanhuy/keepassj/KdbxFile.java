@@ -18,7 +18,6 @@ package com.hanhuy.keepassj;
   Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
 */
 
-import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
 import com.google.common.io.BaseEncoding;
@@ -172,6 +171,7 @@ import java.util.zip.GZIPOutputStream;
 		private PwDatabase m_pwDatabase; // Not null, see constructor
 
 		private XmlSerializer m_xmlWriter = null;
+		private final char[] m_vTimeBuffer = new char[TimeUtil.UtcLength];
 		private CryptoRandomStream m_randomStream = null;
 		private KdbxFormat m_format = KdbxFormat.Default;
 		private IStatusLogger m_slLogger = null;
@@ -188,6 +188,13 @@ import java.util.zip.GZIPOutputStream;
 
 		private Map<String, ProtectedBinary> m_dictBinPool =
 			new HashMap<String, ProtectedBinary>();
+		// Content index of m_dictBinPool (protection flag, length and
+		// SHA-256 of the data -> pool keys), and a cache of the pool key
+		// of every ProtectedBinary instance that has been looked up
+		private Map<String, List<String>> m_dictBinPoolDigests =
+			new HashMap<String, List<String>>();
+		private Map<ProtectedBinary, String> m_dictBinPoolIds =
+			new IdentityHashMap<ProtectedBinary, String>();
 
 		private byte[] m_pbHashOfHeader = null;
 		private byte[] m_pbHashOfFileOnDisk = null;
@@ -238,6 +245,47 @@ import java.util.zip.GZIPOutputStream;
 		}
         public void setDetachBinaries(String value) { m_strDetachBins = value; }
 
+		private boolean m_bPipelinedLoad = false;
+		/// <summary>
+		/// If <c>true</c>, <c>Load</c> decrypts, verifies the block hashes
+		/// and decompresses the data on separate threads, ahead of the XML
+		/// parser. The loaded data is the same as in sequential mode.
+		/// </summary>
+		public boolean getPipelinedLoad()
+		{
+			return m_bPipelinedLoad;
+		}
+        public void setPipelinedLoad(boolean value) { m_bPipelinedLoad = value; }
+
+		private boolean m_bPipelinedSave = false;
+		/// <summary>
+		/// If <c>true</c>, <c>Save</c> compresses, hashes and encrypts the
+		/// data on separate threads, while the XML document is serialized.
+		/// The written data is the same as in sequential mode.
+		/// </summary>
+		public boolean getPipelinedSave()
+		{
+			return m_bPipelinedSave;
+		}
+        public void setPipelinedSave(boolean value) { m_bPipelinedSave = value; }
+
+		private boolean m_bDeferBinaries = false;
+		/// <summary>
+		/// If <c>true</c>, <c>Load</c> keeps compressed binaries in their
+		/// compressed form; each one is only decompressed when its data
+		/// is accessed for the first time. Corrupt compressed data is
+		/// then only detected on that access (which may be any method
+		/// that needs the data, like <c>getLength</c>, <c>ReadData</c>,
+		/// <c>equals</c> or a later <c>Save</c>), and is reported by a
+		/// <c>KdbxFileFormatException</c> instead of an exception of
+		/// <c>Load</c>.
+		/// </summary>
+		public boolean getDeferBinaries()
+		{
+			return m_bDeferBinaries;
+		}
+        public void setDeferBinaries(boolean value) { m_bDeferBinaries = value; }
+
 		/// <summary>
 		/// Default constructor.
 		/// </summary>
@@ -270,6 +318,8 @@ import java.util.zip.GZIPOutputStream;
 		private void BinPoolBuild(PwGroup pgDataSource)
 		{
 			m_dictBinPool = new HashMap<String, ProtectedBinary>();
+			m_dictBinPoolDigests = new HashMap<String, List<String>>();
+			m_dictBinPoolIds = new IdentityHashMap<ProtectedBinary, String>();
 
 			if(pgDataSource == null) { assert false; return; }
 
@@ -299,23 +349,75 @@ import java.util.zip.GZIPOutputStream;
 		{
 			if(pb == null) { assert false; return; }
 
-			if(BinPoolFind(pb) != null) return; // Exists already
+			if(m_dictBinPoolIds.containsKey(pb)) return; // Exists already
 
-			m_dictBinPool.put(String.valueOf(m_dictBinPool.size()), pb);
+			byte[] pbData = pb.ReadData();
+			try
+			{
+				String strDigest = BinPoolDigest(pb, pbData);
+				String strKey = BinPoolFind(pbData, strDigest);
+				if(strKey == null)
+				{
+					strKey = String.valueOf(m_dictBinPool.size());
+					m_dictBinPool.put(strKey, pb);
+
+					List<String> lKeys = m_dictBinPoolDigests.get(strDigest);
+					if(lKeys == null)
+					{
+						lKeys = new ArrayList<String>(1);
+						m_dictBinPoolDigests.put(strDigest, lKeys);
+					}
+					lKeys.add(strKey);
+				}
+
+				m_dictBinPoolIds.put(pb, strKey);
+			}
+			finally { MemUtil.ZeroByteArray(pbData); }
 		}
 
 		private String BinPoolFind(ProtectedBinary pb)
 		{
 			if(pb == null) { assert false; return null; }
 
-			for(Map.Entry<String, ProtectedBinary> kvp : m_dictBinPool.entrySet())
+			String strKey = m_dictBinPoolIds.get(pb);
+			if(strKey != null) return strKey;
+
+			byte[] pbData = pb.ReadData();
+			try
 			{
-				if(pb.Equals(kvp.getValue())) return kvp.getKey();
+				strKey = BinPoolFind(pbData, BinPoolDigest(pb, pbData));
+				if(strKey != null) m_dictBinPoolIds.put(pb, strKey);
+				return strKey;
+			}
+			finally { MemUtil.ZeroByteArray(pbData); }
+		}
+
+		private String BinPoolFind(byte[] pbData, String strDigest)
+		{
+			List<String> lKeys = m_dictBinPoolDigests.get(strDigest);
+			if(lKeys == null) return null;
+
+			// The digest only narrows down the candidates; compare the
+			// actual data in order to be safe against collisions
+			for(String strKey : lKeys)
+			{
+				byte[] pbPool = m_dictBinPool.get(strKey).ReadData();
+				boolean bEq = MemUtil.ArraysEqual(pbData, pbPool);
+				MemUtil.ZeroByteArray(pbPool);
+
+				if(bEq) return strKey;
 			}
 
 			return null;
 		}
 
+		private static String BinPoolDigest(ProtectedBinary pb, byte[] pbData)
+		{
+			// Same criteria as ProtectedBinary.Equals
+			return (pb.isProtected() ? "P" : "U") + String.valueOf(pbData.length) +
+				":" + BaseEncoding.base16().encode(Digests.sha256(pbData));
+		}
+
 		private ProtectedBinary BinPoolGet(String strKey)
 		{
 			if(strKey == null) { assert false; return null; }
@@ -393,6 +495,7 @@ import java.util.zip.GZIPOutputStream;
                 m_slLogger = slLogger;
 
                 HashingInputStreamEx hashedStream = new HashingInputStreamEx(sSource);
+                List<PipelinedInputStream> lStages = new ArrayList<PipelinedInputStream>();
 
                 Charset encNoBom = StrUtil.Utf8;
                 try
@@ -426,11 +529,29 @@ import java.util.zip.GZIPOutputStream;
                                 );
                         }
 
+                        if(m_bPipelinedLoad)
+                        {
+                            sDecrypted = new PipelinedInputStream(sDecrypted, "decrypt");
+                            lStages.add((PipelinedInputStream)sDecrypted);
+                        }
+
                         InputStream sHashed = new HashedBlockStream.Input(sDecrypted,
                                 !m_bRepairMode);
+                        if(m_bPipelinedLoad)
+                        {
+                            sHashed = new PipelinedInputStream(sHashed, "verify");
+                            lStages.add((PipelinedInputStream)sHashed);
+                        }
 
                         if(m_pwDatabase.getCompression() == PwCompressionAlgorithm.GZip)
+                        {
                             readerStream = new GZIPInputStream(sHashed);
+                            if(m_bPipelinedLoad)
+                            {
+                                readerStream = new PipelinedInputStream(readerStream, "inflate");
+                                lStages.add((PipelinedInputStream)readerStream);
+                            }
+                        }
                         else readerStream = sHashed;
                     }
                     else if(kdbFormat == KdbxFormat.PlainXml)
@@ -462,6 +583,10 @@ import java.util.zip.GZIPOutputStream;
                     throw new KdbxFileFormatException(e);
                 }
                 finally {
+                    // Stop all workers, if loading has failed
+                    for(int i = lStages.size() - 1; i >= 0; --i)
+                        lStages.get(i).Abort();
+
                     try {
                         CommonCleanUpRead(sSource, hashedStream);
                     } catch (AssertionError e) {
@@ -749,6 +874,137 @@ import java.util.zip.GZIPOutputStream;
         EntryHistory
     }
 
+    // Names of the elements that the reader understands; a tag name is
+    // resolved once (see ElemOf), such that ReadXmlElement and
+    // EndXmlElement can dispatch on it instead of comparing strings
+    private enum KdbElem
+    {
+        Unknown(null),
+        DocNode(ElemDocNode),
+        Meta(ElemMeta),
+        Root(ElemRoot),
+        Group(ElemGroup),
+        Entry(ElemEntry),
+
+        Generator(ElemGenerator),
+        HeaderHash(ElemHeaderHash),
+        DbName(ElemDbName),
+        DbNameChanged(ElemDbNameChanged),
+        DbDesc(ElemDbDesc),
+        DbDescChanged(ElemDbDescChanged),
+        DbDefaultUser(ElemDbDefaultUser),
+        DbDefaultUserChanged(ElemDbDefaultUserChanged),
+        DbMntncHistoryDays(ElemDbMntncHistoryDays),
+        DbColor(ElemDbColor),
+        DbKeyChanged(ElemDbKeyChanged),
+        DbKeyChangeRec(ElemDbKeyChangeRec),
+        DbKeyChangeForce(ElemDbKeyChangeForce),
+        RecycleBinEnabled(ElemRecycleBinEnabled),
+        RecycleBinUuid(ElemRecycleBinUuid),
+        RecycleBinChanged(ElemRecycleBinChanged),
+        EntryTemplatesGroup(ElemEntryTemplatesGroup),
+        EntryTemplatesGroupChanged(ElemEntryTemplatesGroupChanged),
+        HistoryMaxItems(ElemHistoryMaxItems),
+        HistoryMaxSize(ElemHistoryMaxSize),
+        LastSelectedGroup(ElemLastSelectedGroup),
+        LastTopVisibleGroup(ElemLastTopVisibleGroup),
+
+        MemoryProt(ElemMemoryProt),
+        ProtTitle(ElemProtTitle),
+        ProtUserName(ElemProtUserName),
+        ProtPassword(ElemProtPassword),
+        ProtUrl(ElemProtUrl),
+        ProtNotes(ElemProtNotes),
+
+        CustomIcons(ElemCustomIcons),
+        CustomIconItem(ElemCustomIconItem),
+        CustomIconItemData(ElemCustomIconItemData),
+
+        AutoType(ElemAutoType),
+        History(ElemHistory),
+
+        Name(ElemName),
+        Notes(ElemNotes),
+        Uuid(ElemUuid), // Also ElemCustomIconItemID
+        Icon(ElemIcon),
+        CustomIconID(ElemCustomIconID),
+        FgColor(ElemFgColor),
+        BgColor(ElemBgColor),
+        OverrideUrl(ElemOverrideUrl),
+        Times(ElemTimes),
+        Tags(ElemTags),
+
+        CreationTime(ElemCreationTime),
+        LastModTime(ElemLastModTime),
+        LastAccessTime(ElemLastAccessTime),
+        ExpiryTime(ElemExpiryTime),
+        Expires(ElemExpires),
+        UsageCount(ElemUsageCount),
+        LocationChanged(ElemLocationChanged),
+
+        GroupDefaultAutoTypeSeq(ElemGroupDefaultAutoTypeSeq),
+        EnableAutoType(ElemEnableAutoType),
+        EnableSearching(ElemEnableSearching),
+
+        Str(ElemString),
+        Binary(ElemBinary),
+        Key(ElemKey),
+        Value(ElemValue),
+
+        AutoTypeEnabled(ElemAutoTypeEnabled),
+        AutoTypeObfuscation(ElemAutoTypeObfuscation),
+        AutoTypeDefaultSeq(ElemAutoTypeDefaultSeq),
+        AutoTypeItem(ElemAutoTypeItem),
+        Window(ElemWindow),
+        KeystrokeSequence(ElemKeystrokeSequence),
+
+        Binaries(ElemBinaries),
+
+        IsExpanded(ElemIsExpanded),
+        LastTopVisibleEntry(ElemLastTopVisibleEntry),
+
+        DeletedObjects(ElemDeletedObjects),
+        DeletedObject(ElemDeletedObject),
+        DeletionTime(ElemDeletionTime),
+
+        CustomData(ElemCustomData),
+        StringDictExItem(ElemStringDictExItem);
+
+        private final String m_strName;
+
+        KdbElem(String strName)
+        {
+            m_strName = strName;
+        }
+    }
+
+    private static final Map<String, KdbElem> g_dictElems = BuildElemMap();
+
+    private static Map<String, KdbElem> BuildElemMap()
+    {
+        KdbElem[] vElems = KdbElem.values();
+        Map<String, KdbElem> d = new HashMap<String, KdbElem>(vElems.length * 2);
+        for(KdbElem e : vElems)
+        {
+            if(e.m_strName == null) continue;
+
+            KdbElem eOld = d.put(e.m_strName, e);
+            assert eOld == null;
+        }
+
+        assert ElemCustomIconItemID.equals(ElemUuid);
+        return d;
+    }
+
+    private static KdbElem ElemOf(XmlPullParser xr)
+    {
+        String strName = xr.getName();
+        if(strName == null) return KdbElem.Unknown;
+
+        KdbElem e = g_dictElems.get(strName);
+        return ((e != null) ? e : KdbElem.Unknown);
+    }
+
     private boolean m_bReadNextNode = true;
     private Stack<PwGroup> m_ctxGroups = new Stack<PwGroup>();
     private PwGroup m_ctxGroup = null;
@@ -839,13 +1095,13 @@ import java.util.zip.GZIPOutputStream;
             switch(xr.getEventType())
             {
                 case XmlPullParser.START_TAG:
-                    ctx = ReadXmlElement(ctx, xr);
+                    ctx = ReadXmlElement(ctx, ElemOf(xr), xr);
                     if (xr.getEventType() == XmlPullParser.START_TAG &&
                             xr.isEmptyElementTag()) xr.next(); // skip empty END_TAG
                     break;
 
                 case XmlPullParser.END_TAG:
-                    ctx = EndXmlElement(ctx, xr);
+                    ctx = EndXmlElement(ctx, ElemOf(xr), xr);
                     break;
 
                 case XmlPullParser.DOCDECL:
@@ -880,130 +1136,172 @@ import java.util.zip.GZIPOutputStream;
         if(m_ctxGroups.size() != 0) throw new KdbxFileFormatException("nonzero groups");
     }
 
-    private KdbContext ReadXmlElement(KdbContext ctx, XmlPullParser xr) throws XmlPullParserException, IOException {
+    private KdbContext ReadXmlElement(KdbContext ctx, KdbElem elem, XmlPullParser xr) throws XmlPullParserException, IOException {
         switch(ctx)
         {
             case Null:
-                if(Objects.equal(xr.getName(), ElemDocNode))
+                if(elem == KdbElem.DocNode)
                     return SwitchContext(ctx, KdbContext.KeePassFile, xr);
                 else ReadUnknown(xr);
                 break;
 
             case KeePassFile:
-                if(xr.getName().equals(ElemMeta))
-                    return SwitchContext(ctx, KdbContext.Meta, xr);
-                else if(xr.getName().equals(ElemRoot))
-                    return SwitchContext(ctx, KdbContext.Root, xr);
-                else ReadUnknown(xr);
+                switch(elem)
+                {
+                    case Meta:
+                        return SwitchContext(ctx, KdbContext.Meta, xr);
+                    case Root:
+                        return SwitchContext(ctx, KdbContext.Root, xr);
+                    default:
+                        ReadUnknown(xr);
+                        break;
+                }
                 break;
 
             case Meta:
-                if(xr.getName().equals(ElemGenerator))
-                    ReadString(xr); // Ignore
-                else if(xr.getName().equals(ElemHeaderHash))
-                {
-                    String strHash = ReadString(xr);
-                    if(!Strings.isNullOrEmpty(strHash) && (m_pbHashOfHeader != null) &&
-                            !m_bRepairMode)
-                    {
-                        byte[] pbHash = BaseEncoding.base64().decode(strHash);
-                        if(!MemUtil.ArraysEqual(pbHash, m_pbHashOfHeader))
-                            throw new KdbxFileFormatException("file corrupted");
-                    }
-                }
-                else if(xr.getName().equals(ElemDbName))
-                    m_pwDatabase.setName(ReadString(xr));
-                else if(xr.getName().equals(ElemDbNameChanged))
-                    m_pwDatabase.setNameChanged(ReadTime(xr));
-                else if(xr.getName().equals(ElemDbDesc))
-                    m_pwDatabase.setDescription(ReadString(xr));
-                else if(xr.getName().equals(ElemDbDescChanged))
-                    m_pwDatabase.setDescriptionChanged(ReadTime(xr));
-                else if(xr.getName().equals(ElemDbDefaultUser))
-                    m_pwDatabase.setDefaultUserName(ReadString(xr));
-                else if(xr.getName().equals(ElemDbDefaultUserChanged))
-                    m_pwDatabase.setDefaultUserNameChanged(ReadTime(xr));
-                else if(xr.getName().equals(ElemDbMntncHistoryDays))
-                    m_pwDatabase.setMaintenanceHistoryDays(ReadUInt(xr, 365));
-                else if(xr.getName().equals(ElemDbColor))
+                switch(elem)
                 {
-                    String strColor = ReadString(xr);
-                    if(!Strings.isNullOrEmpty(strColor))
-                        m_pwDatabase.setColor(ColorTranslator.FromHtml(strColor));
-                }
-                else if(xr.getName().equals(ElemDbKeyChanged))
-                    m_pwDatabase.setMasterKeyChanged(ReadTime(xr));
-                else if(xr.getName().equals(ElemDbKeyChangeRec))
-                    m_pwDatabase.setMasterKeyChangeRec(ReadLong(xr, -1));
-                else if(xr.getName().equals(ElemDbKeyChangeForce))
-                    m_pwDatabase.setMasterKeyChangeForce(ReadLong(xr, -1));
-                else if(xr.getName().equals(ElemMemoryProt))
-                    return SwitchContext(ctx, KdbContext.MemoryProtection, xr);
-                else if(xr.getName().equals(ElemCustomIcons))
-                    return SwitchContext(ctx, KdbContext.CustomIcons, xr);
-                else if(xr.getName().equals(ElemRecycleBinEnabled))
-                    m_pwDatabase.setRecycleBinEnabled(ReadBool(xr, true));
-                else if(xr.getName().equals(ElemRecycleBinUuid))
-                    m_pwDatabase.setRecycleBinUuid(ReadUuid(xr));
-                else if(xr.getName().equals(ElemRecycleBinChanged))
-                    m_pwDatabase.setRecycleBinChanged(ReadTime(xr));
-                else if(xr.getName().equals(ElemEntryTemplatesGroup))
-                    m_pwDatabase.setEntryTemplatesGroup(ReadUuid(xr));
-                else if(xr.getName().equals(ElemEntryTemplatesGroupChanged))
-                    m_pwDatabase.setEntryTemplatesGroupChanged(ReadTime(xr));
-                else if(xr.getName().equals(ElemHistoryMaxItems))
-                    m_pwDatabase.setHistoryMaxItems(ReadInt(xr, -1));
-                else if(xr.getName().equals(ElemHistoryMaxSize))
-                    m_pwDatabase.setHistoryMaxSize(ReadLong(xr, -1));
-                else if(xr.getName().equals(ElemLastSelectedGroup)) {
-                    m_pwDatabase.setLastSelectedGroup(ReadUuid(xr));
+                    case Generator:
+                        ReadString(xr); // Ignore
+                        break;
+                    case HeaderHash:
+                        String strHash = ReadString(xr);
+                        if(!Strings.isNullOrEmpty(strHash) && (m_pbHashOfHeader != null) &&
+                                !m_bRepairMode)
+                        {
+                            byte[] pbHash = BaseEncoding.base64().decode(strHash);
+                            if(!MemUtil.ArraysEqual(pbHash, m_pbHashOfHeader))
+                                throw new KdbxFileFormatException("file corrupted");
+                        }
+                        break;
+                    case DbName:
+                        m_pwDatabase.setName(ReadString(xr));
+                        break;
+                    case DbNameChanged:
+                        m_pwDatabase.setNameChanged(ReadTime(xr));
+                        break;
+                    case DbDesc:
+                        m_pwDatabase.setDescription(ReadString(xr));
+                        break;
+                    case DbDescChanged:
+                        m_pwDatabase.setDescriptionChanged(ReadTime(xr));
+                        break;
+                    case DbDefaultUser:
+                        m_pwDatabase.setDefaultUserName(ReadString(xr));
+                        break;
+                    case DbDefaultUserChanged:
+                        m_pwDatabase.setDefaultUserNameChanged(ReadTime(xr));
+                        break;
+                    case DbMntncHistoryDays:
+                        m_pwDatabase.setMaintenanceHistoryDays(ReadUInt(xr, 365));
+                        break;
+                    case DbColor:
+                        String strColor = ReadString(xr);
+                        if(!Strings.isNullOrEmpty(strColor))
+                            m_pwDatabase.setColor(ColorTranslator.FromHtml(strColor));
+                        break;
+                    case DbKeyChanged:
+                        m_pwDatabase.setMasterKeyChanged(ReadTime(xr));
+                        break;
+                    case DbKeyChangeRec:
+                        m_pwDatabase.setMasterKeyChangeRec(ReadLong(xr, -1));
+                        break;
+                    case DbKeyChangeForce:
+                        m_pwDatabase.setMasterKeyChangeForce(ReadLong(xr, -1));
+                        break;
+                    case MemoryProt:
+                        return SwitchContext(ctx, KdbContext.MemoryProtection, xr);
+                    case CustomIcons:
+                        return SwitchContext(ctx, KdbContext.CustomIcons, xr);
+                    case RecycleBinEnabled:
+                        m_pwDatabase.setRecycleBinEnabled(ReadBool(xr, true));
+                        break;
+                    case RecycleBinUuid:
+                        m_pwDatabase.setRecycleBinUuid(ReadUuid(xr));
+                        break;
+                    case RecycleBinChanged:
+                        m_pwDatabase.setRecycleBinChanged(ReadTime(xr));
+                        break;
+                    case EntryTemplatesGroup:
+                        m_pwDatabase.setEntryTemplatesGroup(ReadUuid(xr));
+                        break;
+                    case EntryTemplatesGroupChanged:
+                        m_pwDatabase.setEntryTemplatesGroupChanged(ReadTime(xr));
+                        break;
+                    case HistoryMaxItems:
+                        m_pwDatabase.setHistoryMaxItems(ReadInt(xr, -1));
+                        break;
+                    case HistoryMaxSize:
+                        m_pwDatabase.setHistoryMaxSize(ReadLong(xr, -1));
+                        break;
+                    case LastSelectedGroup:
+                        m_pwDatabase.setLastSelectedGroup(ReadUuid(xr));
+                        break;
+                    case LastTopVisibleGroup:
+                        m_pwDatabase.setLastTopVisibleGroup(ReadUuid(xr));
+                        break;
+                    case Binaries:
+                        return SwitchContext(ctx, KdbContext.Binaries, xr);
+                    case CustomData:
+                        return SwitchContext(ctx, KdbContext.CustomData, xr);
+                    default:
+                        ReadUnknown(xr);
+                        break;
                 }
-                else if(xr.getName().equals(ElemLastTopVisibleGroup))
-                    m_pwDatabase.setLastTopVisibleGroup(ReadUuid(xr));
-                else if(xr.getName().equals(ElemBinaries))
-                    return SwitchContext(ctx, KdbContext.Binaries, xr);
-                else if(xr.getName().equals(ElemCustomData))
-                    return SwitchContext(ctx, KdbContext.CustomData, xr);
-                else ReadUnknown(xr);
                 break;
 
             case MemoryProtection:
-                if(xr.getName().equals(ElemProtTitle))
-                    m_pwDatabase.getMemoryProtection().ProtectTitle = ReadBool(xr, false);
-                else if(xr.getName().equals(ElemProtUserName))
-                    m_pwDatabase.getMemoryProtection().ProtectUserName = ReadBool(xr, false);
-                else if(xr.getName().equals(ElemProtPassword))
-                    m_pwDatabase.getMemoryProtection().ProtectPassword = ReadBool(xr, true);
-                else if(xr.getName().equals(ElemProtUrl))
-                    m_pwDatabase.getMemoryProtection().ProtectUrl = ReadBool(xr, false);
-                else if(xr.getName().equals(ElemProtNotes))
-                    m_pwDatabase.getMemoryProtection().ProtectNotes = ReadBool(xr, false);
-                    // else if(xr.Name == ElemProtAutoHide)
+                switch(elem)
+                {
+                    case ProtTitle:
+                        m_pwDatabase.getMemoryProtection().ProtectTitle = ReadBool(xr, false);
+                        break;
+                    case ProtUserName:
+                        m_pwDatabase.getMemoryProtection().ProtectUserName = ReadBool(xr, false);
+                        break;
+                    case ProtPassword:
+                        m_pwDatabase.getMemoryProtection().ProtectPassword = ReadBool(xr, true);
+                        break;
+                    case ProtUrl:
+                        m_pwDatabase.getMemoryProtection().ProtectUrl = ReadBool(xr, false);
+                        break;
+                    case ProtNotes:
+                        m_pwDatabase.getMemoryProtection().ProtectNotes = ReadBool(xr, false);
+                        break;
+                    // case ProtAutoHide:
                     //	m_pwDatabase.MemoryProtection.AutoEnableVisualHiding = ReadBool(xr, true);
-                else ReadUnknown(xr);
+                    default:
+                        ReadUnknown(xr);
+                        break;
+                }
                 break;
 
             case CustomIcons:
-                if(xr.getName().equals(ElemCustomIconItem))
+                if(elem == KdbElem.CustomIconItem)
                     return SwitchContext(ctx, KdbContext.CustomIcon, xr);
                 else ReadUnknown(xr);
                 break;
 
             case CustomIcon:
-                if(xr.getName().equals(ElemCustomIconItemID))
-                    m_uuidCustomIconID = ReadUuid(xr);
-                else if(xr.getName().equals(ElemCustomIconItemData))
+                switch(elem)
                 {
-                    String strData = ReadString(xr);
-                    if(!Strings.isNullOrEmpty(strData))
-                        m_pbCustomIconData = BaseEncoding.base64().decode(strData);
-                    else { assert false; }
+                    case Uuid: // ElemCustomIconItemID
+                        m_uuidCustomIconID = ReadUuid(xr);
+                        break;
+                    case CustomIconItemData:
+                        String strData = ReadString(xr);
+                        if(!Strings.isNullOrEmpty(strData))
+                            m_pbCustomIconData = BaseEncoding.base64().decode(strData);
+                        else { assert false; }
+                        break;
+                    default:
+                        ReadUnknown(xr);
+                        break;
                 }
-                else ReadUnknown(xr);
                 break;
 
             case Binaries:
-                if(xr.getName().equals(ElemBinary))
+                if(elem == KdbElem.Binary)
                 {
                     String strKey = xr.getAttributeValue(null, AttrId);
                     if(strKey != null)
@@ -1018,123 +1316,150 @@ import java.util.zip.GZIPOutputStream;
                 break;
 
             case CustomData:
-                if(xr.getName().equals(ElemStringDictExItem))
+                if(elem == KdbElem.StringDictExItem)
                     return SwitchContext(ctx, KdbContext.CustomDataItem, xr);
                 else ReadUnknown(xr);
                 break;
 
             case CustomDataItem:
-                if(xr.getName().equals(ElemKey))
-                    m_strCustomDataKey = ReadString(xr);
-                else if(xr.getName().equals(ElemValue))
-                    m_strCustomDataValue = ReadString(xr);
-                else ReadUnknown(xr);
+                switch(elem)
+                {
+                    case Key:
+                        m_strCustomDataKey = ReadString(xr);
+                        break;
+                    case Value:
+                        m_strCustomDataValue = ReadString(xr);
+                        break;
+                    default:
+                        ReadUnknown(xr);
+                        break;
+                }
                 break;
 
             case Root:
-                if(xr.getName().equals(ElemGroup))
+                switch(elem)
                 {
-                    assert m_ctxGroups.size() == 0;
-                    if(m_ctxGroups.size() != 0) throw new KdbxFileFormatException("groups size not 0");
+                    case Group:
+                        assert m_ctxGroups.size() == 0;
+                        if(m_ctxGroups.size() != 0) throw new KdbxFileFormatException("groups size not 0");
 
-                    m_pwDatabase.setRootGroup(new PwGroup(false, false));
-                    m_ctxGroups.push(m_pwDatabase.getRootGroup());
-                    m_ctxGroup = m_ctxGroups.peek();
+                        m_pwDatabase.setRootGroup(new PwGroup(false, false));
+                        m_ctxGroups.push(m_pwDatabase.getRootGroup());
+                        m_ctxGroup = m_ctxGroups.peek();
 
-                    return SwitchContext(ctx, KdbContext.Group, xr);
+                        return SwitchContext(ctx, KdbContext.Group, xr);
+                    case DeletedObjects:
+                        return SwitchContext(ctx, KdbContext.RootDeletedObjects, xr);
+                    default:
+                        ReadUnknown(xr);
+                        break;
                 }
-                else if(xr.getName().equals(ElemDeletedObjects))
-                    return SwitchContext(ctx, KdbContext.RootDeletedObjects, xr);
-                else ReadUnknown(xr);
                 break;
 
             case Group:
-                if(xr.getName().equals(ElemUuid))
-                    m_ctxGroup.setUuid(ReadUuid(xr));
-                else if(xr.getName().equals(ElemName))
-                    m_ctxGroup.setName(ReadString(xr));
-                else if(xr.getName().equals(ElemNotes))
-                    m_ctxGroup.setNotes(ReadString(xr));
-                else if(xr.getName().equals(ElemIcon))
-                    m_ctxGroup.setIconId(PwIcon.values()[ReadInt(xr, PwIcon.Folder.ordinal())]);
-                else if(xr.getName().equals(ElemCustomIconID))
-                    m_ctxGroup.setCustomIconUuid(ReadUuid(xr));
-                else if(xr.getName().equals(ElemTimes))
-                    return SwitchContext(ctx, KdbContext.GroupTimes, xr);
-                else if(xr.getName().equals(ElemIsExpanded))
-                    m_ctxGroup.setExpanded(ReadBool(xr, true));
-                else if(xr.getName().equals(ElemGroupDefaultAutoTypeSeq))
-                    m_ctxGroup.setDefaultAutoTypeSequence(ReadString(xr));
-                else if(xr.getName().equals(ElemEnableAutoType))
-                    m_ctxGroup.setEnableAutoType(StrUtil.StringToBoolEx(ReadString(xr)));
-                else if(xr.getName().equals(ElemEnableSearching))
-                    m_ctxGroup.setEnableSearching(StrUtil.StringToBoolEx(ReadString(xr)));
-                else if(xr.getName().equals(ElemLastTopVisibleEntry))
-                    m_ctxGroup.setLastTopVisibleEntry(ReadUuid(xr));
-                else if(xr.getName().equals(ElemGroup))
+                switch(elem)
                 {
-                    m_ctxGroup = new PwGroup(false, false);
-                    m_ctxGroups.peek().AddGroup(m_ctxGroup, true);
+                    case Uuid:
+                        m_ctxGroup.setUuid(ReadUuid(xr));
+                        break;
+                    case Name:
+                        m_ctxGroup.setName(ReadString(xr));
+                        break;
+                    case Notes:
+                        m_ctxGroup.setNotes(ReadString(xr));
+                        break;
+                    case Icon:
+                        m_ctxGroup.setIconId(PwIcon.values()[ReadInt(xr, PwIcon.Folder.ordinal())]);
+                        break;
+                    case CustomIconID:
+                        m_ctxGroup.setCustomIconUuid(ReadUuid(xr));
+                        break;
+                    case Times:
+                        return SwitchContext(ctx, KdbContext.GroupTimes, xr);
+                    case IsExpanded:
+                        m_ctxGroup.setExpanded(ReadBool(xr, true));
+                        break;
+                    case GroupDefaultAutoTypeSeq:
+                        m_ctxGroup.setDefaultAutoTypeSequence(ReadString(xr));
+                        break;
+                    case EnableAutoType:
+                        m_ctxGroup.setEnableAutoType(StrUtil.StringToBoolEx(ReadString(xr)));
+                        break;
+                    case EnableSearching:
+                        m_ctxGroup.setEnableSearching(StrUtil.StringToBoolEx(ReadString(xr)));
+                        break;
+                    case LastTopVisibleEntry:
+                        m_ctxGroup.setLastTopVisibleEntry(ReadUuid(xr));
+                        break;
+                    case Group:
+                        m_ctxGroup = new PwGroup(false, false);
+                        m_ctxGroups.peek().AddGroup(m_ctxGroup, true);
 
-                    m_ctxGroups.push(m_ctxGroup);
+                        m_ctxGroups.push(m_ctxGroup);
 
-                    return SwitchContext(ctx, KdbContext.Group, xr);
-                }
-                else {
-                    if (xr.getName().equals(ElemEntry)) {
+                        return SwitchContext(ctx, KdbContext.Group, xr);
+                    case Entry:
                         m_ctxEntry = new PwEntry(false, false);
                         m_ctxGroup.AddEntry(m_ctxEntry, true);
 
                         m_bEntryInHistory = false;
                         return SwitchContext(ctx, KdbContext.Entry, xr);
-                    } else ReadUnknown(xr);
+                    default:
+                        ReadUnknown(xr);
+                        break;
                 }
                 break;
 
             case Entry:
-                if(xr.getName().equals(ElemUuid)) {
-                    m_ctxEntry.setUuid(ReadUuid(xr));
-                }
-                else if(xr.getName().equals(ElemIcon))
-                    m_ctxEntry.setIconId(PwIcon.values()[ReadInt(xr, PwIcon.Key.ordinal())]);
-                else if(xr.getName().equals(ElemCustomIconID))
-                    m_ctxEntry.setCustomIconUuid(ReadUuid(xr));
-                else if(xr.getName().equals(ElemFgColor))
+                switch(elem)
                 {
-                    String strColor = ReadString(xr);
-                    if(!Strings.isNullOrEmpty(strColor))
-                        m_ctxEntry.setForegroundColor(ColorTranslator.FromHtml(strColor));
-                }
-                else if(xr.getName().equals(ElemBgColor))
-                {
-                    String strColor = ReadString(xr);
-                    if(!Strings.isNullOrEmpty(strColor))
-                        m_ctxEntry.setBackgroundColor(ColorTranslator.FromHtml(strColor));
-                }
-                else if(xr.getName().equals(ElemOverrideUrl))
-                    m_ctxEntry.setOverrideUrl(ReadString(xr));
-                else if(xr.getName().equals(ElemTags))
-                    m_ctxEntry.setTags(StrUtil.StringToTags(ReadString(xr)));
-                else if(xr.getName().equals(ElemTimes))
-                    return SwitchContext(ctx, KdbContext.EntryTimes, xr);
-                else if(xr.getName().equals(ElemString))
-                    return SwitchContext(ctx, KdbContext.EntryString, xr);
-                else if(xr.getName().equals(ElemBinary))
-                    return SwitchContext(ctx, KdbContext.EntryBinary, xr);
-                else if(xr.getName().equals(ElemAutoType))
-                    return SwitchContext(ctx, KdbContext.EntryAutoType, xr);
-                else if(xr.getName().equals(ElemHistory))
-                {
-                    assert !m_bEntryInHistory;
-
-                    if(!m_bEntryInHistory)
-                    {
-                        m_ctxHistoryBase = m_ctxEntry;
-                        return SwitchContext(ctx, KdbContext.EntryHistory, xr);
-                    }
-                    else ReadUnknown(xr);
+                    case Uuid:
+                        m_ctxEntry.setUuid(ReadUuid(xr));
+                        break;
+                    case Icon:
+                        m_ctxEntry.setIconId(PwIcon.values()[ReadInt(xr, PwIcon.Key.ordinal())]);
+                        break;
+                    case CustomIconID:
+                        m_ctxEntry.setCustomIconUuid(ReadUuid(xr));
+                        break;
+                    case FgColor:
+                        String strFgColor = ReadString(xr);
+                        if(!Strings.isNullOrEmpty(strFgColor))
+                            m_ctxEntry.setForegroundColor(ColorTranslator.FromHtml(strFgColor));
+                        break;
+                    case BgColor:
+                        String strBgColor = ReadString(xr);
+                        if(!Strings.isNullOrEmpty(strBgColor))
+                            m_ctxEntry.setBackgroundColor(ColorTranslator.FromHtml(strBgColor));
+                        break;
+                    case OverrideUrl:
+                        m_ctxEntry.setOverrideUrl(ReadString(xr));
+                        break;
+                    case Tags:
+                        m_ctxEntry.setTags(StrUtil.StringToTags(ReadString(xr)));
+                        break;
+                    case Times:
+                        return SwitchContext(ctx, KdbContext.EntryTimes, xr);
+                    case Str:
+                        return SwitchContext(ctx, KdbContext.EntryString, xr);
+                    case Binary:
+                        return SwitchContext(ctx, KdbContext.EntryBinary, xr);
+                    case AutoType:
+                        return SwitchContext(ctx, KdbContext.EntryAutoType, xr);
+                    case History:
+                        assert !m_bEntryInHistory;
+
+                        if(!m_bEntryInHistory)
+                        {
+                            m_ctxHistoryBase = m_ctxEntry;
+                            return SwitchContext(ctx, KdbContext.EntryHistory, xr);
+                        }
+                        else ReadUnknown(xr);
+                        break;
+                    default:
+                        ReadUnknown(xr);
+                        break;
                 }
-                else ReadUnknown(xr);
                 break;
 
             case GroupTimes:
@@ -1143,62 +1468,103 @@ import java.util.zip.GZIPOutputStream;
                         (ITimeLogger)m_ctxGroup : (ITimeLogger)m_ctxEntry);
                 assert tl != null;
 
-                if(xr.getName().equals(ElemCreationTime))
-                    tl.setCreationTime(ReadTime(xr));
-                else if(xr.getName().equals(ElemLastModTime))
-                    tl.setLastModificationTime(ReadTime(xr));
-                else if(xr.getName().equals(ElemLastAccessTime))
-                    tl.setLastAccessTime(ReadTime(xr));
-                else if(xr.getName().equals(ElemExpiryTime))
-                    tl.setExpiryTime(ReadTime(xr));
-                else if(xr.getName().equals(ElemExpires))
-                    tl.setExpires(ReadBool(xr, false));
-                else if(xr.getName().equals(ElemUsageCount))
-                    tl.setUsageCount(ReadULong(xr, 0));
-                else if(xr.getName().equals(ElemLocationChanged))
-                    tl.setLocationChanged(ReadTime(xr));
-                else ReadUnknown(xr);
+                switch(elem)
+                {
+                    case CreationTime:
+                        tl.setCreationTime(ReadTime(xr));
+                        break;
+                    case LastModTime:
+                        tl.setLastModificationTime(ReadTime(xr));
+                        break;
+                    case LastAccessTime:
+                        tl.setLastAccessTime(ReadTime(xr));
+                        break;
+                    case ExpiryTime:
+                        tl.setExpiryTime(ReadTime(xr));
+                        break;
+                    case Expires:
+                        tl.setExpires(ReadBool(xr, false));
+                        break;
+                    case UsageCount:
+                        tl.setUsageCount(ReadULong(xr, 0));
+                        break;
+                    case LocationChanged:
+                        tl.setLocationChanged(ReadTime(xr));
+                        break;
+                    default:
+                        ReadUnknown(xr);
+                        break;
+                }
                 break;
 
             case EntryString:
-                if(xr.getName().equals(ElemKey))
-                    m_ctxStringName = ReadString(xr);
-                else if(xr.getName().equals(ElemValue))
-                    m_ctxStringValue = ReadProtectedString(xr);
-                else ReadUnknown(xr);
+                switch(elem)
+                {
+                    case Key:
+                        m_ctxStringName = ReadString(xr);
+                        break;
+                    case Value:
+                        m_ctxStringValue = ReadProtectedString(xr);
+                        break;
+                    default:
+                        ReadUnknown(xr);
+                        break;
+                }
                 break;
 
             case EntryBinary:
-                if(xr.getName().equals(ElemKey))
-                    m_ctxBinaryName = ReadString(xr);
-                else if(xr.getName().equals(ElemValue))
-                    m_ctxBinaryValue = ReadProtectedBinary(xr);
-                else ReadUnknown(xr);
+                switch(elem)
+                {
+                    case Key:
+                        m_ctxBinaryName = ReadString(xr);
+                        break;
+                    case Value:
+                        m_ctxBinaryValue = ReadProtectedBinary(xr);
+                        break;
+                    default:
+                        ReadUnknown(xr);
+                        break;
+                }
                 break;
 
             case EntryAutoType:
-                if(xr.getName().equals(ElemAutoTypeEnabled))
-                    m_ctxEntry.getAutoType().setEnabled(ReadBool(xr, true));
-                else if(xr.getName().equals(ElemAutoTypeObfuscation))
-                    m_ctxEntry.getAutoType().setObfuscationOptions(
-                            AutoTypeObfuscationOptions.values()[ReadInt(xr, 0)]);
-                else if(xr.getName().equals(ElemAutoTypeDefaultSeq))
-                    m_ctxEntry.getAutoType().setDefaultSequence(ReadString(xr));
-                else if(xr.getName().equals(ElemAutoTypeItem))
-                    return SwitchContext(ctx, KdbContext.EntryAutoTypeItem, xr);
-                else ReadUnknown(xr);
+                switch(elem)
+                {
+                    case AutoTypeEnabled:
+                        m_ctxEntry.getAutoType().setEnabled(ReadBool(xr, true));
+                        break;
+                    case AutoTypeObfuscation:
+                        m_ctxEntry.getAutoType().setObfuscationOptions(
+                                AutoTypeObfuscationOptions.values()[ReadInt(xr, 0)]);
+                        break;
+                    case AutoTypeDefaultSeq:
+                        m_ctxEntry.getAutoType().setDefaultSequence(ReadString(xr));
+                        break;
+                    case AutoTypeItem:
+                        return SwitchContext(ctx, KdbContext.EntryAutoTypeItem, xr);
+                    default:
+                        ReadUnknown(xr);
+                        break;
+                }
                 break;
 
             case EntryAutoTypeItem:
-                if(xr.getName().equals(ElemWindow))
-                    m_ctxATName = ReadString(xr);
-                else if(xr.getName().equals(ElemKeystrokeSequence))
-                    m_ctxATSeq = ReadString(xr);
-                else ReadUnknown(xr);
+                switch(elem)
+                {
+                    case Window:
+                        m_ctxATName = ReadString(xr);
+                        break;
+                    case KeystrokeSequence:
+                        m_ctxATSeq = ReadString(xr);
+                        break;
+                    default:
+                        ReadUnknown(xr);
+                        break;
+                }
                 break;
 
             case EntryHistory:
-                if(xr.getName().equals(ElemEntry))
+                if(elem == KdbElem.Entry)
                 {
                     m_ctxEntry = new PwEntry(false, false);
                     m_ctxHistoryBase.getHistory().Add(m_ctxEntry);
@@ -1210,7 +1576,7 @@ import java.util.zip.GZIPOutputStream;
                 break;
 
             case RootDeletedObjects:
-                if(xr.getName().equals(ElemDeletedObject))
+                if(elem == KdbElem.DeletedObject)
                 {
                     m_ctxDeletedObject = new PwDeletedObject();
                     m_pwDatabase.getDeletedObjects().Add(m_ctxDeletedObject);
@@ -1221,11 +1587,18 @@ import java.util.zip.GZIPOutputStream;
                 break;
 
             case DeletedObject:
-                if(xr.getName().equals(ElemUuid))
-                    m_ctxDeletedObject.setUuid(ReadUuid(xr));
-                else if(xr.getName().equals(ElemDeletionTime))
-                    m_ctxDeletedObject.setDeletionTime(ReadTime(xr));
-                else ReadUnknown(xr);
+                switch(elem)
+                {
+                    case Uuid:
+                        m_ctxDeletedObject.setUuid(ReadUuid(xr));
+                        break;
+                    case DeletionTime:
+                        m_ctxDeletedObject.setDeletionTime(ReadTime(xr));
+                        break;
+                    default:
+                        ReadUnknown(xr);
+                        break;
+                }
                 break;
 
             default:
@@ -1236,142 +1609,175 @@ import java.util.zip.GZIPOutputStream;
         return ctx;
     }
 
-    private KdbContext EndXmlElement(KdbContext ctx, XmlPullParser xr)
+    private KdbContext EndXmlElement(KdbContext ctx, KdbElem elem, XmlPullParser xr)
             throws XmlPullParserException, IOException
     {
         assert xr.getEventType() == XmlPullParser.END_TAG;
 
-        if((ctx == KdbContext.KeePassFile) && (xr.getName().equals(ElemDocNode)))
-            return KdbContext.Null;
-        else if((ctx == KdbContext.Meta) && (xr.getName().equals(ElemMeta)))
-            return KdbContext.KeePassFile;
-        else if((ctx == KdbContext.Root) && (xr.getName().equals(ElemRoot)))
-            return KdbContext.KeePassFile;
-        else if((ctx == KdbContext.MemoryProtection) && (xr.getName().equals(ElemMemoryProt)))
-            return KdbContext.Meta;
-        else if((ctx == KdbContext.CustomIcons) && (xr.getName().equals(ElemCustomIcons)))
-            return KdbContext.Meta;
-        else if((ctx == KdbContext.CustomIcon) && (xr.getName().equals(ElemCustomIconItem)))
+        switch(ctx)
         {
-            if(!m_uuidCustomIconID.Equals(PwUuid.Zero) &&
-                    (m_pbCustomIconData != null))
-                m_pwDatabase.getCustomIcons().add(new PwCustomIcon(
-                        m_uuidCustomIconID, m_pbCustomIconData));
-            else { assert false; }
+            case KeePassFile:
+                if(elem == KdbElem.DocNode) return KdbContext.Null;
+                break;
 
-            m_uuidCustomIconID = PwUuid.Zero;
-            m_pbCustomIconData = null;
+            case Meta:
+                if(elem == KdbElem.Meta) return KdbContext.KeePassFile;
+                break;
 
-            return KdbContext.CustomIcons;
-        }
-        else if((ctx == KdbContext.Binaries) && (xr.getName().equals(ElemBinaries)))
-            return KdbContext.Meta;
-        else if((ctx == KdbContext.CustomData) && (xr.getName().equals(ElemCustomData)))
-            return KdbContext.Meta;
-        else if((ctx == KdbContext.CustomDataItem) && (xr.getName().equals(ElemStringDictExItem)))
-        {
-            if((m_strCustomDataKey != null) && (m_strCustomDataValue != null))
-                m_pwDatabase.getCustomData().Set(m_strCustomDataKey, m_strCustomDataValue);
-            else { assert false; }
+            case Root:
+                if(elem == KdbElem.Root) return KdbContext.KeePassFile;
+                break;
 
-            m_strCustomDataKey = null;
-            m_strCustomDataValue = null;
+            case MemoryProtection:
+                if(elem == KdbElem.MemoryProt) return KdbContext.Meta;
+                break;
 
-            return KdbContext.CustomData;
-        }
-        else if((ctx == KdbContext.Group) && (xr.getName().equals(ElemGroup)))
-        {
-            if(PwUuid.Zero.Equals(m_ctxGroup.getUuid()))
-                m_ctxGroup.setUuid(new PwUuid(true)); // No assert (import)
+            case CustomIcons:
+                if(elem == KdbElem.CustomIcons) return KdbContext.Meta;
+                break;
 
-            m_ctxGroups.pop();
+            case CustomIcon:
+                if(elem != KdbElem.CustomIconItem) break;
+
+                if(!m_uuidCustomIconID.Equals(PwUuid.Zero) &&
+                        (m_pbCustomIconData != null))
+                    m_pwDatabase.getCustomIcons().add(new PwCustomIcon(
+                            m_uuidCustomIconID, m_pbCustomIconData));
+                else { assert false; }
+
+                m_uuidCustomIconID = PwUuid.Zero;
+                m_pbCustomIconData = null;
+
+                return KdbContext.CustomIcons;
+
+            case Binaries:
+                if(elem == KdbElem.Binaries) return KdbContext.Meta;
+                break;
+
+            case CustomData:
+                if(elem == KdbElem.CustomData) return KdbContext.Meta;
+                break;
+
+            case CustomDataItem:
+                if(elem != KdbElem.StringDictExItem) break;
+
+                if((m_strCustomDataKey != null) && (m_strCustomDataValue != null))
+                    m_pwDatabase.getCustomData().Set(m_strCustomDataKey, m_strCustomDataValue);
+                else { assert false; }
+
+                m_strCustomDataKey = null;
+                m_strCustomDataValue = null;
+
+                return KdbContext.CustomData;
+
+            case Group:
+                if(elem != KdbElem.Group) break;
+
+                if(PwUuid.Zero.Equals(m_ctxGroup.getUuid()))
+                    m_ctxGroup.setUuid(new PwUuid(true)); // No assert (import)
+
+                m_ctxGroups.pop();
+
+                if(m_ctxGroups.size() == 0)
+                {
+                    m_ctxGroup = null;
+                    return KdbContext.Root;
+                }
+                else
+                {
+                    m_ctxGroup = m_ctxGroups.peek();
+                    return KdbContext.Group;
+                }
+
+            case GroupTimes:
+                if(elem == KdbElem.Times) return KdbContext.Group;
+                break;
+
+            case Entry:
+                if(elem != KdbElem.Entry) break;
+
+                // Create new UUID if absent
+                if(PwUuid.Zero.Equals(m_ctxEntry.getUuid()))
+                    m_ctxEntry.setUuid(new PwUuid(true)); // No assert (import)
+
+                if(m_bEntryInHistory)
+                {
+                    m_ctxEntry = m_ctxHistoryBase;
+                    return KdbContext.EntryHistory;
+                }
 
-            if(m_ctxGroups.size() == 0)
-            {
-                m_ctxGroup = null;
-                return KdbContext.Root;
-            }
-            else
-            {
-                m_ctxGroup = m_ctxGroups.peek();
                 return KdbContext.Group;
-            }
-        }
-        else if((ctx == KdbContext.GroupTimes) && (xr.getName().equals(ElemTimes)))
-            return KdbContext.Group;
-        else if((ctx == KdbContext.Entry) && (xr.getName().equals(ElemEntry)))
-        {
-            // Create new UUID if absent
-            if(PwUuid.Zero.Equals(m_ctxEntry.getUuid()))
-                m_ctxEntry.setUuid(new PwUuid(true)); // No assert (import)
 
-            if(m_bEntryInHistory)
-            {
-                m_ctxEntry = m_ctxHistoryBase;
-                return KdbContext.EntryHistory;
-            }
+            case EntryTimes:
+                if(elem == KdbElem.Times) return KdbContext.Entry;
+                break;
 
-            return KdbContext.Group;
-        }
-        else if((ctx == KdbContext.EntryTimes) && (xr.getName().equals(ElemTimes)))
-            return KdbContext.Entry;
-        else if((ctx == KdbContext.EntryString) && (xr.getName().equals(ElemString)))
-        {
-            m_ctxEntry.getStrings().Set(m_ctxStringName, m_ctxStringValue);
-            m_ctxStringName = null;
-            m_ctxStringValue = null;
-            return KdbContext.Entry;
-        }
-        else if((ctx == KdbContext.EntryBinary) && (xr.getName().equals(ElemBinary)))
-        {
-            if(Strings.isNullOrEmpty(m_strDetachBins))
-                m_ctxEntry.getBinaries().Set(m_ctxBinaryName, m_ctxBinaryValue);
-            else
-            {
-                SaveBinary(m_ctxBinaryName, m_ctxBinaryValue, m_strDetachBins);
+            case EntryString:
+                if(elem != KdbElem.Str) break;
+
+                m_ctxEntry.getStrings().Set(m_ctxStringName, m_ctxStringValue);
+                m_ctxStringName = null;
+                m_ctxStringValue = null;
+                return KdbContext.Entry;
+
+            case EntryBinary:
+                if(elem != KdbElem.Binary) break;
+
+                if(Strings.isNullOrEmpty(m_strDetachBins))
+                    m_ctxEntry.getBinaries().Set(m_ctxBinaryName, m_ctxBinaryValue);
+                else
+                {
+                    SaveBinary(m_ctxBinaryName, m_ctxBinaryValue, m_strDetachBins);
+
+                    m_ctxBinaryValue = null;
+                }
 
+                m_ctxBinaryName = null;
                 m_ctxBinaryValue = null;
-            }
+                return KdbContext.Entry;
 
-            m_ctxBinaryName = null;
-            m_ctxBinaryValue = null;
-            return KdbContext.Entry;
-        }
-        else if((ctx == KdbContext.EntryAutoType) && (xr.getName().equals(ElemAutoType)))
-            return KdbContext.Entry;
-        else if((ctx == KdbContext.EntryAutoTypeItem) && (xr.getName().equals(ElemAutoTypeItem)))
-        {
-            AutoTypeAssociation atAssoc = new AutoTypeAssociation(m_ctxATName,
-                    m_ctxATSeq);
-            m_ctxEntry.getAutoType().Add(atAssoc);
-            m_ctxATName = null;
-            m_ctxATSeq = null;
-            return KdbContext.EntryAutoType;
-        }
-        else if((ctx == KdbContext.EntryHistory) && (xr.getName().equals(ElemHistory)))
-        {
-            m_bEntryInHistory = false;
-            return KdbContext.Entry;
-        }
-        else if((ctx == KdbContext.RootDeletedObjects) && (xr.getName().equals(ElemDeletedObjects)))
-            return KdbContext.Root;
-        else if((ctx == KdbContext.DeletedObject) && (xr.getName().equals(ElemDeletedObject)))
-        {
-            m_ctxDeletedObject = null;
-            return KdbContext.RootDeletedObjects;
-        }
-        else
-        {
-            throw new KdbxFileFormatException("xml end tag failure: " + ctx + " => " + xr.getName());
+            case EntryAutoType:
+                if(elem == KdbElem.AutoType) return KdbContext.Entry;
+                break;
+
+            case EntryAutoTypeItem:
+                if(elem != KdbElem.AutoTypeItem) break;
+
+                AutoTypeAssociation atAssoc = new AutoTypeAssociation(m_ctxATName,
+                        m_ctxATSeq);
+                m_ctxEntry.getAutoType().Add(atAssoc);
+                m_ctxATName = null;
+                m_ctxATSeq = null;
+                return KdbContext.EntryAutoType;
+
+            case EntryHistory:
+                if(elem != KdbElem.History) break;
+
+                m_bEntryInHistory = false;
+                return KdbContext.Entry;
+
+            case RootDeletedObjects:
+                if(elem == KdbElem.DeletedObjects) return KdbContext.Root;
+                break;
+
+            case DeletedObject:
+                if(elem != KdbElem.DeletedObject) break;
+
+                m_ctxDeletedObject = null;
+                return KdbContext.RootDeletedObjects;
+
+            default:
+                break;
         }
+
+        throw new KdbxFileFormatException("xml end tag failure: " + ctx + " => " + xr.getName());
     }
 
     private String ReadString(XmlPullParser xr) throws XmlPullParserException, IOException
     {
-        XorredBuffer xb = ProcessNode(xr);
-        if(xb != null)
+        byte[] pb = ProcessNode(xr);
+        if(pb != null)
         {
-            byte[] pb = xb.ReadPlainText();
             if(pb.length == 0) return "";
             return new String(pb, 0, pb.length, StrUtil.Utf8);
         }
@@ -1380,10 +1786,28 @@ import java.util.zip.GZIPOutputStream;
         return xr.nextText();
     }
 
-    private String ReadStringRaw(XmlPullParser xr) throws XmlPullParserException, IOException
+    private final int[] m_vTextRange = new int[2];
+
+    /// <summary>
+    /// Read the text of the current element like <c>nextText</c>, and
+    /// decode it from Base64 directly from the parser's buffer.
+    /// </summary>
+    private byte[] ReadBase64(XmlPullParser xr) throws XmlPullParserException, IOException
     {
-        //m_bReadNextNode = false; // ReadElementString skips end tag
-        return xr.nextText();
+        if(xr.getEventType() != XmlPullParser.START_TAG)
+            throw new XmlPullParserException("start tag expected");
+
+        int t = xr.next();
+        if(t == XmlPullParser.END_TAG) return new byte[0];
+        if(t != XmlPullParser.TEXT)
+            throw new XmlPullParserException("text expected in " + xr.getName());
+
+        char[] vText = xr.getTextCharacters(m_vTextRange);
+        byte[] pb = MemUtil.DecodeBase64(vText, m_vTextRange[0], m_vTextRange[1]);
+
+        if(xr.next() != XmlPullParser.END_TAG)
+            throw new XmlPullParserException("end tag expected");
+        return pb;
     }
 
     private boolean ReadBool(XmlPullParser xr, boolean bDefault)
@@ -1460,8 +1884,13 @@ import java.util.zip.GZIPOutputStream;
     }
 
     private ProtectedString ReadProtectedString(XmlPullParser xr) throws IOException, XmlPullParserException {
-        XorredBuffer xb = ProcessNode(xr);
-        if(xb != null) return new ProtectedString(true, xb);
+        byte[] pb = ProcessNode(xr);
+        if(pb != null)
+        {
+            ProtectedString ps = new ProtectedString(true, pb);
+            MemUtil.ZeroByteArray(pb);
+            return ps;
+        }
 
         boolean bProtect = false;
         if(m_format == KdbxFormat.PlainXml)
@@ -1492,17 +1921,20 @@ import java.util.zip.GZIPOutputStream;
 
         bCompressed = ValTrue.equals(xr.getAttributeValue(null, AttrCompressed));
 
-        XorredBuffer xb = ProcessNode(xr);
-        if(xb != null)
+        byte[] pb = ProcessNode(xr);
+        if(pb != null)
         {
             assert !bCompressed; // See SubWriteValue(ProtectedBinary value)
-            return new ProtectedBinary(true, xb);
+            ProtectedBinary pbProt = new ProtectedBinary(true, pb);
+            MemUtil.ZeroByteArray(pb);
+            return pbProt;
         }
 
-        String strValue = ReadString(xr);
-        if(strValue.length() == 0) return new ProtectedBinary();
+        byte[] pbData = ReadBase64(xr);
+        if(pbData.length == 0) return new ProtectedBinary();
 
-        byte[] pbData = BaseEncoding.base64().decode(strValue);
+        if(bCompressed && m_bDeferBinaries)
+            return ProtectedBinary.Deferred(pbData);
         if(bCompressed) pbData = MemUtil.Decompress(pbData);
         return new ProtectedBinary(false, pbData);
     }
@@ -1528,28 +1960,28 @@ import java.util.zip.GZIPOutputStream;
         assert xr.getName().equals(strUnknownName);
     }
 
-    private XorredBuffer ProcessNode(XmlPullParser xr) throws IOException, XmlPullParserException {
+    /// <summary>
+    /// If the current element is protected, read and decrypt its value.
+    /// The Base64 text is decoded into a new array and the inner random
+    /// stream is XORed into that array, i.e. the returned plain-text is
+    /// the only copy of the value; the caller should clear it.
+    /// </summary>
+    /// <returns>Plain-text bytes, or <c>null</c> if the element is not
+    /// protected.</returns>
+    private byte[] ProcessNode(XmlPullParser xr) throws IOException, XmlPullParserException {
         // assert xr.NodeType == XmlNodeType.Element;
 
-        XorredBuffer xb = null;
+        byte[] pb = null;
         if(xr.getAttributeCount() > 0)
         {
                 if(ValTrue.equals(xr.getAttributeValue(null, AttrProtected)))
                 {
-                    String strEncrypted = ReadStringRaw(xr);
-
-                    byte[] pbEncrypted;
-                    if(strEncrypted.length() > 0)
-                        pbEncrypted = BaseEncoding.base64().decode(strEncrypted);
-                    else pbEncrypted = new byte[0];
-
-                    byte[] pbPad = m_randomStream.GetRandomBytes((int)pbEncrypted.length);
-
-                    xb = new XorredBuffer(pbEncrypted, pbPad);
+                    pb = ReadBase64(xr);
+                    m_randomStream.XorInto(pb, 0, pb.length);
                 }
         }
 
-        return xb;
+        return pb;
     }
 
     private static KdbContext SwitchContext(KdbContext ctxCurrent,
@@ -1591,6 +2023,7 @@ import java.util.zip.GZIPOutputStream;
         m_slLogger = slLogger;
 
         HashingOutputStreamEx hashedStream = new HashingOutputStreamEx(sSaveTo);
+        List<PipelinedOutputStream> lStages = new ArrayList<PipelinedOutputStream>();
 
         Charset encNoBom = StrUtil.Utf8;
         CryptoRandom cr = CryptoRandom.getInstance();
@@ -1619,10 +2052,28 @@ import java.util.zip.GZIPOutputStream;
 
                 sEncrypted.write(m_pbStreamStartBytes, 0, m_pbStreamStartBytes.length);
 
+                if(m_bPipelinedSave)
+                {
+                    sEncrypted = new PipelinedOutputStream(sEncrypted, "encrypt");
+                    lStages.add((PipelinedOutputStream)sEncrypted);
+                }
+
                 OutputStream sHashed = new HashedBlockStream.Output(sEncrypted, 0);
+                if(m_bPipelinedSave)
+                {
+                    sHashed = new PipelinedOutputStream(sHashed, "hash");
+                    lStages.add((PipelinedOutputStream)sHashed);
+                }
 
                 if(m_pwDatabase.getCompression() == PwCompressionAlgorithm.GZip)
+                {
                     writerStream = new GZIPOutputStream(sHashed);
+                    if(m_bPipelinedSave)
+                    {
+                        writerStream = new PipelinedOutputStream(writerStream, "deflate");
+                        lStages.add((PipelinedOutputStream)writerStream);
+                    }
+                }
                 else
                     writerStream = sHashed;
             }
@@ -1640,7 +2091,13 @@ import java.util.zip.GZIPOutputStream;
             writerStream.close();
         } catch (XmlPullParserException e) {
             throw new RuntimeException(e);
-        } finally { CommonCleanUpWrite(sSaveTo, hashedStream); }
+        } finally {
+            // Stop all workers, if saving has failed
+            for(int i = lStages.size() - 1; i >= 0; --i)
+                lStages.get(i).Abort();
+
+            CommonCleanUpWrite(sSaveTo, hashedStream);
+        }
     }
 
     private void CommonCleanUpWrite(OutputStream sSaveTo, HashingOutputStreamEx hashedStream)
@@ -2094,7 +2551,15 @@ import java.util.zip.GZIPOutputStream;
     private void WriteObject(String name, Date value) throws IOException {
         assert name != null;
 
-        WriteObject(name, TimeUtil.SerializeUtc(value), false);
+        if(!TimeUtil.SerializeUtc(value, m_vTimeBuffer, 0))
+        {
+            WriteObject(name, TimeUtil.SerializeUtc(value), false);
+            return;
+        }
+
+        m_xmlWriter.startTag(null, name);
+        m_xmlWriter.text(m_vTimeBuffer, 0, TimeUtil.UtcLength);
+        m_xmlWriter.endTag(null, name);
     }
 
     private void WriteObject(String name, String strKeyName,
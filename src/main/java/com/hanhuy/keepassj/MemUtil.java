@@ -149,6 +149,59 @@ import java.util.zip.GZIPOutputStream;
 
 		}
 
+		private static final byte[] g_vBase64Values = new byte[128];
+		static
+		{
+			Arrays.fill(g_vBase64Values, (byte)-1);
+			String strAlphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+			for(int i = 0; i < strAlphabet.length(); ++i)
+				g_vBase64Values[strAlphabet.charAt(i)] = (byte)i;
+		}
+
+		/// <summary>
+		/// Decode Base64 characters (RFC 4648, padding optional) into a
+		/// new byte array of exactly the decoded length, without creating
+		/// a String first.
+		/// </summary>
+		/// <exception cref="System.IllegalArgumentException">Thrown if the
+		/// characters are not valid Base64.</exception>
+		public static byte[] DecodeBase64(char[] v, int iOffset, int cch)
+		{
+			if(v == null) throw new IllegalArgumentException("v");
+			if((iOffset < 0) || (cch < 0) || (iOffset > (v.length - cch)))
+				throw new IllegalArgumentException();
+
+			int iEnd = iOffset + cch;
+			int cPad = 0;
+			while((iEnd > iOffset) && (v[iEnd - 1] == '=') && (cPad < 2)) { --iEnd; ++cPad; }
+
+			int cchData = iEnd - iOffset;
+			int cchLast = cchData % 4;
+			if((cchLast == 1) || ((cPad > 0) && ((cchLast + cPad) != 4)))
+				throw new IllegalArgumentException("Invalid Base64 length");
+
+			byte[] pb = new byte[((cchData / 4) * 3) + ((cchLast == 0) ? 0 : (cchLast - 1))];
+
+			int iOut = 0, nBits = 0, cBits = 0;
+			for(int i = iOffset; i < iEnd; ++i)
+			{
+				char ch = v[i];
+				int n = ((ch < 128) ? g_vBase64Values[ch] : -1);
+				if(n < 0) throw new IllegalArgumentException("Invalid Base64 character");
+
+				nBits = (nBits << 6) | n;
+				cBits += 6;
+				if(cBits >= 8)
+				{
+					cBits -= 8;
+					pb[iOut++] = (byte)(nBits >> cBits);
+				}
+			}
+			assert iOut == pb.length;
+
+			return pb;
+		}
+
 		/// <summary>
 		/// Set all bytes in a byte array to zero.
 		/// </summary>
@@ -0,0 +1,43 @@
+package com.hanhuy.keepassj;
+/*
+  KeePass Password Safe - The Open-Source Password Manager
+  Copyright (C) 2003-2014 Dominik Reichl <dominik.reichl@t-online.de>
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+import java.util.EventObject;
+
+	public class ObjectTouchedEventArgs extends EventObject {
+		private static final long serialVersionUID = 1L;
+
+		private Object m_o;
+		public Object getObject() { return m_o; }
+
+		private boolean m_bModified;
+		public boolean getModified() { return m_bModified; }
+
+		private boolean m_bParentsTouched;
+		public boolean getParentsTouched() { return m_bParentsTouched; }
+
+		public ObjectTouchedEventArgs(Object o, boolean bModified,
+			boolean bParentsTouched)
+		{
+            super(o);
+			m_o = o;
+			m_bModified = bModified;
+			m_bParentsTouched = bParentsTouched;
+		}
+	}
@@ -0,0 +1,249 @@
+package com.hanhuy.keepassj;
+/*
+  KeePass Password Safe - The Open-Source Password Manager
+  Copyright (C) 2003-2014 Dominik Reichl <dominik.reichl@t-online.de>
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+	/// <summary>
+	/// Stream that reads its source on a separate thread. Chunks are handed
+	/// over through a bounded queue, so the source (e.g. a decrypting or
+	/// decompressing stream) can run ahead of the consumer.
+	/// Closing the stream lets the worker read the source to its end; use
+	/// <c>Abort</c> to stop the worker without doing so.
+	/// </summary>
+	final class PipelinedInputStream extends InputStream
+	{
+		public final static int DefaultChunkSize = 64 * 1024;
+		public final static int DefaultQueueLength = 16;
+
+		private final static Object Eos = new Object();
+
+		private final InputStream m_sSource;
+		private final int m_cbChunk;
+		private final BlockingQueue<Object> m_qData; // Chunk, Throwable or Eos
+		private final BlockingQueue<byte[]> m_qFree;
+		private final Thread m_th;
+
+		private volatile boolean m_bAbort = false;
+		private boolean m_bClosed = false;
+		private boolean m_bEos = false;
+
+		private Chunk m_chCur = null;
+		private int m_iCurPos = 0;
+
+		private static final class Chunk
+		{
+			final byte[] Data;
+			final int Length;
+
+			Chunk(byte[] pbData, int cbLength)
+			{
+				Data = pbData;
+				Length = cbLength;
+			}
+		}
+
+		public PipelinedInputStream(InputStream sSource, String strName)
+		{
+			this(sSource, strName, DefaultChunkSize, DefaultQueueLength);
+		}
+
+		public PipelinedInputStream(InputStream sSource, String strName,
+			int cbChunk, int nQueueLength)
+		{
+			if(sSource == null) throw new IllegalArgumentException("sSource");
+			if(cbChunk <= 0) throw new IllegalArgumentException("cbChunk");
+			if(nQueueLength <= 0) throw new IllegalArgumentException("nQueueLength");
+
+			m_sSource = sSource;
+			m_cbChunk = cbChunk;
+			m_qData = new ArrayBlockingQueue<Object>(nQueueLength);
+			m_qFree = new ArrayBlockingQueue<byte[]>(nQueueLength + 1);
+
+			m_th = new Thread(new Runnable() {
+				public void run() { ReadSource(); }
+			}, "keepassj-" + strName);
+			m_th.setDaemon(true);
+			m_th.start();
+		}
+
+		private void ReadSource()
+		{
+			try
+			{
+				while(!m_bAbort)
+				{
+					byte[] pb = m_qFree.poll();
+					if(pb == null) pb = new byte[m_cbChunk];
+
+					// Fill the chunk completely, such that only the last
+					// chunk is a partial one
+					int cb = 0;
+					while(cb < pb.length)
+					{
+						int n = m_sSource.read(pb, cb, pb.length - cb);
+						if(n < 0) break;
+						cb += n;
+					}
+
+					if(cb > 0) m_qData.put(new Chunk(pb, cb));
+					if(cb < pb.length)
+					{
+						m_qData.put(Eos);
+						break;
+					}
+				}
+			}
+			catch(InterruptedException e) { } // Aborted
+			catch(Throwable t)
+			{
+				if(!m_bAbort)
+				{
+					try { m_qData.put(t); }
+					catch(InterruptedException e) { }
+				}
+			}
+		}
+
+		private boolean NextChunk() throws IOException
+		{
+			if(m_chCur != null)
+			{
+				m_qFree.offer(m_chCur.Data);
+				m_chCur = null;
+			}
+			if(m_bEos) return false;
+
+			Object o;
+			try { o = m_qData.take(); }
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+
+			if(o == Eos) { m_bEos = true; return false; }
+			if(o instanceof Throwable)
+			{
+				m_bEos = true;
+				Throwable t = (Throwable)o;
+				if(t instanceof IOException) throw (IOException)t;
+				if(t instanceof RuntimeException) throw (RuntimeException)t;
+				if(t instanceof Error) throw (Error)t;
+				throw new IOException(t);
+			}
+
+			m_chCur = (Chunk)o;
+			m_iCurPos = 0;
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			if(m_bClosed) throw new IOException("stream closed");
+
+			while((m_chCur == null) || (m_iCurPos == m_chCur.Length))
+			{
+				if(!NextChunk()) return -1;
+			}
+
+			return (m_chCur.Data[m_iCurPos++] & 0xFF);
+		}
+
+		@Override
+		public int read(byte[] pb, int iOffset, int nCount) throws IOException
+		{
+			if(m_bClosed) throw new IOException("stream closed");
+			if(nCount == 0) return 0;
+
+			while((m_chCur == null) || (m_iCurPos == m_chCur.Length))
+			{
+				if(!NextChunk()) return -1;
+			}
+
+			int n = Math.min(nCount, m_chCur.Length - m_iCurPos);
+			System.arraycopy(m_chCur.Data, m_iCurPos, pb, iOffset, n);
+			m_iCurPos += n;
+			return n;
+		}
+
+		@Override
+		public int available()
+		{
+			return ((m_chCur != null) ? (m_chCur.Length - m_iCurPos) : 0);
+		}
+
+		/// <summary>
+		/// Read the remaining data of the source (discarding it), wait
+		/// for the worker and close the source.
+		/// </summary>
+		@Override
+		public void close() throws IOException
+		{
+			if(m_bClosed) return;
+
+			try
+			{
+				if(!m_bAbort)
+				{
+					while(NextChunk()) { }
+				}
+			}
+			finally
+			{
+				// Stops the worker, if draining has failed
+				Abort();
+				m_sSource.close();
+			}
+		}
+
+		/// <summary>
+		/// Stop the worker thread, without reading the rest of the source.
+		/// The source is not closed.
+		/// </summary>
+		public void Abort()
+		{
+			if(m_bClosed) return;
+			m_bClosed = true;
+
+			if(m_th.isAlive())
+			{
+				m_bAbort = true;
+				m_th.interrupt();
+				m_qData.clear(); // Unblock the worker
+			}
+			Join();
+		}
+
+		private void Join()
+		{
+			boolean bInterrupted = false;
+			while(m_th.isAlive())
+			{
+				try { m_th.join(); }
+				catch(InterruptedException e) { bInterrupted = true; }
+			}
+			if(bInterrupted) Thread.currentThread().interrupt();
+		}
+	}
@@ -0,0 +1,247 @@
+package com.hanhuy.keepassj;
+/*
+  KeePass Password Safe - The Open-Source Password Manager
+  Copyright (C) 2003-2014 Dominik Reichl <dominik.reichl@t-online.de>
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+	/// <summary>
+	/// Stream that writes to its sink on a separate thread. Data is
+	/// collected in chunks, which are handed over through a bounded queue,
+	/// so the sink (e.g. a compressing or hashing stream) can work while
+	/// the caller produces more data.
+	/// Errors of the sink are thrown by the next <c>write</c> or by
+	/// <c>close</c>, which waits until all data has been written and the
+	/// sink has been closed.
+	/// </summary>
+	final class PipelinedOutputStream extends OutputStream
+	{
+		public final static int DefaultChunkSize = 64 * 1024;
+		public final static int DefaultQueueLength = 16;
+
+		private final static Object Flush = new Object();
+		private final static Object Eos = new Object();
+
+		private final OutputStream m_sSink;
+		private final BlockingQueue<Object> m_qData; // Chunk, Flush or Eos
+		private final BlockingQueue<byte[]> m_qFree;
+		private final Thread m_th;
+
+		private volatile Throwable m_tError = null;
+		private volatile boolean m_bAbort = false;
+		private boolean m_bClosed = false;
+
+		private byte[] m_pbCur;
+		private int m_cbCur = 0;
+
+		private static final class Chunk
+		{
+			final byte[] Data;
+			final int Length;
+
+			Chunk(byte[] pbData, int cbLength)
+			{
+				Data = pbData;
+				Length = cbLength;
+			}
+		}
+
+		public PipelinedOutputStream(OutputStream sSink, String strName)
+		{
+			this(sSink, strName, DefaultChunkSize, DefaultQueueLength);
+		}
+
+		public PipelinedOutputStream(OutputStream sSink, String strName,
+			int cbChunk, int nQueueLength)
+		{
+			if(sSink == null) throw new IllegalArgumentException("sSink");
+			if(cbChunk <= 0) throw new IllegalArgumentException("cbChunk");
+			if(nQueueLength <= 0) throw new IllegalArgumentException("nQueueLength");
+
+			m_sSink = sSink;
+			m_pbCur = new byte[cbChunk];
+			m_qData = new ArrayBlockingQueue<Object>(nQueueLength);
+			m_qFree = new ArrayBlockingQueue<byte[]>(nQueueLength + 1);
+
+			m_th = new Thread(new Runnable() {
+				public void run() { WriteSink(); }
+			}, "keepassj-" + strName);
+			m_th.setDaemon(true);
+			m_th.start();
+		}
+
+		private void WriteSink()
+		{
+			try
+			{
+				while(true)
+				{
+					Object o = m_qData.take();
+
+					if(m_tError != null) // Discard, such that writers do not block
+					{
+						if(o == Eos) break;
+						continue;
+					}
+
+					try
+					{
+						if(o == Eos) { m_sSink.close(); break; }
+						else if(o == Flush) m_sSink.flush();
+						else
+						{
+							Chunk ch = (Chunk)o;
+							m_sSink.write(ch.Data, 0, ch.Length);
+							m_qFree.offer(ch.Data);
+						}
+					}
+					catch(Throwable t)
+					{
+						m_tError = t;
+						if(m_bAbort || (o == Eos)) break;
+					}
+				}
+			}
+			catch(InterruptedException e) { } // Aborted
+		}
+
+		private void CheckError() throws IOException
+		{
+			Throwable t = m_tError;
+			if(t == null) return;
+
+			if(t instanceof IOException) throw (IOException)t;
+			if(t instanceof RuntimeException) throw (RuntimeException)t;
+			if(t instanceof Error) throw (Error)t;
+			throw new IOException(t);
+		}
+
+		private void Put(Object o) throws IOException
+		{
+			try { m_qData.put(o); }
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+
+		private void HandOff() throws IOException
+		{
+			if(m_cbCur == 0) return;
+
+			Put(new Chunk(m_pbCur, m_cbCur));
+
+			byte[] pb = m_qFree.poll();
+			m_pbCur = ((pb != null) ? pb : new byte[m_pbCur.length]);
+			m_cbCur = 0;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			if(m_bClosed) throw new IOException("stream closed");
+
+			if(m_cbCur == m_pbCur.length)
+			{
+				CheckError();
+				HandOff();
+			}
+			m_pbCur[m_cbCur++] = (byte)b;
+		}
+
+		@Override
+		public void write(byte[] pb, int iOffset, int nCount) throws IOException
+		{
+			if(m_bClosed) throw new IOException("stream closed");
+			CheckError();
+
+			while(nCount > 0)
+			{
+				if(m_cbCur == m_pbCur.length) HandOff();
+
+				int n = Math.min(nCount, m_pbCur.length - m_cbCur);
+				System.arraycopy(pb, iOffset, m_pbCur, m_cbCur, n);
+				m_cbCur += n;
+				iOffset += n;
+				nCount -= n;
+			}
+		}
+
+		/// <summary>
+		/// Hand the buffered data to the worker and let it flush the sink.
+		/// Does not wait for the worker.
+		/// </summary>
+		@Override
+		public void flush() throws IOException
+		{
+			if(m_bClosed) throw new IOException("stream closed");
+			CheckError();
+
+			HandOff();
+			Put(Flush);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if(m_bClosed) return;
+
+			try
+			{
+				CheckError();
+				HandOff();
+				Put(Eos);
+				Join();
+				CheckError();
+			}
+			finally { Abort(); }
+		}
+
+		/// <summary>
+		/// Stop the worker thread, without writing the remaining data.
+		/// The sink is not closed.
+		/// </summary>
+		public void Abort()
+		{
+			if(m_bClosed) return;
+			m_bClosed = true;
+
+			if(m_th.isAlive())
+			{
+				m_bAbort = true;
+				m_th.interrupt();
+			}
+			Join();
+		}
+
+		private void Join()
+		{
+			boolean bInterrupted = false;
+			while(m_th.isAlive())
+			{
+				try { m_th.join(); }
+				catch(InterruptedException e) { bInterrupted = true; }
+			}
+			if(bInterrupted) Thread.currentThread().interrupt();
+		}
+	}
@@ -18,6 +18,7 @@ package com.hanhuy.keepassj;
   Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
 */
 
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -74,7 +75,7 @@ import java.util.concurrent.atomic.AtomicReference;
 		private static AtomicLong g_lCurID = new AtomicLong(0);
 		private long m_lID;
 
-		private byte[] m_pbData; // Never null
+		private byte[] m_pbData; // Never null once materialized
 
 		// The real length of the data; this value can be different from
 		// m_pbData.Length, as the length of m_pbData always is a multiple
@@ -87,6 +88,10 @@ import java.util.concurrent.atomic.AtomicReference;
 
 		private final Object m_objSync = new Object();
 
+		// GZip-compressed data that has not been decompressed yet; null
+		// once the object has been materialized (see Deferred)
+		private volatile byte[] m_pbDeferred = null;
+
 		private static AtomicReference<byte[]> g_pbKey32 = new AtomicReference<byte[]>();
 
 		/// <summary>
@@ -103,6 +108,7 @@ import java.util.concurrent.atomic.AtomicReference;
 		/// </summary>
 		public int getLength()
 		{
+			Materialize();
 			return m_uDataLen;
 		}
 
@@ -147,6 +153,57 @@ import java.util.concurrent.atomic.AtomicReference;
 			if (bEnableProtection) MemUtil.ZeroByteArray(pb);
 		}
 
+		private ProtectedBinary(byte[] pbCompressed, boolean bDeferred)
+		{
+			assert bDeferred;
+			m_bProtected = false;
+			m_pbDeferred = pbCompressed;
+		}
+
+		/// <summary>
+		/// Construct an unprotected binary data Object from GZip-compressed
+		/// data, which is only decompressed when the data is accessed
+		/// for the first time. Protection is disabled, as the compressed
+		/// data is kept in plain-text until then.
+		/// </summary>
+		/// <param name="pbCompressed">Compressed data. The
+		/// <c>ProtectedBinary</c> takes ownership of the array.</param>
+		static ProtectedBinary Deferred(byte[] pbCompressed)
+		{
+			if(pbCompressed == null) throw new IllegalArgumentException("pbCompressed");
+			if(pbCompressed.length == 0) return new ProtectedBinary(false, pbCompressed);
+
+			return new ProtectedBinary(pbCompressed, true);
+		}
+
+		/// <summary>
+		/// <c>true</c>, if the data has been loaded in compressed form
+		/// and has not been accessed yet (see <c>Deferred</c>).
+		/// </summary>
+		boolean isDeferred()
+		{
+			return (m_pbDeferred != null);
+		}
+
+		private void Materialize()
+		{
+			if(m_pbDeferred == null) return;
+
+			synchronized(m_objSync)
+			{
+				byte[] pbCompressed = m_pbDeferred;
+				if(pbCompressed == null) return; // Materialized concurrently
+
+				byte[] pbData;
+				try { pbData = MemUtil.Decompress(pbCompressed); }
+				catch(IOException e) { throw new KdbxFileFormatException(e); }
+
+				Init(false, pbData);
+
+				m_pbDeferred = null;
+			}
+		}
+
 		private void Init(boolean bEnableProtection, byte[] pbData)
 		{
 			if(pbData == null) throw new IllegalArgumentException("pbData");
@@ -241,6 +298,7 @@ import java.util.concurrent.atomic.AtomicReference;
 		/// protected data and can therefore be cleared safely.</returns>
 		public byte[] ReadData()
 		{
+			Materialize();
 			if(m_uDataLen == 0) return new byte[0];
 
 			byte[] pbReturn = new byte[m_uDataLen];
@@ -266,14 +324,7 @@ import java.util.concurrent.atomic.AtomicReference;
 			if(crsRandomSource == null) throw new IllegalArgumentException("crsRandomSource");
 
 			byte[] pbData = ReadData();
-			int uLen = (int)pbData.length;
-
-			byte[] randomPad = crsRandomSource.GetRandomBytes(uLen);
-			assert randomPad.length == pbData.length;
-
-			for(int i = 0; i < uLen; ++i)
-				pbData[i] ^= randomPad[i];
-
+			crsRandomSource.XorInto(pbData, 0, pbData.length);
 			return pbData;
 		}
 
@@ -282,6 +333,7 @@ import java.util.concurrent.atomic.AtomicReference;
 		public int hashCode()
 		{
 			if(m_hash != null) return m_hash;
+			Materialize();
 
 			int h = (m_bProtected ? 0x7B11D289 : 0);
 
@@ -304,6 +356,8 @@ import java.util.concurrent.atomic.AtomicReference;
 			if(other == null) return false; // No assert
 
 			if(m_bProtected != other.m_bProtected) return false;
+			Materialize();
+			other.Materialize();
 			if(m_uDataLen != other.m_uDataLen) return false;
 
 			byte[] pbL = ReadData();
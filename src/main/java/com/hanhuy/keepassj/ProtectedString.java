@@ -183,6 +183,16 @@ import java.util.Arrays;
 			return str;
 		}
 
+		/// <summary>
+		/// Get the String if it is stored in plain-text already. Unlike
+		/// <c>ReadString</c>, this never decrypts the String.
+		/// </summary>
+		/// <returns>Plain-text String or <c>null</c>.</returns>
+		String ReadStringIfPlainText()
+		{
+			return m_strPlainText;
+		}
+
 		/// <summary>
 		/// Read out the String and return a byte array that contains the
 		/// String encoded using UTF-8. The returned String is not protected
@@ -211,14 +221,7 @@ import java.util.Arrays;
 			assert crsRandomSource != null; if(crsRandomSource == null) throw new IllegalArgumentException("crsRandomSource");
 
 			byte[] pbData = ReadUtf8();
-			int uLen = pbData.length;
-
-            byte[] randomPad = crsRandomSource.GetRandomBytes(uLen);
-			assert randomPad.length == pbData.length;
-
-			for(int i = 0; i < uLen; ++i)
-				pbData[i] ^= randomPad[i];
-
+			crsRandomSource.XorInto(pbData, 0, pbData.length);
 			return pbData;
 		}
 
@@ -19,6 +19,7 @@ package com.hanhuy.keepassj;
 */
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /// <summary>
 	/// A list of <c>ProtectedString</c> objects (dictionary).
@@ -29,6 +30,11 @@ import java.util.*;
 	{
 		private SortedMap<String, ProtectedString> m_vStrings = new TreeMap<String, ProtectedString>();
 
+		// Changes of all dictionaries are counted by one counter; each
+		// dictionary remembers the count of its last change
+		private static final AtomicLong g_lChangeCount = new AtomicLong();
+		private long m_lChangeStamp = 0;
+
 		/// <summary>
 		/// Get the number of strings in this entry.
 		/// </summary>
@@ -52,6 +58,29 @@ import java.util.*;
 		public void Clear()
 		{
 			m_vStrings.clear();
+			MarkChanged();
+		}
+
+		/// <summary>
+		/// Number of changes of all dictionaries so far. If it is
+		/// unchanged, no dictionary has been modified.
+		/// </summary>
+		public static long getGlobalChangeCount()
+		{
+			return g_lChangeCount.get();
+		}
+
+		/// <summary>
+		/// Global change count at the last change of this dictionary.
+		/// </summary>
+		public long getChangeStamp()
+		{
+			return m_lChangeStamp;
+		}
+
+		void MarkChanged()
+		{
+			m_lChangeStamp = g_lChangeCount.incrementAndGet();
 		}
 
 		/// <summary>
@@ -241,6 +270,7 @@ import java.util.*;
 			assert psNewValue != null; if(psNewValue == null) throw new IllegalArgumentException("psNewValue");
 
 			m_vStrings.put(strField, psNewValue);
+			MarkChanged();
 		}
 
 		/// <summary>
@@ -255,7 +285,10 @@ import java.util.*;
 		{
 			assert strField != null; if(strField == null) throw new IllegalArgumentException("strField");
 
-			return m_vStrings.remove(strField) != null;
+			if(m_vStrings.remove(strField) == null) return false;
+
+			MarkChanged();
+			return true;
 		}
 
 		public List<String> GetKeys()
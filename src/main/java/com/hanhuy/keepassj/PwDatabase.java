@@ -25,7 +25,12 @@ import com.google.common.collect.Maps;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /// <summary>
 /// The core password manager class. It contains a number of groups, which
@@ -88,6 +93,8 @@ public class PwDatabase
 
 	private boolean m_bUseFileTransactions = false;
 	private boolean m_bUseFileLocks = false;
+	private boolean m_bUseUuidIndex = false;
+	private boolean m_bUseSearchIndex = false;
 
 	private IStatusLogger m_slStatus = null;
 
@@ -111,6 +118,8 @@ public class PwDatabase
         if(value == null) throw new IllegalArgumentException("value");
 
         m_pgRootGroup = value;
+        UpdateUuidIndex();
+        UpdateSearchIndex();
     }
 
 	/// <summary>
@@ -468,6 +477,51 @@ public class PwDatabase
 	}
 		public void setUseFileLocks(boolean value) { m_bUseFileLocks = value; }
 
+	/// <summary>
+	/// If <c>true</c>, groups and entries are indexed by UUID, such that
+	/// recursive <c>FindGroup</c>, <c>FindEntry</c> and <c>FindObject</c>
+	/// calls on the root group do not need to traverse the tree.
+	/// The index is built on first use and maintained incrementally.
+	/// </summary>
+	public boolean getUseUuidIndex()
+	{
+		return m_bUseUuidIndex;
+	}
+	public void setUseUuidIndex(boolean value)
+	{
+		m_bUseUuidIndex = value;
+		UpdateUuidIndex();
+	}
+
+	private void UpdateUuidIndex()
+	{
+		if(m_pgRootGroup != null)
+			m_pgRootGroup.SetUuidIndexEnabled(m_bUseUuidIndex);
+	}
+
+	/// <summary>
+	/// If <c>true</c>, the strings of all entries (except passwords) are
+	/// indexed, such that case-insensitive substring searches with
+	/// <c>PwGroup.SearchEntries</c> only need to evaluate the entries
+	/// that can match. The index is built when the database is opened
+	/// and updated when entries are touched with modification.
+	/// </summary>
+	public boolean getUseSearchIndex()
+	{
+		return m_bUseSearchIndex;
+	}
+	public void setUseSearchIndex(boolean value)
+	{
+		m_bUseSearchIndex = value;
+		UpdateSearchIndex();
+	}
+
+	private void UpdateSearchIndex()
+	{
+		if(m_pgRootGroup != null)
+			m_pgRootGroup.SetSearchIndexEnabled(m_bUseSearchIndex);
+	}
+
 	private String m_strDetachBins = null;
 	/// <summary>
 	/// Detach binaries when opening a file. If this isn't <c>null</c>,
@@ -480,6 +534,18 @@ public class PwDatabase
 	}
 		public void setDetachBinaries(String value) { m_strDetachBins = value; }
 
+	private boolean m_bDeferBinaries = false;
+	/// <summary>
+	/// If <c>true</c>, compressed binaries are only decompressed when
+	/// their data is accessed for the first time, instead of when
+	/// opening a file.
+	/// </summary>
+	public boolean getDeferBinaries()
+	{
+		return m_bDeferBinaries;
+	}
+	public void setDeferBinaries(boolean value) { m_bDeferBinaries = value; }
+
 	/// <summary>
 	/// Localized application name.
 	/// </summary>
@@ -580,6 +646,8 @@ public class PwDatabase
 			UrlUtil.StripExtension(UrlUtil.GetFileName(ioConnection.getPath())),
 			PwIcon.FolderOpen);
 		m_pgRootGroup.setExpanded(true);
+		UpdateUuidIndex();
+		UpdateSearchIndex();
 	}
 
 	/// <summary>
@@ -603,6 +671,7 @@ public class PwDatabase
 			m_pgRootGroup = new PwGroup(true, true, UrlUtil.StripExtension(
 				UrlUtil.GetFileName(ioSource.getPath())), PwIcon.FolderOpen);
 			m_pgRootGroup.setExpanded(true);
+			UpdateUuidIndex();
 
 			m_pwUserKey = pwKey;
 
@@ -610,11 +679,14 @@ public class PwDatabase
 
 			KdbxFile kdbx = new KdbxFile(this);
 			kdbx.setDetachBinaries(m_strDetachBins);
+			kdbx.setDeferBinaries(m_bDeferBinaries);
 
 			InputStream s = IOConnection.OpenRead(ioSource);
 			kdbx.Load(s, KdbxFormat.Default, slLogger);
 			s.close();
 
+			UpdateSearchIndex(); // Index the loaded entries
+
 			m_pbHashOfLastIO = kdbx.getHashOfFileOnDisk();
 			m_pbHashOfFileOnDisk = kdbx.getHashOfFileOnDisk();
 			assert m_pbHashOfFileOnDisk != null;
@@ -714,11 +786,38 @@ public class PwDatabase
 		MergeIn(pdSource, mm, null);
 	}
 
+	public void MergeIn(PwDatabase pdSource, PwMergeMethod mm,
+		IStatusLogger slStatus)
+	{
+		MergeIn(pdSource, mm, slStatus, null);
+	}
+
+	/// <summary>
+	/// Merge another database into this one.
+	/// </summary>
+	/// <param name="pdSource">Database to merge in. It is modified, too
+	/// (e.g. backups of entries may be created).</param>
+	/// <param name="mm">Merge method.</param>
+	/// <param name="slStatus">Optional status reporting object.</param>
+	/// <param name="fjp">If not <c>null</c>, the object pool of the
+	/// source database is built on this pool, while the one of the
+	/// current database is built on the calling thread.</param>
 	public void MergeIn(final PwDatabase pdSource, final PwMergeMethod mm,
-		final IStatusLogger slStatus)
+		final IStatusLogger slStatus, ForkJoinPool fjp)
 	{
 		if(pdSource == null) throw new IllegalArgumentException("pdSource");
 
+		// Groups and entries are looked up by UUID for every source
+		// object; keep the UUID index up to date during the merge
+		m_pgRootGroup.SetUuidIndexEnabled(true);
+		try { MergeInPriv(pdSource, mm, slStatus, fjp); }
+		finally { UpdateUuidIndex(); }
+	}
+
+	private void MergeInPriv(final PwDatabase pdSource, final PwMergeMethod mm,
+		final IStatusLogger slStatus, ForkJoinPool fjp)
+	{
+
 		if(mm == PwMergeMethod.CreateNewUuids)
 		{
 			pdSource.getRootGroup().setUuid(new PwUuid(true));
@@ -731,8 +830,18 @@ public class PwDatabase
 		// PwObjectPoolEx ppOrg = PwObjectPoolEx.FromGroup(pgOrgStructure);
 		// PwObjectPoolEx ppSrc = PwObjectPoolEx.FromGroup(pgSrcStructure);
 
+		ForkJoinTask<PwObjectPool.PwObjectPoolEx> tSrcPool = null;
+		if(fjp != null)
+			tSrcPool = fjp.submit(new Callable<PwObjectPool.PwObjectPoolEx>() {
+				public PwObjectPool.PwObjectPoolEx call()
+				{
+					return PwObjectPool.PwObjectPoolEx.FromGroup(pdSource.getRootGroup());
+				}
+			});
+
 		final PwObjectPool.PwObjectPoolEx ppOrg = PwObjectPool.PwObjectPoolEx.FromGroup(m_pgRootGroup);
-		final PwObjectPool.PwObjectPoolEx ppSrc = PwObjectPool.PwObjectPoolEx.FromGroup(pdSource.getRootGroup());
+		final PwObjectPool.PwObjectPoolEx ppSrc = ((tSrcPool != null) ? tSrcPool.join() :
+			PwObjectPool.PwObjectPoolEx.FromGroup(pdSource.getRootGroup()));
 		GroupHandler ghSrc = new GroupHandler() {
         public boolean delegate(PwGroup pg)
 		{
@@ -765,7 +874,7 @@ public class PwDatabase
 				pgNew.setUuid(pg.getUuid());
 				pgNew.AssignProperties(pg, false, true);
 				// pgLocalContainer.AddGroup(pgNew, true);
-				InsertObjectAtBestPos(pgLocalContainer.getGroups(), pgNew, ppSrc);
+				InsertObjectAtBestPos(pgLocalContainer, pgLocalContainer.getGroups(), pgNew, ppSrc);
 				pgNew.setParentGroup(pgLocalContainer);
 			}
 			else // pgLocal != null
@@ -808,7 +917,7 @@ public class PwDatabase
 				peNew.setUuid(pe.getUuid());
 
 				// pgLocalContainer.AddEntry(peNew, true);
-				InsertObjectAtBestPos(pgLocalContainer.getEntries(), peNew, ppSrc);
+				InsertObjectAtBestPos(pgLocalContainer, pgLocalContainer.getEntries(), peNew, ppSrc);
 				peNew.setParentGroup(pgLocalContainer);
 			}
 			else // peLocal != null
@@ -1047,7 +1156,7 @@ public class PwDatabase
 				pg.getParentGroup().getGroups().Remove(pg);
 
 				// pgLocal.AddGroup(pg, true);
-				InsertObjectAtBestPos(pgLocal.getGroups(), pg, ppSrc);
+				InsertObjectAtBestPos(pgLocal, pgLocal.getGroups(), pg, ppSrc);
 				pg.setParentGroup(pgLocal);
 
 				// pg.LocationChanged = ptSrc.LocationChanged;
@@ -1094,7 +1203,7 @@ public class PwDatabase
 				pe.getParentGroup().getEntries().Remove(pe);
 
 				// pgLocal.AddEntry(pe, true);
-				InsertObjectAtBestPos(pgLocal.getEntries(), pe, ppSrc);
+				InsertObjectAtBestPos(pgLocal, pgLocal.getEntries(), pe, ppSrc);
 				pe.setParentGroup(pgLocal);
 
 				// pe.LocationChanged = ptSrc.LocationChanged;
@@ -1354,55 +1463,63 @@ if (false) { // debug
 			pg.TraverseTree(TraversalMethod.PreOrder, gh, eh);
 		}
 
-		private static <T extends IDeepCloneable<T> & IStructureItem> void InsertObjectAtBestPos(PwObjectList<T> lItems,
-			T tNew, PwObjectPool.PwObjectPoolEx ppSrc)
-		{
-			if(tNew == null) { assert(false); return; }
-
-			long idSrc = ppSrc.GetIdByUuid(tNew.getUuid());
-			if(idSrc == 0) { assert(false); lItems.Add(tNew); return; }
+	// Requires the UUID index of the local tree (see MergeIn)
+	private <T extends IDeepCloneable<T> & IStructureItem> void InsertObjectAtBestPos(
+		PwGroup pgContainer, PwObjectList<T> lItems, T tNew, PwObjectPool.PwObjectPoolEx ppSrc)
+	{
+		if(tNew == null) { assert(false); return; }
 
-			final int uIdOffset = 2;
-			Map<PwUuid, Integer> dOrg = new HashMap<PwUuid, Integer>();
-			for(int u = 0; u < lItems.getUCount(); ++u)
-				dOrg.put(lItems.GetAt(u).getUuid(), uIdOffset + u);
+		long idSrc = ppSrc.GetIdByUuid(tNew.getUuid());
+		if(idSrc == 0) { assert(false); lItems.Add(tNew); return; }
 
-			long idSrcNext = idSrc + 1;
-			Integer idOrgNext = 0;
-			while(true)
-			{
-				IStructureItem pNext = ppSrc.GetItemById(idSrcNext);
-				if(pNext == null) break;
-				if((idOrgNext = dOrg.get(pNext.getUuid())) != null) break;
-				++idSrcNext;
-			}
+		// Consecutive IDs in the pool are siblings; the first local
+		// sibling found determines the position
+		long idSrcNext = idSrc + 1;
+		while(true)
+		{
+			IStructureItem pNext = ppSrc.GetItemById(idSrcNext);
+			if(pNext == null) break;
 
-			if(idOrgNext != null && idOrgNext != 0)
+			int iOrgNext = IndexOfLocal(pgContainer, lItems, tNew, pNext.getUuid());
+			if(iOrgNext >= 0)
 			{
-				lItems.Insert(idOrgNext - uIdOffset, tNew);
+				lItems.Insert(iOrgNext, tNew);
 				return;
 			}
+			++idSrcNext;
+		}
 
-			long idSrcPrev = idSrc - 1;
-			Integer idOrgPrev = 0;
-			while(true)
-			{
-				IStructureItem pPrev = ppSrc.GetItemById(idSrcPrev);
-				if(pPrev == null) break;
-				if((idOrgPrev = dOrg.get(pPrev.getUuid())) != null) break;
-				--idSrcPrev;
-			}
+		long idSrcPrev = idSrc - 1;
+		while(true)
+		{
+			IStructureItem pPrev = ppSrc.GetItemById(idSrcPrev);
+			if(pPrev == null) break;
 
-			if(idOrgPrev != null && idOrgPrev != 0)
+			int iOrgPrev = IndexOfLocal(pgContainer, lItems, tNew, pPrev.getUuid());
+			if(iOrgPrev >= 0)
 			{
-				lItems.Insert(idOrgPrev + 1 - uIdOffset, tNew);
+				lItems.Insert(iOrgPrev + 1, tNew);
 				return;
-	///////////////////////////////
+			}
+			--idSrcPrev;
 		}
 
 		lItems.Add(tNew);
 	}
 
+	private <T extends IDeepCloneable<T> & IStructureItem> int IndexOfLocal(
+		PwGroup pgContainer, PwObjectList<T> lItems, T tNew, PwUuid pwUuid)
+	{
+		IStructureItem pt;
+		if(tNew instanceof PwEntry) pt = m_pgRootGroup.FindEntry(pwUuid, true);
+		else pt = m_pgRootGroup.FindGroup(pwUuid, true);
+
+		if((pt == null) || (pt.getParentGroup() != pgContainer)) return -1;
+
+		@SuppressWarnings("unchecked") T t = (T)pt;
+		return lItems.IndexOf(t);
+	}
+
 	private void MergeInDbProperties(PwDatabase pdSource, PwMergeMethod mm)
 	{
 		if(pdSource == null) { assert false; return; }
@@ -1805,65 +1922,141 @@ if (false) { // debug
 
 		Date dtNow = new Date();
 		PwObjectList<PwEntry> l = m_pgRootGroup.GetEntries(true);
-		int i = 0;
-		while(true)
-		{
-			if(i >= ((int)l.getUCount() - 1)) break;
+		int n = l.getUCount();
 
-			if(sl != null)
+		// Entries can only be equal if their fingerprints are equal,
+		// thus they only need to be compared within their bucket
+		Map<Long, DupBucket> dBuckets = new HashMap<Long, DupBucket>();
+		DupBucket[] vBuckets = new DupBucket[n];
+		for(int i = 0; i < n; ++i)
+		{
+			PwEntry pe = l.GetAt(i);
+			Long lFingerprint = GetDupFingerprint(pe);
+			DupBucket b = dBuckets.get(lFingerprint);
+			if(b == null)
 			{
-				long lCnt = (long)l.getUCount(), li = (long)i;
-				long nArTotal = (lCnt * lCnt) / 2L;
-				long nArCur = li * lCnt - ((li * li) / 2L);
-				long nArPct = (nArCur * 100L) / nArTotal;
-				if(nArPct < 0) nArPct = 0;
-				if(nArPct > 100) nArPct = 100;
-				if(!sl.SetProgress((int)nArPct)) break;
+				b = new DupBucket();
+				dBuckets.put(lFingerprint, b);
 			}
 
-			PwEntry peA = l.GetAt((int)i);
+			b.Entries.add(pe);
+			vBuckets[i] = b;
+		}
 
-			for(int j = (int)i + 1; j < l.getUCount(); ++j)
-			{
-				PwEntry peB = l.GetAt(j);
-				if(!DupEntriesEqual(peA, peB)) continue;
+		// Same order of comparisons and deletions as a pairwise
+		// comparison of all entries: each entry that has not been
+		// deleted yet is compared with the following ones, up to
+		// the first duplicate
+		Set<PwEntry> setDeleted = Collections.newSetFromMap(
+			new IdentityHashMap<PwEntry, Boolean>());
+		for(int i = 0; i < n; ++i)
+		{
+			if((sl != null) && !sl.SetProgress((int)(((long)i * 100L) / n)))
+				break;
 
-				boolean bDeleteA = (TimeUtil.CompareLastMod(peA, peB, true) <= 0);
-				if(pgRecycleBin != null)
-				{
-					boolean bAInBin = peA.IsContainedIn(pgRecycleBin);
-					boolean bBInBin = peB.IsContainedIn(pgRecycleBin);
+			DupBucket b = vBuckets[i];
+			if(b.Entries.size() == 1) continue;
 
-					if(bAInBin && !bBInBin) bDeleteA = true;
-					else if(bBInBin && !bAInBin) bDeleteA = false;
-				}
+			PwEntry peA = l.GetAt(i);
+			if(setDeleted.contains(peA)) continue;
 
-				if(bDeleteA)
-				{
-					peA.getParentGroup().getEntries().Remove(peA);
-					m_vDeletedObjects.Add(new PwDeletedObject(peA.getUuid(), dtNow));
+			int iA = b.Current;
+			while(b.Entries.get(iA) != peA) ++iA; // Skip deleted entries
+			b.Current = iA + 1;
 
-					l.RemoveAt((int)i);
-					--i;
-				}
-				else
-				{
-					peB.getParentGroup().getEntries().Remove(peB);
-					m_vDeletedObjects.Add(new PwDeletedObject(peB.getUuid(), dtNow));
+			PwEntry peB = null;
+			for(int j = iA + 1; j < b.Entries.size(); ++j)
+			{
+				PwEntry pe = b.Entries.get(j);
+				if(setDeleted.contains(pe)) continue;
+				if(DupEntriesEqual(peA, pe)) { peB = pe; break; }
+			}
+			if(peB == null) continue;
 
-					l.RemoveAt(j);
-				}
+			boolean bDeleteA = (TimeUtil.CompareLastMod(peA, peB, true) <= 0);
+			if(pgRecycleBin != null)
+			{
+				boolean bAInBin = peA.IsContainedIn(pgRecycleBin);
+				boolean bBInBin = peB.IsContainedIn(pgRecycleBin);
 
-				++uDeleted;
-				break;
+				if(bAInBin && !bBInBin) bDeleteA = true;
+				else if(bBInBin && !bAInBin) bDeleteA = false;
 			}
 
-			++i;
+			PwEntry peDel = (bDeleteA ? peA : peB);
+			peDel.getParentGroup().getEntries().Remove(peDel);
+			m_vDeletedObjects.Add(new PwDeletedObject(peDel.getUuid(), dtNow));
+			setDeleted.add(peDel);
+
+			++uDeleted;
 		}
 
 		return uDeleted;
 	}
 
+	private static final class DupBucket
+	{
+		// In tree order
+		final List<PwEntry> Entries = new ArrayList<PwEntry>(2);
+		// Index of the first entry that has not been compared yet
+		int Current = 0;
+	}
+
+	/// <summary>
+	/// Hash the values compared by <c>DupEntriesEqual</c>. Protected
+	/// strings are hashed without unprotecting them.
+	/// </summary>
+	private static long GetDupFingerprint(PwEntry pe)
+	{
+		if(m_lStdFields == null) m_lStdFields = PwDefs.GetStandardFields();
+
+		long h = 17;
+		for(String strStdKey : m_lStdFields)
+			h = (h * 31L) + GetDupHash(pe.getStrings().Get(strStdKey));
+
+		// Independent of the order of the fields
+		long hCustom = 0;
+		for(Map.Entry<String, ProtectedString> kvp : pe.getStrings())
+		{
+			if(PwDefs.IsStandardField(kvp.getKey())) continue;
+
+			hCustom += ((long)kvp.getKey().hashCode() * 0x9E3779B97F4A7C15L) ^
+				GetDupHash(kvp.getValue());
+		}
+		h = (h * 31L) + hCustom;
+
+		long hBin = pe.getBinaries().getUCount();
+		for(Map.Entry<String, ProtectedBinary> kvpBin : pe.getBinaries())
+		{
+			byte[] pbData = kvpBin.getValue().ReadData();
+			hBin += ((long)kvpBin.getKey().hashCode() * 0x9E3779B97F4A7C15L) ^
+				Arrays.hashCode(pbData);
+			MemUtil.ZeroByteArray(pbData);
+		}
+
+		return ((h * 31L) + hBin);
+	}
+
+	// Same as ReadString().hashCode(); a missing string is hashed like
+	// an empty one (see ReadSafe)
+	private static int GetDupHash(ProtectedString ps)
+	{
+		if(ps == null) return 0;
+
+		String str = ps.ReadStringIfPlainText();
+		if(str != null) return str.hashCode();
+
+		byte[] pbUtf8 = ps.ReadUtf8();
+		CharBuffer cb = StrUtil.Utf8.decode(ByteBuffer.wrap(pbUtf8));
+		int h = 0;
+		for(int i = cb.position(); i < cb.limit(); ++i)
+			h = (31 * h) + cb.get(i);
+
+		Arrays.fill(cb.array(), (char)0);
+		MemUtil.ZeroByteArray(pbUtf8);
+		return h;
+	}
+
 	private static List<String> m_lStdFields = null;
 	private static boolean DupEntriesEqual(PwEntry a, PwEntry b)
 	{
@@ -250,26 +250,6 @@ import java.util.EventObject;
 	}
 	// #pragma warning restore 1591 // Missing XML comments warning
 
-	class ObjectTouchedEventArgs extends EventObject {
-		private Object m_o;
-		public Object getObject() { return m_o; }
-
-		private boolean m_bModified;
-		public boolean getModified() { return m_bModified; }
-
-		private boolean m_bParentsTouched;
-		public boolean getParentsTouched() { return m_bParentsTouched; }
-
-		public ObjectTouchedEventArgs(Object o, boolean bModified,
-			boolean bParentsTouched)
-		{
-            super(o);
-			m_o = o;
-			m_bModified = bModified;
-			m_bParentsTouched = bParentsTouched;
-		}
-	}
-
 	class IOAccessEventArgs extends EventObject
 	{
 		private IOConnectionInfo m_ioc;
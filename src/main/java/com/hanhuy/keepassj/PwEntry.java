@@ -19,6 +19,7 @@ package com.hanhuy.keepassj;
 */
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 
@@ -55,6 +56,9 @@ import com.google.common.base.Strings;
 
 		private List<String> m_vTags = new ArrayList<String>();
 
+		private static final AtomicLong g_lTagsChangeCount = new AtomicLong();
+		private long m_lTagsChangeStamp = 0;
+
 		/// <summary>
 		/// UUID of this entry.
 		/// </summary>
@@ -65,7 +69,12 @@ import com.google.common.base.Strings;
 			public void setUuid(PwUuid value)
 			{
 				assert value != null; if(value == null) throw new IllegalArgumentException("value");
+				PwUuid uuidOld = m_uuid;
 				m_uuid = value;
+
+				PwUuidIndex idx = ((m_pParentGroup != null) ?
+					m_pParentGroup.getUuidIndex() : null);
+				if(idx != null) idx.OnUuidChanged(this, uuidOld);
 			}
 
 		/// <summary>
@@ -99,6 +108,7 @@ import com.google.common.base.Strings;
 			{
 				assert value != null; if(value == null) throw new IllegalArgumentException("value");
 				m_listStrings = value;
+				value.MarkChanged(); // Report the replacement to indices
 			}
 
 		/// <summary>
@@ -252,7 +262,9 @@ import com.google.common.base.Strings;
 			}
 
 		/// <summary>
-		/// List of tags associated with this entry.
+		/// List of tags associated with this entry. Change the tags using
+		/// <c>AddTag</c>, <c>RemoveTag</c> or <c>setTags</c>, such that
+		/// indices of the tree notice the change.
 		/// </summary>
 		public List<String> getTags()
 		{
@@ -262,8 +274,31 @@ import com.google.common.base.Strings;
 			{
 				if(value == null) throw new IllegalArgumentException("value");
 				m_vTags = value;
+				MarkTagsChanged();
 			}
 
+		/// <summary>
+		/// Number of tag changes of all entries so far. If it is
+		/// unchanged, no entry's tags have been modified.
+		/// </summary>
+		static long getGlobalTagsChangeCount()
+		{
+			return g_lTagsChangeCount.get();
+		}
+
+		/// <summary>
+		/// Global tag change count at the last change of this entry's tags.
+		/// </summary>
+		long getTagsChangeStamp()
+		{
+			return m_lTagsChangeStamp;
+		}
+
+		private void MarkTagsChanged()
+		{
+			m_lTagsChangeStamp = g_lTagsChangeCount.incrementAndGet();
+		}
+
 		public static List<EventHandler<ObjectTouchedEventArgs>> EntryTouched = new ArrayList<>();
 		public List<EventHandler<ObjectTouchedEventArgs>> Touched = new ArrayList<>();
 
@@ -494,6 +529,7 @@ import com.google.common.base.Strings;
 				m_tParentGroupLastMod = peTemplate.m_tParentGroupLastMod;
 
 			m_listStrings = peTemplate.m_listStrings;
+			m_listStrings.MarkChanged(); // Report the replacement to indices
 			m_listBinaries = peTemplate.m_listBinaries;
 			m_listAutoType = peTemplate.m_listAutoType;
 			if(bIncludeHistory) m_listHistory = peTemplate.m_listHistory;
@@ -514,6 +550,7 @@ import com.google.common.base.Strings;
 			m_strOverrideUrl = peTemplate.m_strOverrideUrl;
 
 			m_vTags = new ArrayList<String>(peTemplate.m_vTags);
+			MarkTagsChanged();
 		}
 
 		/// <summary>
@@ -788,6 +825,7 @@ import com.google.common.base.Strings;
             }
 
 			m_vTags.add(strTag);
+			MarkTagsChanged();
 			return true;
 		}
 
@@ -800,6 +838,7 @@ import com.google.common.base.Strings;
 				if(m_vTags.get(i).equalsIgnoreCase(strTag))
 				{
 					m_vTags.remove(i);
+					MarkTagsChanged();
 					return true;
 				}
 			}
@@ -22,7 +22,7 @@ import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
 
 /// <summary>
 	/// A group containing several password entries.
@@ -32,9 +32,19 @@ import java.util.regex.Pattern;
 		public static final boolean DefaultAutoTypeEnabled = true;
 		public static final boolean DefaultSearchingEnabled = true;
 
-		private PwObjectList<PwGroup> m_listGroups = new PwObjectList<PwGroup>();
-		private PwObjectList<PwEntry> m_listEntries = new PwObjectList<PwEntry>();
+		private PwObjectList<PwGroup> m_listGroups = new PwObjectList<PwGroup>(this);
+		private PwObjectList<PwEntry> m_listEntries = new PwObjectList<PwEntry>(this);
 		private PwGroup m_pParentGroup = null;
+
+		// Shared by all groups of an indexed tree; null if not indexed
+		private PwUuidIndex m_uuidIndex = null;
+		private PwSearchIndex m_searchIndex = null; // Only set at the root
+		// Recursive counts; -1 if not known. Invalidated up the parent
+		// chain when a subgroup or entry is added or removed
+		private int m_nCachedGroupsRec = -1;
+		private int m_nCachedEntriesRec = -1;
+		// Only used at the root; see GetTreeVersion
+		private long m_lTreeVersion = 0;
 		private Date m_tParentGroupLastMod = PwDefs.DtDefaultNow;
 
 		private PwUuid m_uuid = PwUuid.Zero;
@@ -71,7 +81,9 @@ import java.util.regex.Pattern;
 			public void setUuid(PwUuid value)
 			{
 				assert value != null; if(value == null) throw new IllegalArgumentException("value");
+				PwUuid uuidOld = m_uuid;
 				m_uuid = value;
+				if(m_uuidIndex != null) m_uuidIndex.OnUuidChanged(this, uuidOld);
 			}
 
 		/// <summary>
@@ -337,7 +349,9 @@ import java.util.regex.Pattern;
 			pg.m_uuid = m_uuid; // PwUuid is immutable
 
 			pg.m_listGroups = m_listGroups.CloneDeep();
+			pg.m_listGroups.SetOwner(pg);
 			pg.m_listEntries = m_listEntries.CloneDeep();
+			pg.m_listEntries.SetOwner(pg);
 			pg.m_pParentGroup = m_pParentGroup;
 			pg.m_tParentGroupLastMod = m_tParentGroupLastMod;
 
@@ -539,27 +553,57 @@ import java.util.regex.Pattern;
 		/// <param name="uNumEntries">Number of entries.</param>
 		public void GetCounts(boolean bRecursive, /* out */int[] uNumGroups, /* out */int[] uNumEntries)
 		{
-			if(bRecursive)
+			if(bRecursive) GetCountsRecursive(uNumGroups, uNumEntries);
+			else // !bRecursive
 			{
-				int uTotalGroups = m_listGroups.getUCount();
-				int uTotalEntries = m_listEntries.getUCount();
-				int[] uSubGroupCount = new int[1], uSubEntryCount = new int[1];
+				uNumGroups[0] = m_listGroups.getUCount();
+				uNumEntries[0] = m_listEntries.getUCount();
+			}
+		}
 
-				for(PwGroup pg : m_listGroups)
-				{
-					pg.GetCounts(true, uSubGroupCount, uSubEntryCount);
+		private boolean GetCountsRecursive(int[] uNumGroups, int[] uNumEntries)
+		{
+			int nGroups = m_nCachedGroupsRec, nEntries = m_nCachedEntriesRec;
+			if((nGroups >= 0) && (nEntries >= 0))
+			{
+				uNumGroups[0] = nGroups;
+				uNumEntries[0] = nEntries;
+				return true;
+			}
 
-					uTotalGroups += uSubGroupCount[0];
-					uTotalEntries += uSubEntryCount[0];
-				}
+			int uTotalGroups = m_listGroups.getUCount();
+			int uTotalEntries = m_listEntries.getUCount();
+			boolean bCache = true;
 
-				uNumGroups[0] = uTotalGroups;
-				uNumEntries[0] = uTotalEntries;
+			for(PwGroup pg : m_listGroups)
+			{
+				// Changes in subgroups that are not owned by this group
+				// (e.g. in deep clones) are not reported to this group
+				if(!pg.GetCountsRecursive(uNumGroups, uNumEntries) ||
+					(pg.m_pParentGroup != this))
+					bCache = false;
+
+				uTotalGroups += uNumGroups[0];
+				uTotalEntries += uNumEntries[0];
 			}
-			else // !bRecursive
+
+			if(bCache)
 			{
-				uNumGroups[0] = m_listGroups.getUCount();
-				uNumEntries[0] = m_listEntries.getUCount();
+				m_nCachedGroupsRec = uTotalGroups;
+				m_nCachedEntriesRec = uTotalEntries;
+			}
+
+			uNumGroups[0] = uTotalGroups;
+			uNumEntries[0] = uTotalEntries;
+			return bCache;
+		}
+
+		private void InvalidateCounts()
+		{
+			for(PwGroup pg = this; pg != null; pg = pg.m_pParentGroup)
+			{
+				pg.m_nCachedGroupsRec = -1;
+				pg.m_nCachedEntriesRec = -1;
 			}
 		}
 
@@ -736,6 +780,26 @@ import java.util.regex.Pattern;
 		/// <param name="slStatus">Optional status reporting object.</param>
 		public void SearchEntries(SearchParameters sp, PwObjectList<PwEntry> listStorage,
 			IStatusLogger slStatus)
+		{
+			SearchEntries(sp, listStorage, slStatus, null);
+		}
+
+		/// <summary>
+		/// Search this group and all subgroups for entries, evaluating
+		/// the entries in parallel. The results are in the same order as
+		/// the ones of a sequential search.
+		/// </summary>
+		/// <param name="sp">Specifies the search method.</param>
+		/// <param name="listStorage">Entry list in which the search results will
+		/// be stored.</param>
+		/// <param name="slStatus">Optional status reporting object. It is
+		/// only called on the calling thread.</param>
+		/// <param name="fjp">Pool on which the entries are evaluated. If
+		/// <c>null</c>, the search runs on the calling thread. The data
+		/// transformation function of <paramref name="sp" /> (if any) must be
+		/// thread-safe.</param>
+		public void SearchEntries(SearchParameters sp, PwObjectList<PwEntry> listStorage,
+			IStatusLogger slStatus, ForkJoinPool fjp)
 		{
 			if(sp == null) { assert false; return; }
 			if(listStorage == null) { assert false; return; }
@@ -748,16 +812,22 @@ import java.util.regex.Pattern;
 			{
 				if(slStatus != null) uTotalEntries = GetEntriesCount(true);
 				SearchEntriesSingle(sp, listStorage, slStatus, uCurEntries,
-					uTotalEntries);
+					uTotalEntries, fjp);
 				return;
 			}
 
 			// Search longer strings first (for improved performance)
 			Collections.sort(lTerms, StrUtil.CompareLengthGt);
 
+			PwSearchIndex idx = FindSearchIndex();
+			if((idx != null) && (new EntrySearcher(sp).GetIndexableTerm() != null))
+				idx.SortTerms(lTerms);
+
 			String strFullSearch = sp.getSearchString(); // Backup
 
-			PwGroup pg = this;
+			// Remaining candidates, in the order of a pre-order traversal;
+			// null until the first term has been evaluated
+			List<PwEntry> lCand = null;
 			for(int iTerm = 0; iTerm < lTerms.size(); ++iTerm)
 			{
 				// Update counters for a better state guess
@@ -765,11 +835,9 @@ import java.util.regex.Pattern;
 				{
 					long uRemRounds = (long)(lTerms.size() - iTerm);
 					uTotalEntries = uCurEntries[0] + (uRemRounds *
-						pg.GetEntriesCount(true));
+						((lCand != null) ? lCand.size() : GetEntriesCount(true)));
 				}
 
-				PwGroup pgNew = new PwGroup();
-
 				sp.setSearchString(lTerms.get(iTerm));
 
 				boolean bNegate = false;
@@ -779,200 +847,123 @@ import java.util.regex.Pattern;
 					bNegate = (sp.getSearchString().length() > 0);
 				}
 
-				if(!pg.SearchEntriesSingle(sp, pgNew.getEntries(), slStatus,
-					uCurEntries, uTotalEntries))
+				if(lCand == null) // Search the tree (possibly using the index)
 				{
-					pg = null;
-					break;
-				}
+					PwObjectList<PwEntry> lMatches = new PwObjectList<PwEntry>();
+					if(!SearchEntriesSingle(sp, lMatches, slStatus, uCurEntries,
+						uTotalEntries, fjp))
+						break;
+
+					if(bNegate)
+					{
+						Set<PwEntry> setMatches = Collections.newSetFromMap(
+							new IdentityHashMap<PwEntry, Boolean>());
+						for(PwEntry pe : lMatches) setMatches.add(pe);
 
-				if(bNegate)
+						lCand = new ArrayList<PwEntry>();
+						for(PwEntry pe : IterateEntries(true))
+						{
+							if(!setMatches.contains(pe)) lCand.add(pe);
+						}
+					}
+					else lCand = lMatches.CloneShallowToList();
+				}
+				else
 				{
-					PwObjectList<PwEntry> lCand = pg.GetEntries(true);
+					boolean[] vMatches = MatchEntries(new EntrySearcher(sp), lCand,
+						slStatus, uCurEntries, uTotalEntries, fjp);
+					if(vMatches == null) { lCand = null; break; } // Canceled
 
-					pg = new PwGroup();
-					for(PwEntry peCand : lCand)
+					List<PwEntry> lNew = new ArrayList<PwEntry>();
+					for(int i = 0; i < vMatches.length; ++i)
 					{
-						if(pgNew.getEntries().IndexOf(peCand) < 0) pg.getEntries().Add(peCand);
+						if(vMatches[i] != bNegate) lNew.add(lCand.get(i));
 					}
+					lCand = lNew;
 				}
-				else pg = pgNew;
+
+				if(lCand.isEmpty()) break;
 			}
 
-			if(pg != null) listStorage.Add(pg.getEntries());
+			if(lCand != null) listStorage.Add(lCand);
 			sp.setSearchString(strFullSearch); // Restore
 		}
 
-		private boolean SearchEntriesSingle(SearchParameters spIn,
-			final PwObjectList<PwEntry> listStorage, final IStatusLogger slStatus,
-			long[] uCurEntries, final long uTotalEntries)
-		{
-			final SearchParameters sp = spIn.Clone();
-			if(sp.getSearchString() == null) { assert false; return true; }
-			sp.setSearchString(sp.getSearchString().trim());
-
-			final boolean bTitle = sp.getSearchInTitles();
-			final boolean bUserName = sp.getSearchInUserNames();
-			final boolean bPassword = sp.getSearchInPasswords();
-			final boolean bUrl = sp.getSearchInUrls();
-			final boolean bNotes = sp.getSearchInNotes();
-			final boolean bOther = sp.getSearchInOther();
-			final boolean bUuids = sp.getSearchInUuids();
-			final boolean bGroupName = sp.getSearchInGroupNames();
-			final boolean bTags = sp.getSearchInTags();
-			final boolean bExcludeExpired = sp.getExcludeExpired();
-			final boolean bRespectEntrySearchingDisabled = sp.getRespectEntrySearchingDisabled();
-
-			final Date dtNow = new Date();
-
-			Pattern _rx = null;
-			if(sp.getRegularExpression())
-			{
-                int ro = 0;
-				if((sp.getComparisonMode() == StringComparison.CurrentCultureIgnoreCase) ||
-					(sp.getComparisonMode() == StringComparison.InvariantCultureIgnoreCase) ||
-					(sp.getComparisonMode() == StringComparison.OrdinalIgnoreCase))
+		private static boolean[] MatchEntries(EntrySearcher es, List<PwEntry> lEntries,
+			IStatusLogger slStatus, long[] uCurEntries, long uTotalEntries,
+			ForkJoinPool fjp)
+		{
+			if((fjp != null) && (lEntries.size() > EntrySearcher.ParallelThreshold))
+				return es.MatchAll(lEntries, fjp, slStatus, uCurEntries, uTotalEntries);
+
+			boolean[] vMatches = new boolean[lEntries.size()];
+			for(int i = 0; i < vMatches.length; ++i)
+			{
+				if(slStatus != null)
 				{
-					ro |= Pattern.CASE_INSENSITIVE;
+					if(!slStatus.SetProgress((int)((uCurEntries[0] *
+						100L) / uTotalEntries))) return null;
+					++uCurEntries[0];
 				}
 
-				_rx = Pattern.compile(sp.getSearchString(), ro);
+				vMatches[i] = es.Matches(lEntries.get(i));
 			}
-            final Pattern rx = _rx;
 
-			final long[] uLocalCurEntries = uCurEntries;
-
-			EntryHandler eh = null;
-			if(sp.getSearchString().length() <= 0) // Report all
-			{
-				eh = new EntryHandler() { public boolean delegate(PwEntry pe)
-				{
-					if(slStatus != null)
-					{
-						if(!slStatus.SetProgress((int)((uLocalCurEntries[0] *
-							100L) / uTotalEntries))) return false;
-						++uLocalCurEntries[0];
-					}
+			return vMatches;
+		}
 
-					if(bRespectEntrySearchingDisabled && !pe.GetSearchingEnabled())
-						return true; // Skip
-					if(bExcludeExpired && pe.getExpires() && (dtNow.getTime() > pe.getExpiryTime().getTime()))
-						return true; // Skip
+		private boolean SearchEntriesSingle(SearchParameters spIn,
+			final PwObjectList<PwEntry> listStorage, final IStatusLogger slStatus,
+			long[] uCurEntries, final long uTotalEntries, ForkJoinPool fjp)
+		{
+			if(spIn.getSearchString() == null) { assert false; return true; }
+			final EntrySearcher es = new EntrySearcher(spIn);
 
-					listStorage.Add(pe);
-					return true;
-				}};
+			// Entries to evaluate as a list; null to traverse the tree
+			long uTotal = uTotalEntries;
+			PwSearchIndex idx = FindSearchIndex();
+			List<PwEntry> l = ((idx != null) ? idx.FindCandidates(this, es) : null);
+			if(l != null)
+			{
+				// Entries that are not candidates are skipped, not evaluated
+				if(slStatus != null) uTotal -= (GetEntriesCount(true) - l.size());
 			}
-			else
+			else if(fjp != null)
 			{
-				eh = new EntryHandler() { public boolean delegate(PwEntry pe)
-				{
-					if(slStatus != null)
-					{
-						if(!slStatus.SetProgress((int)((uLocalCurEntries[0] *
-							100L) / uTotalEntries))) return false;
-						++uLocalCurEntries[0];
-					}
-
-					if(bRespectEntrySearchingDisabled && !pe.GetSearchingEnabled())
-						return true; // Skip
-					if(bExcludeExpired && pe.getExpires() && (dtNow.getTime() > pe.getExpiryTime().getTime()))
-						return true; // Skip
-
-					int uInitialResults = listStorage.getUCount();
-
-					for(Map.Entry<String, ProtectedString> kvp : pe.getStrings())
-					{
-						String strKey = kvp.getKey();
-
-						if(strKey.equals(PwDefs.TitleField))
-						{
-							if(bTitle) SearchEvalAdd(sp, kvp.getValue().ReadString(),
-								rx, pe, listStorage);
-						}
-						else if(strKey.equals(PwDefs.UserNameField))
-						{
-							if(bUserName) SearchEvalAdd(sp, kvp.getValue().ReadString(),
-								rx, pe, listStorage);
-						}
-						else if(strKey.equals(PwDefs.PasswordField))
-						{
-							if(bPassword) SearchEvalAdd(sp, kvp.getValue().ReadString(),
-								rx, pe, listStorage);
-						}
-						else if(strKey.equals(PwDefs.UrlField))
-						{
-							if(bUrl) SearchEvalAdd(sp, kvp.getValue().ReadString(),
-								rx, pe, listStorage);
-						}
-						else if(strKey.equals(PwDefs.NotesField))
-						{
-							if(bNotes) SearchEvalAdd(sp, kvp.getValue().ReadString(),
-								rx, pe, listStorage);
-						}
-						else if(bOther)
-							SearchEvalAdd(sp, kvp.getValue().ReadString(),
-								rx, pe, listStorage);
-
-						// An entry can match only once => break if we have added it
-						if(listStorage.getUCount() > uInitialResults) break;
-					}
-
-					if(bUuids && (listStorage.getUCount() == uInitialResults))
-						SearchEvalAdd(sp, pe.getUuid().ToHexString(), rx, pe, listStorage);
-
-					if(bGroupName && (listStorage.getUCount() == uInitialResults) &&
-						(pe.getParentGroup() != null))
-						SearchEvalAdd(sp, pe.getParentGroup().getName(), rx, pe, listStorage);
-
-					if(bTags)
-					{
-						for(String strTag : pe.getTags())
-						{
-							if(listStorage.getUCount() != uInitialResults) break; // Match
-
-							SearchEvalAdd(sp, strTag, rx, pe, listStorage);
-						}
-					}
-
-					return true;
-                }};
+				l = new ArrayList<PwEntry>();
+				for(PwEntry pe : IterateEntries(true)) l.add(pe);
+				if(l.size() <= EntrySearcher.ParallelThreshold) l = null;
 			}
 
-			if(!PreOrderTraverseTree(null, eh)) return false;
-			uCurEntries = uLocalCurEntries;
-			return true;
-		}
+			if(l != null)
+			{
+				boolean[] vMatches = MatchEntries(es, l, slStatus, uCurEntries,
+					uTotal, fjp);
+				if(vMatches == null) return false; // Canceled
 
-		private static void SearchEvalAdd(SearchParameters sp, String strDataField,
-			Pattern rx, PwEntry pe, PwObjectList<PwEntry> lResults)
-		{
-            StringComparison mode = sp.getComparisonMode();
-            boolean ignoreCase =
-                    mode == StringComparison.OrdinalIgnoreCase ||
-                    mode == StringComparison.CurrentCultureIgnoreCase ||
-                    mode == StringComparison.InvariantCultureIgnoreCase;
-            boolean bMatch = false;
+				for(int i = 0; i < vMatches.length; ++i)
+				{
+					if(vMatches[i]) listStorage.Add(l.get(i));
+				}
+				return true;
+			}
 
-			if(rx == null)
-				bMatch = (ignoreCase ? strDataField.toLowerCase() : strDataField).contains(ignoreCase ? sp.getSearchString().toLowerCase() : sp.getSearchString());
-			else bMatch = rx.matcher(strDataField).matches();
+			final long[] uLocalCurEntries = uCurEntries;
 
-			if(!bMatch && (sp.getDataTransformationFn() != null))
+			EntryHandler eh = new EntryHandler() { public boolean delegate(PwEntry pe)
 			{
-				String strCmp = sp.getDataTransformationFn().delegate(strDataField, pe);
-				if(!strCmp.equals(strDataField))
+				if(slStatus != null)
 				{
-					if(rx == null)
-						bMatch = (ignoreCase ?
-                                strCmp.toLowerCase() : strCmp).contains(
-                                ignoreCase ?
-                                        sp.getSearchString().toLowerCase() : sp.getSearchString());
-					else bMatch = rx.matcher(strCmp).matches();
+					if(!slStatus.SetProgress((int)((uLocalCurEntries[0] *
+						100L) / uTotalEntries))) return false;
+					++uLocalCurEntries[0];
 				}
-			}
 
-			if(bMatch) lResults.Add(pe);
+				if(es.Matches(pe)) listStorage.Add(pe);
+				return true;
+			}};
+
+			return PreOrderTraverseTree(null, eh);
 		}
 
 		public List<String> BuildEntryTagsList()
@@ -1066,12 +1057,14 @@ import java.util.regex.Pattern;
 
 			if(bSearchRecursive)
 			{
-				PwGroup pgRec;
-				for(PwGroup pg : m_listGroups)
+				if(m_uuidIndex != null)
 				{
-					pgRec = pg.FindGroup(uuid, true);
-					if(pgRec != null) return pgRec;
+					PwGroup[] pgFound = new PwGroup[1];
+					if(m_uuidIndex.TryFindGroup(uuid, this, pgFound))
+						return pgFound[0];
 				}
+
+				return FindGroupRec(uuid);
 			}
 			else // Not recursive
 			{
@@ -1085,6 +1078,20 @@ import java.util.regex.Pattern;
 			return null;
 		}
 
+		private PwGroup FindGroupRec(PwUuid uuid)
+		{
+			if(m_uuid.Equals(uuid)) return this;
+
+			PwGroup pgRec;
+			for(PwGroup pg : m_listGroups)
+			{
+				pgRec = pg.FindGroupRec(uuid);
+				if(pgRec != null) return pgRec;
+			}
+
+			return null;
+		}
+
 		/// <summary>
 		/// Find an object.
 		/// </summary>
@@ -1138,6 +1145,18 @@ import java.util.regex.Pattern;
 		/// <param name="bSearchRecursive">If <c>true</c>, the search is recursive.</param>
 		/// <returns>Returns reference to found entry, otherwise <c>null</c>.</returns>
 		public PwEntry FindEntry(PwUuid uuid, boolean bSearchRecursive)
+		{
+			if(bSearchRecursive && (m_uuidIndex != null))
+			{
+				PwEntry[] peFound = new PwEntry[1];
+				if(m_uuidIndex.TryFindEntry(uuid, this, peFound))
+					return peFound[0];
+			}
+
+			return FindEntryRec(uuid, bSearchRecursive);
+		}
+
+		private PwEntry FindEntryRec(PwUuid uuid, boolean bSearchRecursive)
 		{
 			for(PwEntry pe : m_listEntries)
 			{
@@ -1149,7 +1168,7 @@ import java.util.regex.Pattern;
 				PwEntry peSub;
 				for(PwGroup pg : m_listGroups)
 				{
-					peSub = pg.FindEntry(uuid, true);
+					peSub = pg.FindEntryRec(uuid, true);
 					if(peSub != null) return peSub;
 				}
 			}
@@ -1157,6 +1176,148 @@ import java.util.regex.Pattern;
 			return null;
 		}
 
+		PwUuidIndex getUuidIndex()
+		{
+			return m_uuidIndex;
+		}
+
+		void setUuidIndex(PwUuidIndex idx)
+		{
+			m_uuidIndex = idx;
+		}
+
+		/// <summary>
+		/// Enable or disable the UUID index for the tree rooted at the
+		/// current group. When enabled, recursive <c>FindGroup</c>,
+		/// <c>FindEntry</c> and <c>FindObject</c> calls are answered
+		/// using a hash table instead of traversing the tree.
+		/// </summary>
+		void SetUuidIndexEnabled(boolean bEnabled)
+		{
+			if(bEnabled)
+			{
+				if((m_uuidIndex != null) && (m_uuidIndex.getRootGroup() == this))
+					return;
+				new PwUuidIndex(this).AttachGroupRec(this);
+			}
+			else if(m_uuidIndex != null)
+				SetUuidIndexRec(this, null);
+		}
+
+		/// <summary>
+		/// Enable or disable the search index for the tree rooted at the
+		/// current group. When enabled, case-insensitive substring
+		/// searches in this group or any of its subgroups only evaluate
+		/// the entries whose strings contain all trigrams of the search
+		/// term. Entries must be touched (<c>PwEntry.Touch</c>) with
+		/// modification after their strings have been changed.
+		/// Enabling the index again rebuilds it.
+		/// </summary>
+		void SetSearchIndexEnabled(boolean bEnabled)
+		{
+			if(bEnabled)
+			{
+				if(m_searchIndex == null) m_searchIndex = new PwSearchIndex(this);
+				m_searchIndex.Update();
+			}
+			else m_searchIndex = null;
+		}
+
+		/// <summary>
+		/// Get the search index of the tree containing this group.
+		/// </summary>
+		PwSearchIndex FindSearchIndex()
+		{
+			PwGroup pg = this;
+			while(pg.m_pParentGroup != null) pg = pg.m_pParentGroup;
+			return pg.m_searchIndex;
+		}
+
+		private static void SetUuidIndexRec(PwGroup pg, PwUuidIndex idx)
+		{
+			pg.m_uuidIndex = idx;
+			for(PwGroup pgSub : pg.m_listGroups)
+				SetUuidIndexRec(pgSub, idx);
+		}
+
+		/// <summary>
+		/// Version of the structure of the tree containing this group.
+		/// It changes whenever a group or entry is added to, removed from
+		/// or reordered within any group of the tree.
+		/// </summary>
+		public long GetTreeVersion()
+		{
+			PwGroup pg = this;
+			while(pg.m_pParentGroup != null) pg = pg.m_pParentGroup;
+			return pg.m_lTreeVersion;
+		}
+
+		private void IncrementTreeVersion()
+		{
+			PwGroup pg = this;
+			while(pg.m_pParentGroup != null) pg = pg.m_pParentGroup;
+			++pg.m_lTreeVersion;
+		}
+
+		// Called by the object lists of this group
+		void OnObjectAdded(Object o)
+		{
+			InvalidateCounts();
+			IncrementTreeVersion();
+
+			PwSearchIndex idxSearch = FindSearchIndex();
+			if(idxSearch != null) idxSearch.OnObjectAdded(o);
+
+			if(m_uuidIndex == null) return;
+
+			if(o instanceof PwEntry) m_uuidIndex.OnEntryAdded((PwEntry)o);
+			else if(o instanceof PwGroup) m_uuidIndex.OnGroupAdded((PwGroup)o);
+		}
+
+		void OnObjectRemoved(Object o)
+		{
+			InvalidateCounts();
+			IncrementTreeVersion();
+
+			PwSearchIndex idxSearch = FindSearchIndex();
+			if(idxSearch != null)
+			{
+				PwGroup pgNewParent = ((o instanceof PwEntry) ?
+					((PwEntry)o).getParentGroup() : ((PwGroup)o).m_pParentGroup);
+				// Not moved to another group of the same tree?
+				if((pgNewParent == null) || (pgNewParent == this) ||
+					(pgNewParent.FindSearchIndex() != idxSearch))
+					idxSearch.OnObjectRemoved(o);
+			}
+
+			if(m_uuidIndex == null) return;
+
+			if(o instanceof PwEntry)
+			{
+				PwEntry pe = (PwEntry)o;
+				// Already added to another group of the same tree?
+				if(IsMovedWithinIndex(pe.getParentGroup())) return;
+				m_uuidIndex.OnEntryRemoved(pe);
+			}
+			else if(o instanceof PwGroup)
+			{
+				PwGroup pg = (PwGroup)o;
+				if(IsMovedWithinIndex(pg.m_pParentGroup)) return;
+				m_uuidIndex.OnGroupRemoved(pg);
+			}
+		}
+
+		void OnObjectsReordered()
+		{
+			IncrementTreeVersion();
+		}
+
+		private boolean IsMovedWithinIndex(PwGroup pgNewParent)
+		{
+			return ((pgNewParent != null) && (pgNewParent != this) &&
+				(pgNewParent.m_uuidIndex == m_uuidIndex));
+		}
+
 		/// <summary>
 		/// Get the full path of a group.
 		/// </summary>
@@ -1389,6 +1550,118 @@ import java.util.regex.Pattern;
 			return list;
 		}
 
+		/// <summary>
+		/// Iterate over the subgroups (not including this one), without
+		/// copying them into a list. Groups are visited in pre-order, i.e.
+		/// the same order as <c>TraverseTree</c> and <c>GetFlatGroupList</c>.
+		/// The tree must not be modified during the iteration.
+		/// </summary>
+		/// <param name="bRecursive">If <c>true</c>, all child groups are
+		/// visited, too.</param>
+		public Iterable<PwGroup> IterateGroups(final boolean bRecursive)
+		{
+			if(!bRecursive) return m_listGroups;
+
+			return new Iterable<PwGroup>() {
+				public Iterator<PwGroup> iterator()
+				{
+					return new GroupIterator(PwGroup.this);
+				}
+			};
+		}
+
+		/// <summary>
+		/// Iterate over the entries of this group, without copying them into
+		/// a list. The order is the same as the one of <c>GetEntries</c>.
+		/// The tree must not be modified during the iteration.
+		/// </summary>
+		/// <param name="bIncludeSubGroupEntries">If <c>true</c>, the entries
+		/// of all subgroups are visited, too.</param>
+		public Iterable<PwEntry> IterateEntries(final boolean bIncludeSubGroupEntries)
+		{
+			if(!bIncludeSubGroupEntries) return m_listEntries;
+
+			return new Iterable<PwEntry>() {
+				public Iterator<PwEntry> iterator()
+				{
+					return new EntryIterator(PwGroup.this);
+				}
+			};
+		}
+
+		private static final class GroupIterator implements Iterator<PwGroup>
+		{
+			// Iterators over the subgroups of the groups on the current path
+			private final ArrayDeque<Iterator<PwGroup>> m_stack =
+				new ArrayDeque<Iterator<PwGroup>>();
+
+			GroupIterator(PwGroup pgRoot)
+			{
+				m_stack.push(pgRoot.m_listGroups.iterator());
+			}
+
+			public boolean hasNext()
+			{
+				while(!m_stack.isEmpty())
+				{
+					if(m_stack.peek().hasNext()) return true;
+					m_stack.pop();
+				}
+
+				return false;
+			}
+
+			public PwGroup next()
+			{
+				if(!hasNext()) throw new NoSuchElementException();
+
+				PwGroup pg = m_stack.peek().next();
+				if(pg.m_listGroups.getUCount() != 0)
+					m_stack.push(pg.m_listGroups.iterator());
+				return pg;
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		}
+
+		private static final class EntryIterator implements Iterator<PwEntry>
+		{
+			private final GroupIterator m_itGroups;
+			private Iterator<PwEntry> m_itEntries;
+
+			EntryIterator(PwGroup pgRoot)
+			{
+				m_itGroups = new GroupIterator(pgRoot);
+				m_itEntries = pgRoot.m_listEntries.iterator();
+			}
+
+			public boolean hasNext()
+			{
+				while(!m_itEntries.hasNext())
+				{
+					if(!m_itGroups.hasNext()) return false;
+					m_itEntries = m_itGroups.next().m_listEntries.iterator();
+				}
+
+				return true;
+			}
+
+			public PwEntry next()
+			{
+				if(!hasNext()) throw new NoSuchElementException();
+
+				return m_itEntries.next();
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		}
+
 		/// <summary>
 		/// Get objects contained in this group.
 		/// </summary>
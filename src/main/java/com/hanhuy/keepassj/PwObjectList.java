@@ -28,6 +28,10 @@ import java.util.*;
 	{
 		private List<T> m_vObjects = new ArrayList<T>();
 
+		// Group whose subgroups or entries are stored in this list;
+		// it is notified about additions and removals
+		private PwGroup m_pgOwner = null;
+
 		/// <summary>
 		/// Get number of objects in this list.
 		/// </summary>
@@ -43,6 +47,31 @@ import java.util.*;
 		{
 		}
 
+		PwObjectList(PwGroup pgOwner)
+		{
+			m_pgOwner = pgOwner;
+		}
+
+		void SetOwner(PwGroup pgOwner)
+		{
+			m_pgOwner = pgOwner;
+		}
+
+		private void OnAdded(T pwObject)
+		{
+			if(m_pgOwner != null) m_pgOwner.OnObjectAdded(pwObject);
+		}
+
+		private void OnRemoved(T pwObject)
+		{
+			if(m_pgOwner != null) m_pgOwner.OnObjectRemoved(pwObject);
+		}
+
+		private void OnReordered()
+		{
+			if(m_pgOwner != null) m_pgOwner.OnObjectsReordered();
+		}
+
 		public Iterator<T> iterator()
 		{
 			return m_vObjects.iterator();
@@ -50,8 +79,14 @@ import java.util.*;
 
 		public void Clear()
 		{
+			if(m_pgOwner != null)
+			{
+				List<T> l = new ArrayList<T>(m_vObjects);
+				m_vObjects.clear();
+				for(T po : l) OnRemoved(po);
+			}
 			// Do not destroy contained objects!
-			m_vObjects.clear();
+			else m_vObjects.clear();
 		}
 
 		/// <summary>
@@ -96,6 +131,7 @@ import java.util.*;
 			if(pwObject == null) throw new IllegalArgumentException("pwObject");
 
 			m_vObjects.add(pwObject);
+			OnAdded(pwObject);
 		}
 
 		public void Add(PwObjectList<T> vObjects)
@@ -106,6 +142,7 @@ import java.util.*;
 			for(T po : vObjects)
 			{
 				m_vObjects.add(po);
+				OnAdded(po);
 			}
 		}
 
@@ -117,6 +154,7 @@ import java.util.*;
 			for(T po : vObjects)
 			{
 				m_vObjects.add(po);
+				OnAdded(po);
 			}
 		}
 
@@ -126,6 +164,7 @@ import java.util.*;
 			if(pwObject == null) throw new IllegalArgumentException("pwObject");
 
 			m_vObjects.add(uIndex, pwObject);
+			OnAdded(pwObject);
 		}
 
 		/// <summary>
@@ -149,7 +188,12 @@ import java.util.*;
 			if(uIndex >= (int)m_vObjects.size())
 				throw new ArrayIndexOutOfBoundsException("uIndex");
 
-			m_vObjects.set(uIndex, pwObject);
+			T tOld = m_vObjects.set(uIndex, pwObject);
+			if(tOld != pwObject)
+			{
+				OnRemoved(tOld);
+				OnAdded(pwObject);
+			}
 		}
 
 		/// <summary>
@@ -198,12 +242,16 @@ import java.util.*;
 		{
 			assert pwReference != null; if(pwReference == null) throw new IllegalArgumentException("pwReference");
 
-			return m_vObjects.remove(pwReference);
+			if(!m_vObjects.remove(pwReference)) return false;
+
+			OnRemoved(pwReference);
+			return true;
 		}
 
 		public void RemoveAt(int uIndex)
 		{
-			m_vObjects.remove((int)uIndex);
+			T t = m_vObjects.remove((int)uIndex);
+			OnRemoved(t);
 		}
 
 		/// <summary>
@@ -227,12 +275,14 @@ import java.util.*;
 				T tTemp = m_vObjects.get(nIndex - 1);
 				m_vObjects.set(nIndex - 1, m_vObjects.get(nIndex));
 				m_vObjects.set(nIndex, tTemp);
+				OnReordered();
 			}
 			else if(!bUp && (nIndex != (nCount - 1))) // No assert for bottom item
 			{
 				T tTemp = m_vObjects.get(nIndex + 1);
 				m_vObjects.set(nIndex + 1, m_vObjects.get(nIndex));
 				m_vObjects.set(nIndex, tTemp);
+				OnReordered();
 			}
 		}
 
@@ -296,6 +346,8 @@ import java.util.*;
 					m_vObjects.add(p + 1, t);
 				}
 			}
+
+			OnReordered();
 		}
 
 		/// <summary>
@@ -326,6 +378,7 @@ import java.util.*;
 			{
 				for(T t : vObjects) m_vObjects.add(t);
 			}
+			OnReordered();
 
 			assert nCount == m_vObjects.size();
 			if(nCount != m_vObjects.size())
@@ -337,6 +390,7 @@ import java.util.*;
 			if(tComparer == null) throw new IllegalArgumentException("tComparer");
 
 			Collections.sort(m_vObjects, tComparer);
+			OnReordered();
 		}
 
 		public static <T extends IDeepCloneable<T>> PwObjectList FromArray(T[] tArray)
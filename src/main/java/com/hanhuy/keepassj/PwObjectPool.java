@@ -65,31 +65,48 @@ public class PwObjectPool
 		}
 	static class PwObjectPoolEx
 	{
-		private Map<PwUuid, Long> m_dUuidToId =
-			new HashMap<PwUuid, Long>();
-		private HashMap<Long, IStructureItem> m_dIdToItem =
-			new HashMap<Long, IStructureItem>();
+		private Map<PwUuid, Long> m_dUuidToId;
+		// Index is the ID; null for holes. IDs are dense, so a list
+		// is cheaper than a dictionary
+		private ArrayList<IStructureItem> m_lIdToItem;
 
-		private PwObjectPoolEx()
+		private PwObjectPoolEx(int nCapacity)
 		{
+			m_dUuidToId = new HashMap<PwUuid, Long>(Math.max(16,
+				(nCapacity * 4) / 3 + 1));
+			m_lIdToItem = new ArrayList<IStructureItem>(nCapacity);
 		}
 
 		public static PwObjectPoolEx FromGroup(PwGroup pg)
 		{
-			PwObjectPoolEx p = new PwObjectPoolEx();
+			if(pg == null) { assert(false); return new PwObjectPoolEx(0); }
 
-			if(pg == null) { assert(false); return p; }
+			int[] uGroups = new int[1], uEntries = new int[1];
+			pg.GetCounts(true, uGroups, uEntries);
+			// Each group adds two holes
+			PwObjectPoolEx p = new PwObjectPoolEx(3 * (uGroups[0] + 1) +
+				uEntries[0] + 2);
 
 			long[] uFreeId = { 2 }; // 0 = "not found", 1 is a hole
 
-			p.m_dUuidToId.put(pg.getUuid(), uFreeId[0]);
-			p.m_dIdToItem.put(uFreeId[0], pg);
+			p.Put(uFreeId[0], pg);
 			uFreeId[0] += 2; // Make hole
 
 			p.AddGroupRec(pg, uFreeId);
 			return p;
 		}
 
+		// IDs must be increasing
+		private void Put(long uId, IStructureItem pt)
+		{
+			assert(!m_dUuidToId.containsKey(pt.getUuid()));
+			assert(uId >= m_lIdToItem.size());
+
+			m_dUuidToId.put(pt.getUuid(), uId);
+			while(m_lIdToItem.size() < uId) m_lIdToItem.add(null);
+			m_lIdToItem.add(pt);
+		}
+
 		private void AddGroupRec(PwGroup pg, long[] uFreeId)
 		{
 			if(pg == null) { assert(false); return; }
@@ -99,11 +116,7 @@ public class PwObjectPool
 			// Consecutive entries must have consecutive IDs
 			for (PwEntry pe : pg.getEntries())
 			{
-				assert(!m_dUuidToId.containsKey(pe.getUuid()));
-				assert(!m_dIdToItem.containsValue(pe));
-
-				m_dUuidToId.put(pe.getUuid(), uId[0]);
-				m_dIdToItem.put(uId[0], pe);
+				Put(uId[0], pe);
 				++uId[0];
 			}
 			++uId[0]; // Make hole
@@ -111,11 +124,7 @@ public class PwObjectPool
 			// Consecutive groups must have consecutive IDs
 			for(PwGroup pgSub : pg.getGroups())
 			{
-				assert(!m_dUuidToId.containsKey(pgSub.getUuid()));
-				assert(!m_dIdToItem.containsValue(pgSub));
-
-				m_dUuidToId.put(pgSub.getUuid(), uId[0]);
-				m_dIdToItem.put(uId[0], pgSub);
+				Put(uId[0], pgSub);
 				++uId[0];
 			}
 			++uId[0]; // Make hole
@@ -150,9 +159,8 @@ public class PwObjectPool
 
 		public IStructureItem GetItemById(long uId)
 		{
-			IStructureItem p;
-			p = m_dIdToItem.get(uId);
-			return p;
+			if((uId < 0) || (uId >= m_lIdToItem.size())) return null;
+			return m_lIdToItem.get((int)uId);
 		}
 	}
 
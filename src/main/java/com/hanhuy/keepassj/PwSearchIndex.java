@@ -0,0 +1,414 @@
+package com.hanhuy.keepassj;
+/*
+  KeePass Password Safe - The Open-Source Password Manager
+  Copyright (C) 2003-2014 Dominik Reichl <dominik.reichl@t-online.de>
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+	/// <summary>
+	/// Trigram index over the lower-case, unprotected, non-password
+	/// strings and the tags of all entries of a group tree. It is used by
+	/// <c>PwGroup.SearchEntries</c> to find candidate entries for case-
+	/// insensitive substring searches; candidates are verified by the
+	/// normal matching code, thus results are identical to a full search.
+	/// Entries are (re-)indexed lazily, after they have been added to the
+	/// tree or their strings or tags have changed; <c>PwGroup</c> reports
+	/// additions and removals in its object lists, and changes are
+	/// detected using the change stamps of the string dictionaries and
+	/// tags.
+	/// </summary>
+	final class PwSearchIndex
+	{
+		private final static int GramLength = 3;
+
+		// State of an entry when it was indexed
+		private static final class IndexedEntry
+		{
+			final long[] m_vGrams;
+			final ProtectedStringDictionary m_dStrings;
+			final long m_lStringsStamp;
+			final List<String> m_lTags;
+			final long m_lTagsStamp;
+
+			IndexedEntry(long[] vGrams, ProtectedStringDictionary dStrings,
+				long lStringsStamp, List<String> lTags, long lTagsStamp)
+			{
+				m_vGrams = vGrams;
+				m_dStrings = dStrings;
+				m_lStringsStamp = lStringsStamp;
+				m_lTags = lTags;
+				m_lTagsStamp = lTagsStamp;
+			}
+
+			boolean IsCurrent(PwEntry pe)
+			{
+				return ((pe.getStrings() == m_dStrings) &&
+					(m_dStrings.getChangeStamp() == m_lStringsStamp) &&
+					(pe.getTags() == m_lTags) && (pe.getTagsChangeStamp() == m_lTagsStamp));
+			}
+		}
+
+		private final PwGroup m_pgRoot;
+
+		// Trigram -> entries having it in one of their indexed strings
+		private final Map<Long, Set<PwEntry>> m_dPostings =
+			new HashMap<Long, Set<PwEntry>>();
+		// Entry -> its trigrams (for removing it from the postings) and
+		// the stamps of the indexed data
+		private final Map<PwEntry, IndexedEntry> m_dEntryGrams =
+			new HashMap<PwEntry, IndexedEntry>();
+		// Entries with protected strings, which are not indexed and
+		// therefore always candidates
+		private final Set<PwEntry> m_setUnindexed = new HashSet<PwEntry>();
+		private final Set<PwEntry> m_setDirty = new HashSet<PwEntry>();
+
+		// Global change counts at which the stamps were verified
+		private long m_lStringsCheckedAt = -1;
+		private long m_lTagsCheckedAt = -1;
+
+		public PwSearchIndex(PwGroup pgRoot)
+		{
+			if(pgRoot == null) throw new IllegalArgumentException("pgRoot");
+
+			m_pgRoot = pgRoot;
+		}
+
+		public PwGroup getRootGroup()
+		{
+			return m_pgRoot;
+		}
+
+		public synchronized void OnObjectAdded(Object o)
+		{
+			if(o instanceof PwEntry) m_setDirty.add((PwEntry)o);
+			else if(o instanceof PwGroup)
+			{
+				for(PwEntry pe : ((PwGroup)o).IterateEntries(true)) m_setDirty.add(pe);
+			}
+		}
+
+		public synchronized void OnObjectRemoved(Object o)
+		{
+			if(o instanceof PwEntry) Remove((PwEntry)o);
+			else if(o instanceof PwGroup)
+			{
+				for(PwEntry pe : ((PwGroup)o).IterateEntries(true)) Remove(pe);
+			}
+		}
+
+		/// <summary>
+		/// Rebuild the index from the current tree.
+		/// </summary>
+		public synchronized void Update()
+		{
+			m_dPostings.clear();
+			m_dEntryGrams.clear();
+			m_setUnindexed.clear();
+			m_setDirty.clear();
+			m_lStringsCheckedAt = ProtectedStringDictionary.getGlobalChangeCount();
+			m_lTagsCheckedAt = PwEntry.getGlobalTagsChangeCount();
+
+			for(PwEntry pe : m_pgRoot.IterateEntries(true)) Add(pe);
+		}
+
+		/// <summary>
+		/// Find the entries of a group (recursively) that may match a
+		/// search. Evaluating the search is left to the caller.
+		/// </summary>
+		/// <returns>Candidates, in the order of a pre-order traversal of
+		/// <paramref name="pgScope" />, or <c>null</c>, if the index cannot
+		/// be used for the search of <paramref name="es" /> and the caller
+		/// has to search the tree.</returns>
+		public synchronized List<PwEntry> FindCandidates(PwGroup pgScope,
+			EntrySearcher es)
+		{
+			String strTerm = es.GetIndexableTerm();
+			if((strTerm == null) || (strTerm.length() < GramLength)) return null;
+
+			ReindexDirty();
+			final Set<PwEntry> setCand = GetCandidates(strTerm);
+			if(setCand == null) return null; // Not selective, scanning is faster
+			setCand.addAll(m_setUnindexed);
+
+			List<PwEntry> lOrdered = null;
+			if((setCand.size() * 8) <= m_dEntryGrams.size())
+				lOrdered = SortByTreePosition(setCand, pgScope);
+
+			if(lOrdered == null) // Many candidates; traversing is cheaper than sorting
+			{
+				final List<PwEntry> l = new ArrayList<PwEntry>();
+				pgScope.TraverseTree(TraversalMethod.PreOrder, null, new EntryHandler() {
+					public boolean delegate(PwEntry pe)
+					{
+						if(setCand.contains(pe)) l.add(pe);
+						return true;
+					}
+				});
+				lOrdered = l;
+			}
+
+			return lOrdered;
+		}
+
+		/// <summary>
+		/// Order entries like a pre-order traversal of <paramref name="pgScope" />
+		/// would, dropping the ones outside of it.
+		/// </summary>
+		/// <returns>Ordered entries or <c>null</c>, if the parent
+		/// references of the tree are inconsistent.</returns>
+		private List<PwEntry> SortByTreePosition(Set<PwEntry> setEntries, PwGroup pgScope)
+		{
+			final Map<PwEntry, int[]> dPositions = new HashMap<PwEntry, int[]>();
+			for(PwEntry pe : setEntries)
+			{
+				// Group indices from the root (plus one), then zero and the
+				// entry index, such that entries of a group precede its
+				// subgroups
+				List<Integer> lPos = new ArrayList<Integer>();
+				PwGroup pg = pe.getParentGroup();
+				if(pg == null) return null;
+				int i = pg.getEntries().IndexOf(pe);
+				if(i < 0) return null;
+				lPos.add(i);
+				lPos.add(0);
+
+				boolean bInScope = (pg == pgScope);
+				while(pg.getParentGroup() != null)
+				{
+					PwGroup pgParent = pg.getParentGroup();
+					i = pgParent.getGroups().IndexOf(pg);
+					if(i < 0) return null;
+					lPos.add(i + 1);
+
+					pg = pgParent;
+					bInScope |= (pg == pgScope);
+				}
+				if((pg != m_pgRoot) || !bInScope) continue;
+
+				int[] vPos = new int[lPos.size()];
+				for(int j = 0; j < vPos.length; ++j)
+					vPos[j] = lPos.get(vPos.length - j - 1);
+				dPositions.put(pe, vPos);
+			}
+
+			List<PwEntry> l = new ArrayList<PwEntry>(dPositions.keySet());
+			Collections.sort(l, new Comparator<PwEntry>() {
+				public int compare(PwEntry x, PwEntry y)
+				{
+					int[] vX = dPositions.get(x), vY = dPositions.get(y);
+					for(int i = 0; (i < vX.length) && (i < vY.length); ++i)
+					{
+						if(vX[i] != vY[i]) return ((vX[i] < vY[i]) ? -1 : 1);
+					}
+					return (vX.length - vY.length);
+				}
+			});
+			return l;
+		}
+
+		/// <summary>
+		/// Sort search terms such that the most selective ones come first
+		/// (negated and unindexable terms last); evaluating them in this
+		/// order makes the later terms only check a few entries.
+		/// The results of a search do not depend on the order of terms.
+		/// </summary>
+		public synchronized void SortTerms(List<String> lTerms)
+		{
+			ReindexDirty();
+
+			final Map<String, Integer> dCounts = new HashMap<String, Integer>();
+			for(String strTerm : lTerms)
+			{
+				String strLower = strTerm.toLowerCase();
+				int n = Integer.MAX_VALUE;
+				if(!strTerm.startsWith("-") && (strLower.length() >= GramLength))
+				{
+					n = 0;
+					for(long lGram : GetGrams(strLower))
+					{
+						Set<PwEntry> s = m_dPostings.get(lGram);
+						if(s == null) { n = 0; break; }
+						n = ((n == 0) ? s.size() : Math.min(n, s.size()));
+					}
+				}
+				dCounts.put(strTerm, n);
+			}
+
+			Collections.sort(lTerms, new Comparator<String>() {
+				public int compare(String x, String y)
+				{
+					return dCounts.get(x).compareTo(dCounts.get(y));
+				}
+			});
+		}
+
+		// Returns null, if the term occurs in most entries
+		private Set<PwEntry> GetCandidates(String strTerm)
+		{
+			long[] vGrams = GetGrams(strTerm);
+
+			List<Set<PwEntry>> lPostings = new ArrayList<Set<PwEntry>>(vGrams.length);
+			for(long lGram : vGrams)
+			{
+				Set<PwEntry> s = m_dPostings.get(lGram);
+				if(s == null) return new HashSet<PwEntry>();
+				lPostings.add(s);
+			}
+			Collections.sort(lPostings, new Comparator<Set<PwEntry>>() {
+				public int compare(Set<PwEntry> x, Set<PwEntry> y)
+				{
+					return Integer.compare(x.size(), y.size());
+				}
+			});
+			if((lPostings.get(0).size() * 2) > m_dEntryGrams.size()) return null;
+
+			Set<PwEntry> setCand = new HashSet<PwEntry>(lPostings.get(0));
+			for(int i = 1; (i < lPostings.size()) && !setCand.isEmpty(); ++i)
+				setCand.retainAll(lPostings.get(i));
+
+			return setCand;
+		}
+
+		private void ReindexDirty()
+		{
+			MarkChangedDirty();
+			if(m_setDirty.isEmpty()) return;
+
+			List<PwEntry> l = new ArrayList<PwEntry>(m_setDirty);
+			for(PwEntry pe : l)
+			{
+				Remove(pe);
+				Add(pe);
+			}
+		}
+
+		/// <summary>
+		/// Mark all entries whose strings or tags have changed since they
+		/// were indexed as dirty. This is cheap if nothing has changed
+		/// anywhere since the last call.
+		/// </summary>
+		private void MarkChangedDirty()
+		{
+			// Read the counts first; later changes get higher stamps
+			long lStrings = ProtectedStringDictionary.getGlobalChangeCount();
+			long lTags = PwEntry.getGlobalTagsChangeCount();
+			if((lStrings == m_lStringsCheckedAt) && (lTags == m_lTagsCheckedAt))
+				return;
+
+			for(Map.Entry<PwEntry, IndexedEntry> kvp : m_dEntryGrams.entrySet())
+			{
+				if(!kvp.getValue().IsCurrent(kvp.getKey()))
+					m_setDirty.add(kvp.getKey());
+			}
+
+			m_lStringsCheckedAt = lStrings;
+			m_lTagsCheckedAt = lTags;
+		}
+
+		private void Add(PwEntry pe)
+		{
+			Set<Long> setGrams = new HashSet<Long>();
+			boolean bUnindexed = false;
+
+			// Stamps are read before the data, such that concurrent
+			// changes are detected by the next check
+			ProtectedStringDictionary dStrings = pe.getStrings();
+			long lStringsStamp = dStrings.getChangeStamp();
+			List<String> lTags = pe.getTags();
+			long lTagsStamp = pe.getTagsChangeStamp();
+
+			for(Map.Entry<String, ProtectedString> kvp : dStrings)
+			{
+				if(kvp.getKey().equals(PwDefs.PasswordField)) continue;
+
+				ProtectedString ps = kvp.getValue();
+				if(ps.isProtected()) { bUnindexed = true; continue; }
+
+				AddGrams(ps.ReadString().toLowerCase(), setGrams);
+			}
+			for(String strTag : lTags)
+				AddGrams(strTag.toLowerCase(), setGrams);
+
+			long[] vGrams = new long[setGrams.size()];
+			int i = 0;
+			for(Long lGram : setGrams)
+			{
+				vGrams[i++] = lGram;
+
+				Set<PwEntry> s = m_dPostings.get(lGram);
+				if(s == null)
+				{
+					s = new HashSet<PwEntry>();
+					m_dPostings.put(lGram, s);
+				}
+				s.add(pe);
+			}
+
+			m_dEntryGrams.put(pe, new IndexedEntry(vGrams, dStrings,
+				lStringsStamp, lTags, lTagsStamp));
+			if(bUnindexed) m_setUnindexed.add(pe);
+		}
+
+		private void Remove(PwEntry pe)
+		{
+			m_setDirty.remove(pe);
+
+			IndexedEntry ie = m_dEntryGrams.remove(pe);
+			if(ie == null) return;
+
+			for(long lGram : ie.m_vGrams)
+			{
+				Set<PwEntry> s = m_dPostings.get(lGram);
+				if(s == null) { assert false; continue; }
+
+				s.remove(pe);
+				if(s.isEmpty()) m_dPostings.remove(lGram);
+			}
+			m_setUnindexed.remove(pe);
+		}
+
+		private static long GetGram(String str, int i)
+		{
+			return (((long)str.charAt(i) << 32) | ((long)str.charAt(i + 1) << 16) |
+				(long)str.charAt(i + 2));
+		}
+
+		private static void AddGrams(String str, Set<Long> setGrams)
+		{
+			for(int i = 0; i <= (str.length() - GramLength); ++i)
+				setGrams.add(GetGram(str, i));
+		}
+
+		private static long[] GetGrams(String str)
+		{
+			Set<Long> setGrams = new HashSet<Long>();
+			AddGrams(str, setGrams);
+
+			long[] v = new long[setGrams.size()];
+			int i = 0;
+			for(Long lGram : setGrams) v[i++] = lGram;
+			return v;
+		}
+	}
@@ -0,0 +1,229 @@
+package com.hanhuy.keepassj;
+/*
+  KeePass Password Safe - The Open-Source Password Manager
+  Copyright (C) 2003-2014 Dominik Reichl <dominik.reichl@t-online.de>
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+import java.util.HashMap;
+import java.util.Map;
+
+	/// <summary>
+	/// Index of all groups and entries of a group tree by UUID.
+	/// The index is built on first use and then kept current by
+	/// <c>PwGroup</c> (additions and removals in its object lists) and
+	/// by the <c>setUuid</c> methods of groups and entries.
+	/// If the tree contains duplicate UUIDs, the index is not used and
+	/// lookups fall back to traversing the tree.
+	/// Lookups may build the index, so all methods that access it are
+	/// synchronized; lookups from several threads (like the ones of a
+	/// parallel search) are safe.
+	/// </summary>
+	class PwUuidIndex
+	{
+		private final PwGroup m_pgRoot;
+
+		private final Map<PwUuid, PwGroup> m_dGroups = new HashMap<PwUuid, PwGroup>();
+		private final Map<PwUuid, PwEntry> m_dEntries = new HashMap<PwUuid, PwEntry>();
+
+		private boolean m_bValid = false;
+		private boolean m_bHasDuplicates = false;
+
+		public PwUuidIndex(PwGroup pgRoot)
+		{
+			if(pgRoot == null) throw new IllegalArgumentException("pgRoot");
+
+			m_pgRoot = pgRoot;
+		}
+
+		public PwGroup getRootGroup()
+		{
+			return m_pgRoot;
+		}
+
+		/// <summary>
+		/// Drop the indexed items; the index is rebuilt on the next lookup.
+		/// </summary>
+		public synchronized void Invalidate()
+		{
+			m_bValid = false;
+			m_dGroups.clear();
+			m_dEntries.clear();
+		}
+
+		private boolean EnsureValid()
+		{
+			if(!m_bValid)
+			{
+				m_bHasDuplicates = false;
+				IndexGroupRec(m_pgRoot, true);
+				m_bValid = true;
+			}
+
+			return !m_bHasDuplicates;
+		}
+
+		/// <summary>
+		/// Find a group within <paramref name="pgScope" /> (inclusive).
+		/// </summary>
+		/// <returns><c>false</c>, if the index cannot be used and the
+		/// caller must search the tree.</returns>
+		public synchronized boolean TryFindGroup(PwUuid uuid, PwGroup pgScope, PwGroup[] pgFound)
+		{
+			pgFound[0] = null;
+			if(!EnsureValid()) return false;
+
+			PwGroup pg = m_dGroups.get(uuid);
+			if((pg != null) && ((pgScope == m_pgRoot) || (pg == pgScope) ||
+				pg.IsContainedIn(pgScope)))
+				pgFound[0] = pg;
+
+			return true;
+		}
+
+		/// <summary>
+		/// Find an entry within <paramref name="pgScope" /> (recursively).
+		/// </summary>
+		/// <returns><c>false</c>, if the index cannot be used and the
+		/// caller must search the tree.</returns>
+		public synchronized boolean TryFindEntry(PwUuid uuid, PwGroup pgScope, PwEntry[] peFound)
+		{
+			peFound[0] = null;
+			if(!EnsureValid()) return false;
+
+			PwEntry pe = m_dEntries.get(uuid);
+			if(pe != null)
+			{
+				PwGroup pgParent = pe.getParentGroup();
+				if((pgScope == m_pgRoot) || (pgParent == pgScope) ||
+					((pgParent != null) && pgParent.IsContainedIn(pgScope)))
+					peFound[0] = pe;
+			}
+
+			return true;
+		}
+
+		/// <summary>
+		/// Attach a group and all of its subgroups to this index.
+		/// </summary>
+		public void AttachGroupRec(PwGroup pg)
+		{
+			pg.setUuidIndex(this);
+
+			for(PwGroup pgSub : pg.getGroups())
+				AttachGroupRec(pgSub);
+		}
+
+		private void DetachGroupRec(PwGroup pg)
+		{
+			if(pg.getUuidIndex() == this) pg.setUuidIndex(null);
+
+			for(PwGroup pgSub : pg.getGroups())
+				DetachGroupRec(pgSub);
+		}
+
+		public synchronized void OnGroupAdded(PwGroup pg)
+		{
+			AttachGroupRec(pg);
+
+			if(!m_bValid) return;
+			if(m_bHasDuplicates) { Invalidate(); return; }
+
+			IndexGroupRec(pg, true);
+			if(m_bHasDuplicates) Invalidate();
+		}
+
+		public synchronized void OnEntryAdded(PwEntry pe)
+		{
+			if(!m_bValid) return;
+			if(m_bHasDuplicates) { Invalidate(); return; }
+
+			IndexEntry(pe);
+			if(m_bHasDuplicates) Invalidate();
+		}
+
+		public synchronized void OnGroupRemoved(PwGroup pg)
+		{
+			DetachGroupRec(pg);
+
+			if(!m_bValid) return;
+			if(m_bHasDuplicates) { Invalidate(); return; }
+
+			IndexGroupRec(pg, false);
+		}
+
+		public synchronized void OnEntryRemoved(PwEntry pe)
+		{
+			if(!m_bValid) return;
+			if(m_bHasDuplicates) { Invalidate(); return; }
+
+			if(m_dEntries.get(pe.getUuid()) == pe) m_dEntries.remove(pe.getUuid());
+		}
+
+		public synchronized void OnUuidChanged(PwGroup pg, PwUuid uuidOld)
+		{
+			if(!m_bValid) return;
+			if(m_bHasDuplicates) { Invalidate(); return; }
+
+			if(m_dGroups.get(uuidOld) != pg) return; // Not indexed
+
+			m_dGroups.remove(uuidOld);
+			IndexGroup(pg);
+			if(m_bHasDuplicates) Invalidate();
+		}
+
+		public synchronized void OnUuidChanged(PwEntry pe, PwUuid uuidOld)
+		{
+			if(!m_bValid) return;
+			if(m_bHasDuplicates) { Invalidate(); return; }
+
+			// History items have the same UUID, but are not indexed
+			if(m_dEntries.get(uuidOld) != pe) return;
+
+			m_dEntries.remove(uuidOld);
+			IndexEntry(pe);
+			if(m_bHasDuplicates) Invalidate();
+		}
+
+		private void IndexGroupRec(PwGroup pg, boolean bAdd)
+		{
+			if(bAdd) IndexGroup(pg);
+			else if(m_dGroups.get(pg.getUuid()) == pg) m_dGroups.remove(pg.getUuid());
+
+			for(PwEntry pe : pg.getEntries())
+			{
+				if(bAdd) IndexEntry(pe);
+				else if(m_dEntries.get(pe.getUuid()) == pe) m_dEntries.remove(pe.getUuid());
+			}
+
+			for(PwGroup pgSub : pg.getGroups())
+				IndexGroupRec(pgSub, bAdd);
+		}
+
+		private void IndexGroup(PwGroup pg)
+		{
+			PwGroup pgEx = m_dGroups.get(pg.getUuid());
+			if(pgEx == null) m_dGroups.put(pg.getUuid(), pg);
+			else if(pgEx != pg) m_bHasDuplicates = true;
+		}
+
+		private void IndexEntry(PwEntry pe)
+		{
+			PwEntry peEx = m_dEntries.get(pe.getUuid());
+			if(peEx == null) m_dEntries.put(pe.getUuid(), pe);
+			else if(peEx != pe) m_bHasDuplicates = true;
+		}
+	}
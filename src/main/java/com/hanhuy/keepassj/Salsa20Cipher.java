@@ -27,4 +27,9 @@ public class Salsa20Cipher
 		{
             engine.processBytes(m, 0, nByteCount, m, 0);
 		}
+
+		public void Encrypt(byte[] m, int iOffset, int nByteCount)
+		{
+            engine.processBytes(m, iOffset, nByteCount, m, iOffset);
+		}
 	}
@@ -248,8 +248,26 @@ import java.util.*;
 				s.insert(0, "0");
 			return s.toString();
 		}
+
+		/// <summary>
+		/// Length of a time serialized by <c>SerializeUtc</c>, i.e.
+		/// "yyyy-MM-ddTHH:mm:ssZ".
+		/// </summary>
+		public static final int UtcLength = 20;
+
+		// The fast codec below uses the proleptic Gregorian calendar;
+		// GregorianCalendar switches to the Julian calendar before the
+		// 1582 cutover, thus times before 1583 (and after 9999, which do
+		// not fit into 4 digits) are left to the Calendar code
+		private static final long MsPerDay = 86400000L;
+		private static final long UtcFastMin = -12212553600000L; // 1583-01-01
+		private static final long UtcFastMax = 253402300800000L; // 10000-01-01
+
 		public static String SerializeUtc(Date dt)
 		{
+			char[] v = new char[UtcLength];
+			if(SerializeUtc(dt, v, 0)) return new String(v);
+
 			Calendar c = new GregorianCalendar(UTC, Locale.US);
 			c.setTime(dt);
 			StringBuilder b = new StringBuilder(21);
@@ -268,9 +286,78 @@ import java.util.*;
 			return b.toString();
 		}
 
+		/// <summary>
+		/// Write a time as "yyyy-MM-ddTHH:mm:ssZ" into a buffer, without
+		/// allocating any objects.
+		/// </summary>
+		/// <param name="dt">Time to serialize.</param>
+		/// <param name="v">Buffer receiving <c>UtcLength</c> characters.</param>
+		/// <param name="iOffset">Offset in <paramref name="v" />.</param>
+		/// <returns><c>true</c>, if the time has been written. If the
+		/// year is before 1583 or after 9999, nothing is written and
+		/// <c>SerializeUtc(Date)</c> must be used.</returns>
+		public static boolean SerializeUtc(Date dt, char[] v, int iOffset)
+		{
+			if(dt == null) throw new IllegalArgumentException("dt");
+			if(v == null) throw new IllegalArgumentException("v");
+
+			long lMs = dt.getTime();
+			if((lMs < UtcFastMin) || (lMs >= UtcFastMax)) return false;
+
+			long lDays = lMs / MsPerDay;
+			long lMsOfDay = lMs - (lDays * MsPerDay);
+			if(lMsOfDay < 0) { --lDays; lMsOfDay += MsPerDay; }
+			int nSecOfDay = (int)(lMsOfDay / 1000L);
+
+			// Civil date from days since 1970-01-01, see
+			// http://howardhinnant.github.io/date_algorithms.html
+			long z = lDays + 719468;
+			long era = z / 146097; // z >= 0 within the fast range
+			int doe = (int)(z - (era * 146097));
+			int yoe = (doe - (doe / 1460) + (doe / 36524) - (doe / 146096)) / 365;
+			int doy = doe - ((365 * yoe) + (yoe / 4) - (yoe / 100));
+			int mp = ((5 * doy) + 2) / 153;
+			int nDay = doy - (((153 * mp) + 2) / 5) + 1;
+			int nMonth = ((mp < 10) ? (mp + 3) : (mp - 9));
+			int nYear = (int)(yoe + (era * 400)) + ((nMonth <= 2) ? 1 : 0);
+
+			int i = iOffset;
+			v[i++] = (char)('0' + (nYear / 1000));
+			v[i++] = (char)('0' + ((nYear / 100) % 10));
+			v[i++] = (char)('0' + ((nYear / 10) % 10));
+			v[i++] = (char)('0' + (nYear % 10));
+			v[i++] = '-';
+			i = Write2Digits(v, i, nMonth);
+			v[i++] = '-';
+			i = Write2Digits(v, i, nDay);
+			v[i++] = 'T';
+			i = Write2Digits(v, i, nSecOfDay / 3600);
+			v[i++] = ':';
+			i = Write2Digits(v, i, (nSecOfDay / 60) % 60);
+			v[i++] = ':';
+			i = Write2Digits(v, i, nSecOfDay % 60);
+			v[i] = 'Z';
+			return true;
+		}
+
+		private static int Write2Digits(char[] v, int i, int n)
+		{
+			v[i] = (char)('0' + (n / 10));
+			v[i + 1] = (char)('0' + (n % 10));
+			return (i + 2);
+		}
+
 		public static boolean TryDeserializeUtc(String str, Date[] dt)
 		{
 			if(str == null) throw new IllegalArgumentException("str");
+
+			long lMs = ParseUtc(str);
+			if(lMs != Long.MIN_VALUE)
+			{
+				dt[0] = new Date(lMs);
+				return true;
+			}
+
 			Calendar c = new GregorianCalendar(UTC, Locale.US);
 //			"yyyy-MM-ddTHH:mm:ssZ"
 
@@ -289,6 +376,7 @@ import java.util.*;
 				c.set(Calendar.MINUTE, Integer.parseInt(minute));
 				String second = str.substring(17, 19);
 				c.set(Calendar.SECOND, Integer.parseInt(second));
+				c.set(Calendar.MILLISECOND, 0);
 
                 dt[0] = c.getTime();
                 return true;
@@ -297,6 +385,69 @@ import java.util.*;
             }
 		}
 
+		/// <summary>
+		/// Parse a time in the format "yyyy-MM-ddTHH:mm:ss" (as written
+		/// by <c>SerializeUtc</c>; any suffix is ignored) directly from
+		/// its characters.
+		/// </summary>
+		/// <returns>Milliseconds since 1970-01-01 UTC, or
+		/// <c>Long.MIN_VALUE</c> if the String is not a valid time in
+		/// the years 1583 to 9999. In that case,
+		/// <c>TryDeserializeUtc</c> falls back to the lenient
+		/// Calendar-based parser.</returns>
+		public static long ParseUtc(CharSequence str)
+		{
+			if(str == null) throw new IllegalArgumentException("str");
+			if(str.length() < 19) return Long.MIN_VALUE;
+
+			if((str.charAt(4) != '-') || (str.charAt(7) != '-') ||
+				(str.charAt(10) != 'T') || (str.charAt(13) != ':') ||
+				(str.charAt(16) != ':'))
+				return Long.MIN_VALUE;
+
+			int nYear = Read2Digits(str, 0);
+			int nYearLow = Read2Digits(str, 2);
+			int nMonth = Read2Digits(str, 5);
+			int nDay = Read2Digits(str, 8);
+			int nHour = Read2Digits(str, 11);
+			int nMinute = Read2Digits(str, 14);
+			int nSecond = Read2Digits(str, 17);
+			if((nYear | nYearLow | nMonth | nDay | nHour | nMinute | nSecond) < 0)
+				return Long.MIN_VALUE;
+			nYear = (nYear * 100) + nYearLow;
+
+			if((nYear < 1583) || (nMonth < 1) || (nMonth > 12) ||
+				(nDay < 1) || (nDay > DaysInMonth(nYear, nMonth)) ||
+				(nHour > 23) || (nMinute > 59) || (nSecond > 59))
+				return Long.MIN_VALUE;
+
+			// Days since 1970-01-01 from a civil date, see SerializeUtc
+			int y = ((nMonth <= 2) ? (nYear - 1) : nYear);
+			int era = y / 400; // y >= 0 within the fast range
+			int yoe = y - (era * 400);
+			int doy = ((153 * ((nMonth > 2) ? (nMonth - 3) : (nMonth + 9))) + 2) / 5 + nDay - 1;
+			int doe = (yoe * 365) + (yoe / 4) - (yoe / 100) + doy;
+			long lDays = ((long)era * 146097) + doe - 719468;
+
+			return (lDays * MsPerDay) + (((nHour * 3600L) + (nMinute * 60L) + nSecond) * 1000L);
+		}
+
+		private static int Read2Digits(CharSequence str, int i)
+		{
+			int d1 = str.charAt(i) - '0', d2 = str.charAt(i + 1) - '0';
+			if((d1 < 0) || (d1 > 9) || (d2 < 0) || (d2 > 9)) return -1;
+			return ((d1 * 10) + d2);
+		}
+
+		private static int DaysInMonth(int nYear, int nMonth)
+		{
+			if(nMonth == 2)
+				return ((((nYear % 4) == 0) && (((nYear % 100) != 0) ||
+					((nYear % 400) == 0))) ? 29 : 28);
+			return (((nMonth == 4) || (nMonth == 6) || (nMonth == 9) ||
+				(nMonth == 11)) ? 30 : 31);
+		}
+
 		public static double SerializeUnix(Date dt) {
 			return dt.getTime() / 1000.0d;
 		}
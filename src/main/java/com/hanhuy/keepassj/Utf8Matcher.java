@@ -0,0 +1,125 @@
+package com.hanhuy.keepassj;
+/*
+  KeePass Password Safe - The Open-Source Password Manager
+  Copyright (C) 2003-2014 Dominik Reichl <dominik.reichl@t-online.de>
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+	/// <summary>
+	/// Substring search on UTF-8 encoded text, such that protected strings
+	/// can be searched without decoding them into <c>String</c> objects.
+	/// Case-insensitive searches are supported for ASCII search terms; if
+	/// the text contains other characters, only a match is conclusive.
+	/// Instances are immutable and can be used concurrently.
+	/// </summary>
+	final class Utf8Matcher
+	{
+		private final byte[] m_pbPattern;
+		private final boolean m_bIgnoreCase;
+		private final int[] m_vShift = new int[256];
+
+		private Utf8Matcher(byte[] pbPattern, boolean bIgnoreCase)
+		{
+			m_pbPattern = pbPattern;
+			m_bIgnoreCase = bIgnoreCase;
+
+			int m = pbPattern.length;
+			Arrays.fill(m_vShift, m);
+			for(int k = 0; k < (m - 1); ++k)
+				m_vShift[pbPattern[k] & 0xFF] = m - 1 - k;
+		}
+
+		/// <summary>
+		/// Create a matcher for a search term.
+		/// </summary>
+		/// <param name="strTerm">Search term. If <paramref name="bIgnoreCase" />
+		/// is <c>true</c>, it must be lower-case already.</param>
+		/// <param name="bIgnoreCase">Compare case-insensitively.</param>
+		/// <returns>Matcher, or <c>null</c> if the term cannot be searched
+		/// for at the byte level (empty, non-ASCII in a case-insensitive
+		/// search, case-insensitive in a locale with special lower-case
+		/// mappings, or containing surrogates).</returns>
+		public static Utf8Matcher Create(String strTerm, boolean bIgnoreCase)
+		{
+			if(strTerm == null) throw new IllegalArgumentException("strTerm");
+			if(strTerm.length() == 0) return null;
+			// Must fold like String.toLowerCase, e.g. 'I' to U+0131 in Turkish
+			if(bIgnoreCase && CaseFoldingMatcher.IsSpecialLocale()) return null;
+
+			for(int i = 0; i < strTerm.length(); ++i)
+			{
+				char ch = strTerm.charAt(i);
+				if(bIgnoreCase && ((ch >= 0x80) || ((ch >= 'A') && (ch <= 'Z'))))
+					return null;
+				if(Character.isSurrogate(ch)) return null;
+			}
+
+			ByteBuffer bb = StrUtil.Utf8.encode(strTerm);
+			byte[] pb = new byte[bb.remaining()];
+			bb.get(pb);
+			return new Utf8Matcher(pb, bIgnoreCase);
+		}
+
+		/// <summary>
+		/// Search the UTF-8 encoded text.
+		/// </summary>
+		/// <returns><c>Boolean.TRUE</c> if the term occurs in the text,
+		/// <c>Boolean.FALSE</c> if it does not, and <c>null</c> if this
+		/// cannot be decided without decoding the text (case-insensitive
+		/// search in non-ASCII text).</returns>
+		public Boolean Find(byte[] pbUtf8)
+		{
+			if(pbUtf8 == null) throw new IllegalArgumentException("pbUtf8");
+
+			byte[] pbPat = m_pbPattern;
+			int m = pbPat.length, n = pbUtf8.length;
+
+			int i = 0;
+			while(i <= (n - m))
+			{
+				byte bLast = Fold(pbUtf8[i + m - 1]);
+				if(bLast == pbPat[m - 1])
+				{
+					int j = m - 2;
+					while((j >= 0) && (Fold(pbUtf8[i + j]) == pbPat[j])) --j;
+					if(j < 0) return Boolean.TRUE;
+				}
+
+				i += m_vShift[bLast & 0xFF];
+			}
+
+			// Non-ASCII characters may be lower-cased to ASCII ones
+			// (e.g. the Kelvin sign)
+			if(m_bIgnoreCase)
+			{
+				for(int k = 0; k < n; ++k)
+				{
+					if(pbUtf8[k] < 0) return null;
+				}
+			}
+
+			return Boolean.FALSE;
+		}
+
+		private byte Fold(byte b)
+		{
+			if(m_bIgnoreCase && (b >= 'A') && (b <= 'Z')) return (byte)(b + 32);
+			return b;
+		}
+	}
@@ -105,6 +105,9 @@ import java.util.*;
 				return ""; // Do not return strText (endless loop)
 			}
 
+			String strFast = SprEngine.CompileFast(strText, ctx, uRecursionLevel);
+			if(strFast != null) return strFast;
+
 			String str = strText;
 
 			boolean bExt = ctx.getFlags().contains(SprCompileFlags.or(SprCompileFlags.ExtActive,
@@ -314,6 +317,149 @@ import java.util.*;
 			return str;
 		}
 
+		/// <summary>
+		/// Compile a String in a single pass, if it only contains entry
+		/// field and group placeholders whose values do not need to be
+		/// compiled themselves. The result is the same as the one of
+		/// the full engine.
+		/// </summary>
+		/// <returns>Compiled String or <c>null</c>, if the String must
+		/// be compiled by the full engine.</returns>
+		private static String CompileFast(String strText, SprContext ctx,
+			int uRecursionLevel)
+		{
+			boolean bExt = ctx.getFlags().contains(SprCompileFlags.or(SprCompileFlags.ExtActive,
+				SprCompileFlags.ExtNonActive));
+			if(bExt && (!SprEngine.FilterCompilePre.isEmpty() ||
+				!SprEngine.FilterCompile.isEmpty()))
+				return null;
+
+			String str = strText;
+			if(str.indexOf('{') >= 0)
+			{
+				// Templates are cached only when supplied by the caller;
+				// field values are compiled recursively and not cached
+				SprTemplate t = SprTemplate.Get(str, uRecursionLevel == 0);
+				if(t == null) return null;
+
+				str = SprEngine.FillTemplate(t, ctx, uRecursionLevel);
+				if(str == null) return null;
+			}
+			else if(!IsCompileInvariant(str, ctx)) return null;
+
+			if(ctx.getEncodeAsAutoTypeSequence())
+			{
+				str = StrUtil.NormalizeNewLines(str, false);
+				str = str.replace("\n", "{ENTER}");
+			}
+
+			return str;
+		}
+
+		private static String FillTemplate(SprTemplate t, SprContext ctx,
+			int uRecursionLevel)
+		{
+			// Field values are not compiled here, see IsCompileInvariant
+			if((uRecursionLevel + 1) >= SprEngine.MaxRecursionDepth) return null;
+
+			// Lower-case placeholders that the full engine would replace
+			Set<String> setActive = new HashSet<String>();
+			Map<String, String> dValues = new HashMap<String, String>();
+
+			PwEntry pe = ctx.getEntry();
+			if(pe != null)
+			{
+				if(!ctx.getFlags().contains(SprCompileFlags.EntryStrings)) return null;
+
+				// Same keys and order as in FillEntryStrings
+				List<String> vKeys = pe.getStrings().GetKeys();
+				for(String strStdField : PwDefs.GetStandardFields())
+				{
+					if(!vKeys.contains(strStdField)) vKeys.add(strStdField);
+				}
+
+				for(String strField : vKeys)
+				{
+					if((strField.indexOf('{') >= 0) || (strField.indexOf('}') >= 0))
+						return null;
+
+					String strKey = (PwDefs.IsStandardField(strField) ?
+						("{" + strField + "}") :
+						("{" + PwDefs.AutoTypeStringPrefix + strField + "}"));
+
+					// A previous field with the same name has been replaced already
+					String strPlh = strKey.toLowerCase();
+					if(!setActive.add(strPlh)) continue;
+					if(!t.ContainsPlaceholder(strPlh)) continue;
+
+					String strValue;
+					if(!ctx.getForcePlainTextPasswords() && strKey.equalsIgnoreCase("{" +
+						PwDefs.PasswordField + "}"))
+						strValue = PwDefs.HiddenPassword;
+					else strValue = pe.getStrings().ReadSafe(strField);
+
+					if(!IsCompileInvariant(strValue, ctx)) return null;
+					dValues.put(strPlh, SprEngine.TransformContent(strValue, ctx));
+				}
+
+				if((ctx.getFlags().contains(SprCompileFlags.Group)) &&
+					(pe.getParentGroup() != null))
+				{
+					String[] vGroupPlhs = new String[] { "{GROUP}", "{GROUPPATH}" };
+					for(int i = 0; i < vGroupPlhs.length; ++i)
+					{
+						String strPlh = vGroupPlhs[i].toLowerCase();
+						setActive.add(strPlh);
+						if(!t.ContainsPlaceholder(strPlh)) continue;
+
+						String strValue = ((i == 0) ? pe.getParentGroup().getName() :
+							pe.getParentGroup().GetFullPath());
+
+						if(!IsCompileInvariant(strValue, ctx)) return null;
+						dValues.put(strPlh, SprEngine.TransformContent(strValue, ctx));
+					}
+				}
+			}
+
+			StringBuilder sb = new StringBuilder();
+			for(int i = 0; i < t.getSegmentCount(); ++i)
+			{
+				String strValue = null;
+				String strPlh = t.GetPlaceholder(i);
+				if(strPlh != null) strValue = dValues.get(strPlh);
+
+				sb.append((strValue != null) ? strValue : t.GetSegment(i));
+			}
+			String str = sb.toString();
+
+			// The full engine scans the String again after each replacement,
+			// thus the inserted values must not form new placeholders
+			String strLower = str.toLowerCase();
+			if(strLower.length() != str.length()) return null;
+			if(SprTemplate.HasEnginePlaceholders(strLower, setActive)) return null;
+			if(HasEnvVarPlaceholders(str, ctx)) return null;
+
+			return str;
+		}
+
+		/// <summary>
+		/// Test whether compiling a String (without content transformations)
+		/// would return the String unchanged: all placeholders start with
+		/// a brace and environment variables need two percent signs.
+		/// </summary>
+		private static boolean IsCompileInvariant(String str, SprContext ctx)
+		{
+			return ((str.indexOf('{') < 0) && !HasEnvVarPlaceholders(str, ctx));
+		}
+
+		private static boolean HasEnvVarPlaceholders(String str, SprContext ctx)
+		{
+			if(!ctx.getFlags().contains(SprCompileFlags.EnvVars)) return false;
+
+			int i = str.indexOf('%');
+			return ((i >= 0) && (str.indexOf('%', i + 1) >= 0));
+		}
+
 		private static String FillIfExists(String strData, String strPlaceholder,
 			ProtectedString psParsable, SprContext ctx, int uRecursionLevel)
 		{
@@ -596,7 +742,7 @@ import java.util.*;
 			if((ctx == null) || (ctx.getDatabase() == null)) { assert false; return null; }
 
 			String strRef = strFullRef.substring(StrRefStart.length(),
-                    strFullRef.length() - StrRefStart.length() - StrRefEnd.length());
+                    strFullRef.length() - StrRefEnd.length());
 			if(strRef.length() <= 4) return null;
 			if(strRef.charAt(1) != '@') return null;
 			if(strRef.charAt(3) != ':') return null;
@@ -617,6 +763,14 @@ import java.util.*;
 			else if(chScan[0] == 'O') sp.setSearchInOther(true);
 			else return null;
 
+			SprRefIndex idx = SprRefIndex.Get(ctx.getDatabase());
+			if(idx != null)
+			{
+				boolean[] bDecided = new boolean[1];
+				PwEntry pe = idx.Find(chScan[0], sp.getSearchString(), bDecided);
+				if(bDecided[0]) return pe;
+			}
+
 			PwObjectList<PwEntry> lFound = new PwObjectList<PwEntry>();
 			ctx.getDatabase().getRootGroup().SearchEntries(sp, lFound);
 
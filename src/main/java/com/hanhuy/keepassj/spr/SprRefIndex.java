@@ -0,0 +1,205 @@
+package com.hanhuy.keepassj.spr;
+/*
+  KeePass Password Safe - The Open-Source Password Manager
+  Copyright (C) 2003-2014 Dominik Reichl <dominik.reichl@t-online.de>
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+import com.hanhuy.keepassj.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+	/// <summary>
+	/// Lookup structure for resolving <c>{REF:...}</c> placeholders
+	/// without searching the whole database for each reference.
+	/// Results are identical to the ones of <c>PwGroup.SearchEntries</c>
+	/// (first entry in tree order whose field contains the search text);
+	/// if the index cannot decide, <c>null</c> is returned and the
+	/// caller has to search.
+	/// The index of a database is rebuilt when the structure of its tree
+	/// changes (<c>PwGroup.GetTreeVersion</c>), when its root group is
+	/// replaced, or when the strings of one of its entries have changed.
+	/// </summary>
+	final class SprRefIndex
+	{
+		private static final char[] m_vFields = new char[] {
+			'T', 'U', 'A', 'P', 'N' };
+		private static final String[] m_vFieldNames = new String[] {
+			PwDefs.TitleField, PwDefs.UserNameField, PwDefs.UrlField,
+			PwDefs.PasswordField, PwDefs.NotesField };
+
+		private static final Map<PwDatabase, SprRefIndex> m_dIndices =
+			new WeakHashMap<PwDatabase, SprRefIndex>();
+
+		private final PwGroup m_pgRoot;
+		private final long m_lTreeVersion;
+
+		// All entries in the order of PwGroup.SearchEntries
+		private final List<PwEntry> m_lEntries = new ArrayList<PwEntry>();
+		// String dictionaries of the entries and their change stamps
+		// at the time the index was built
+		private final ProtectedStringDictionary[] m_vDicts;
+		private final long[] m_vDictStamps;
+		// Global dictionary change count at which the stamps were verified
+		private long m_lStringsCheckedAt;
+		// Lower-case field values, indexed like m_vFields and m_lEntries;
+		// null for in-memory protected values (which are not cached)
+		private final String[][] m_vValues;
+		// Lower-case field value -> index of the first entry having it
+		private final List<Map<String, Integer>> m_lExact =
+			new ArrayList<Map<String, Integer>>();
+
+		private SprRefIndex(PwGroup pgRoot, long lTreeVersion, long lStringsChangeCount)
+		{
+			m_pgRoot = pgRoot;
+			m_lTreeVersion = lTreeVersion;
+			m_lStringsCheckedAt = lStringsChangeCount;
+
+			// Same order as the pre-order traversal of the search
+			for(PwEntry pe : pgRoot.GetEntries(true)) m_lEntries.add(pe);
+
+			m_vDicts = new ProtectedStringDictionary[m_lEntries.size()];
+			m_vDictStamps = new long[m_lEntries.size()];
+			for(int i = 0; i < m_lEntries.size(); ++i)
+			{
+				m_vDicts[i] = m_lEntries.get(i).getStrings();
+				m_vDictStamps[i] = m_vDicts[i].getChangeStamp();
+			}
+
+			m_vValues = new String[m_vFields.length][m_lEntries.size()];
+			for(int f = 0; f < m_vFields.length; ++f)
+			{
+				Map<String, Integer> d = new HashMap<String, Integer>();
+				for(int i = 0; i < m_lEntries.size(); ++i)
+				{
+					ProtectedString ps = m_vDicts[i].Get(m_vFieldNames[f]);
+
+					String strValue;
+					if(ps == null) strValue = "";
+					else if(ps.isProtected()) continue;
+					else strValue = ps.ReadString().toLowerCase();
+
+					m_vValues[f][i] = strValue;
+					if(!d.containsKey(strValue)) d.put(strValue, i);
+				}
+				m_lExact.add(d);
+			}
+		}
+
+		/// <summary>
+		/// Get the up-to-date index of a database.
+		/// </summary>
+		public static SprRefIndex Get(PwDatabase pd)
+		{
+			if(pd == null) throw new IllegalArgumentException("pd");
+
+			PwGroup pgRoot = pd.getRootGroup();
+			if(pgRoot == null) return null;
+
+			long lTreeVersion = pgRoot.GetTreeVersion();
+			long lStringsChangeCount = ProtectedStringDictionary.getGlobalChangeCount();
+			synchronized(m_dIndices)
+			{
+				SprRefIndex idx = m_dIndices.get(pd);
+				if((idx != null) && (idx.m_pgRoot == pgRoot) &&
+					(idx.m_lTreeVersion == lTreeVersion) &&
+					idx.AreStringsCurrent(lStringsChangeCount))
+					return idx;
+
+				idx = new SprRefIndex(pgRoot, lTreeVersion, lStringsChangeCount);
+				m_dIndices.put(pd, idx);
+				return idx;
+			}
+		}
+
+		private boolean AreStringsCurrent(long lStringsChangeCount)
+		{
+			// No dictionary anywhere has changed since the last check
+			if(m_lStringsCheckedAt == lStringsChangeCount) return true;
+
+			for(int i = 0; i < m_vDicts.length; ++i)
+			{
+				ProtectedStringDictionary d = m_lEntries.get(i).getStrings();
+				if((d != m_vDicts[i]) || (d.getChangeStamp() != m_vDictStamps[i]))
+					return false;
+			}
+
+			// Changes were in other databases (or in history entries)
+			m_lStringsCheckedAt = lStringsChangeCount;
+			return true;
+		}
+
+		/// <summary>
+		/// Find the entry that a reference would be resolved to.
+		/// </summary>
+		/// <param name="chScan">Field to search in (<c>T</c>, <c>U</c>,
+		/// <c>A</c>, <c>P</c>, <c>N</c> or <c>I</c>).</param>
+		/// <param name="strSearch">Search text of the reference.</param>
+		/// <param name="bDecided">Receives <c>false</c>, if the index cannot
+		/// answer the query and the caller has to search.</param>
+		/// <returns>Found entry or <c>null</c>.</returns>
+		public PwEntry Find(char chScan, String strSearch, boolean[] bDecided)
+		{
+			bDecided[0] = false;
+			if(strSearch == null) { assert false; return null; }
+
+			// Multiple terms are combined by PwGroup.SearchEntries
+			if(StrUtil.SplitSearchTerms(strSearch).size() > 1) return null;
+
+			String strTerm = strSearch.trim();
+			if(strTerm.length() == 0) return null;
+
+			if(chScan == 'I')
+			{
+				// A full UUID can only be contained in a UUID that is equal
+				if(strTerm.length() != (PwUuid.UuidSize * 2)) return null;
+				for(int i = 0; i < strTerm.length(); ++i)
+				{
+					if(Character.digit(strTerm.charAt(i), 16) < 0) return null;
+				}
+
+				bDecided[0] = true;
+				return m_pgRoot.FindEntry(new PwUuid(MemUtil.HexStringToByteArray(
+					strTerm)), true);
+			}
+
+			int f = new String(m_vFields).indexOf(chScan);
+			if(f < 0) return null;
+
+			String strLower = strTerm.toLowerCase();
+			String[] vValues = m_vValues[f];
+
+			// Entries before the first exact match could still contain the term
+			Integer iExact = m_lExact.get(f).get(strLower);
+			int iEnd = ((iExact != null) ? iExact : vValues.length);
+			for(int i = 0; i < iEnd; ++i)
+			{
+				if(vValues[i] == null) return null; // Not cached
+				if(vValues[i].contains(strLower))
+				{
+					bDecided[0] = true;
+					return m_lEntries.get(i);
+				}
+			}
+
+			bDecided[0] = true;
+			return ((iExact != null) ? m_lEntries.get(iExact) : null);
+		}
+	}
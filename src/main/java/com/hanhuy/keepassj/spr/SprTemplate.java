@@ -0,0 +1,224 @@
+package com.hanhuy.keepassj.spr;
+/*
+  KeePass Password Safe - The Open-Source Password Manager
+  Copyright (C) 2003-2014 Dominik Reichl <dominik.reichl@t-online.de>
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+	/// <summary>
+	/// Template String split into literal text and <c>{...}</c>
+	/// placeholders, so that <c>SprEngine</c> can fill entry fields
+	/// in a single pass instead of scanning the String once per field.
+	/// Only templates whose placeholders are entry fields, groups or
+	/// placeholders unknown to the engine (like <c>{TAB}</c>) are
+	/// supported; for all others, <c>Get</c> returns <c>null</c> and
+	/// the full engine has to be used.
+	/// </summary>
+	final class SprTemplate
+	{
+		private static final int MaxCachedTemplates = 256;
+
+		// Lower-case starts of all placeholders that SprEngine handles
+		// itself, apart from entry fields and {GROUP}/{GROUPPATH}
+		private static final String[] m_vEnginePlhs = new String[] {
+			"{c:", "{t-", "{pick", "{url:", "{password_enc", "{docdir",
+			"{db_", "{clearfield", "{dt_", "{ref:", "{base",
+			"{newpassword", "{hmacotp" };
+
+		private static final SprTemplate Unsupported = new SprTemplate(
+			new String[0], new String[0]);
+
+		private static final Map<String, SprTemplate> m_dCache =
+			new LinkedHashMap<String, SprTemplate>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, SprTemplate> e)
+				{
+					return (size() > MaxCachedTemplates);
+				}
+			};
+
+		// Literal text and placeholders, in template order
+		private final String[] m_vSegments;
+		// Lower-case placeholder for each segment; null for literals
+		private final String[] m_vPlhs;
+		private final Set<String> m_setPlhs = new HashSet<String>();
+
+		private SprTemplate(String[] vSegments, String[] vPlhs)
+		{
+			m_vSegments = vSegments;
+			m_vPlhs = vPlhs;
+
+			for(String strPlh : vPlhs)
+			{
+				if(strPlh != null) m_setPlhs.add(strPlh);
+			}
+		}
+
+		/// <summary>
+		/// Get the compiled form of a template.
+		/// </summary>
+		/// <param name="strText">Template String.</param>
+		/// <param name="bCache">Remember the compiled template. Only
+		/// templates supplied by callers should be cached, not field
+		/// values encountered during recursive compilation.</param>
+		/// <returns>Compiled template or <c>null</c>, if the template
+		/// must be compiled by the full engine.</returns>
+		public static SprTemplate Get(String strText, boolean bCache)
+		{
+			if(strText == null) throw new IllegalArgumentException("strText");
+
+			SprTemplate t;
+			if(bCache)
+			{
+				synchronized(m_dCache)
+				{
+					t = m_dCache.get(strText);
+				}
+
+				if(t == null)
+				{
+					t = Tokenize(strText);
+					synchronized(m_dCache)
+					{
+						m_dCache.put(strText, t);
+					}
+				}
+			}
+			else t = Tokenize(strText);
+
+			return ((t != Unsupported) ? t : null);
+		}
+
+		private static SprTemplate Tokenize(String strText)
+		{
+			// Placeholder positions in the engine are determined on the
+			// lower-case String; only work on it if indices are the same
+			String strLower = strText.toLowerCase();
+			if(strLower.length() != strText.length()) return Unsupported;
+			if(HasEnginePlaceholders(strLower, null)) return Unsupported;
+
+			List<String> lSegments = new ArrayList<String>();
+			List<String> lPlhs = new ArrayList<String>();
+
+			int iLiteral = 0;
+			int i = strText.indexOf('{');
+			while(i >= 0)
+			{
+				int iEnd = FindBrace(strText, i + 1);
+				if((iEnd < 0) || (strText.charAt(iEnd) != '}'))
+				{
+					// Unmatched brace, part of the literal text
+					i = ((iEnd < 0) ? -1 : iEnd);
+					continue;
+				}
+
+				if(i > iLiteral)
+				{
+					lSegments.add(strText.substring(iLiteral, i));
+					lPlhs.add(null);
+				}
+
+				lSegments.add(strText.substring(i, iEnd + 1));
+				lPlhs.add(strLower.substring(i, iEnd + 1));
+
+				iLiteral = iEnd + 1;
+				i = strText.indexOf('{', iLiteral);
+			}
+
+			if(iLiteral < strText.length())
+			{
+				lSegments.add(strText.substring(iLiteral));
+				lPlhs.add(null);
+			}
+
+			return new SprTemplate(lSegments.toArray(new String[lSegments.size()]),
+				lPlhs.toArray(new String[lPlhs.size()]));
+		}
+
+		private static int FindBrace(String str, int iStart)
+		{
+			for(int i = iStart; i < str.length(); ++i)
+			{
+				char ch = str.charAt(i);
+				if((ch == '{') || (ch == '}')) return i;
+			}
+
+			return -1;
+		}
+
+		/// <summary>
+		/// Test whether a lower-case String contains a placeholder that
+		/// the engine would replace.
+		/// </summary>
+		/// <param name="strLower">Lower-case String.</param>
+		/// <param name="cActive">Additional lower-case placeholders
+		/// (like entry fields) to look for. May be <c>null</c>.</param>
+		public static boolean HasEnginePlaceholders(String strLower,
+			Collection<String> cActive)
+		{
+			int i = strLower.indexOf('{');
+			while(i >= 0)
+			{
+				for(String strPlh : m_vEnginePlhs)
+				{
+					if(strLower.startsWith(strPlh, i)) return true;
+				}
+
+				int iEnd = FindBrace(strLower, i + 1);
+				if(iEnd < 0) break;
+
+				if((cActive != null) && (strLower.charAt(iEnd) == '}') &&
+					cActive.contains(strLower.substring(i, iEnd + 1)))
+					return true;
+
+				i = strLower.indexOf('{', iEnd);
+			}
+
+			return false;
+		}
+
+		public int getSegmentCount()
+		{
+			return m_vSegments.length;
+		}
+
+		public String GetSegment(int iIndex)
+		{
+			return m_vSegments[iIndex];
+		}
+
+		/// <summary>
+		/// Lower-case placeholder at the specified segment index, or
+		/// <c>null</c>, if the segment is literal text.
+		/// </summary>
+		public String GetPlaceholder(int iIndex)
+		{
+			return m_vPlhs[iIndex];
+		}
+
+		public boolean ContainsPlaceholder(String strLower)
+		{
+			return m_setPlhs.contains(strLower);
+		}
+	}
@@ -46,4 +46,42 @@ public class CompositeKeyTest {
         }
         Assert.assertArrayEquals(COMPOSITE_KEY_DATA, asInt);
     }
+    @Test
+    public void keyTransformersAgree() {
+        byte[] seed = new byte[32];
+        byte[] expected = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            seed[i] = (byte) (i * 7);
+            expected[i] = (byte) i;
+        }
+        byte[] parallel = expected.clone();
+        byte[] jce = expected.clone();
+
+        Assert.assertTrue(AesEngines.SEQUENTIAL_KEY_TRANSFORMER.transformKey(expected, seed, 5001));
+        Assert.assertTrue(AesEngines.PARALLEL_KEY_TRANSFORMER.transformKey(parallel, seed, 5001));
+        Assert.assertArrayEquals(expected, parallel);
+        // Not all JREs allow 256-bit AES keys
+        if (AesEngines.JCE_KEY_TRANSFORMER.transformKey(jce, seed, 5001))
+            Assert.assertArrayEquals(expected, jce);
+    }
+
+    @Test
+    public void interruptedKeyTransformationStops() {
+        AesEngines.KeyTransformer[] transformers = {
+                AesEngines.PARALLEL_KEY_TRANSFORMER, AesEngines.JCE_KEY_TRANSFORMER };
+        for (AesEngines.KeyTransformer xf : transformers) {
+            byte[] key = new byte[32];
+            long start = System.currentTimeMillis();
+            Thread.currentThread().interrupt();
+            try {
+                // Unsupported JCE ciphers fail before the rounds start
+                if (xf.transformKey(key, new byte[32], 1L << 40)) Assert.fail();
+            } catch (RuntimeException e) {
+                Assert.assertTrue(e.getCause() instanceof InterruptedException);
+            } finally {
+                Assert.assertTrue(Thread.interrupted());
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        }
+    }
 }
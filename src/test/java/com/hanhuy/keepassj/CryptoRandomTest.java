@@ -0,0 +1,88 @@
+package com.hanhuy.keepassj;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author pfnguyen
+ */
+public class CryptoRandomTest {
+    @Test
+    public void threadLocalDrbg() throws Exception {
+        final CryptoRandom cr = CryptoRandom.getInstance();
+        boolean old = cr.getUseThreadLocalDrbg();
+        cr.setUseThreadLocalDrbg(true);
+        try {
+            long count = cr.getGeneratedBytesCount();
+            for (int n : new int[] { 1, 31, 32, 33, 100, 1000 }) {
+                Assert.assertEquals(n, cr.GetRandomBytes(n).length);
+            }
+            Assert.assertTrue(cr.getGeneratedBytesCount() >= count + 1197);
+
+            // Blocks must be distinct across threads, requests and reseeds
+            final Set<String> seen = Collections.synchronizedSet(new HashSet<String>());
+            final int perThread = (CryptoRandom.DrbgReseedInterval / 16) * 2;
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < perThread; i++)
+                            seen.add(MemUtil.ByteArrayToHexString(cr.GetRandomBytes(16)));
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) t.join();
+            Assert.assertEquals(threads.length * perThread, seen.size());
+        } finally {
+            cr.setUseThreadLocalDrbg(old);
+        }
+    }
+
+    @Test
+    public void streamXorIntoAndFillMatchRandomBytes() {
+        byte[] key = "stream key".getBytes();
+        CryptoRandomStream a = new CryptoRandomStream(CrsAlgorithm.Salsa20, key);
+        CryptoRandomStream b = new CryptoRandomStream(CrsAlgorithm.Salsa20, key);
+
+        byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) i;
+        for (int len : new int[] { 1, 7, 64, 28 }) {
+            byte[] expected = a.GetRandomBytes(len);
+            for (int i = 0; i < len; i++) expected[i] ^= data[3 + i];
+
+            byte[] actual = data.clone();
+            b.XorInto(actual, 3, len);
+            Assert.assertArrayEquals(expected, Arrays.copyOfRange(actual, 3, 3 + len));
+        }
+
+        ByteBuffer heap = ByteBuffer.allocate(50);
+        heap.position(10);
+        b.Fill(heap);
+        Assert.assertEquals(50, heap.position());
+        Assert.assertArrayEquals(a.GetRandomBytes(40), Arrays.copyOfRange(heap.array(), 10, 50));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(5000);
+        b.Fill(direct);
+        direct.flip();
+        byte[] pbDirect = new byte[5000];
+        direct.get(pbDirect);
+        Assert.assertArrayEquals(a.GetRandomBytes(5000), pbDirect);
+
+        // Read-only buffers are rejected without consuming the stream
+        try {
+            b.Fill(ByteBuffer.allocateDirect(16).asReadOnlyBuffer());
+            Assert.fail();
+        } catch (ReadOnlyBufferException e) {
+            // Expected
+        }
+        Assert.assertArrayEquals(a.GetRandomBytes(8), b.GetRandomBytes(8));
+    }
+}
@@ -0,0 +1,56 @@
+package com.hanhuy.keepassj;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * @author pfnguyen
+ */
+public class DigestsTest {
+    @Test
+    public void matchesPlatformDigests() throws Exception {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) i;
+
+        byte[] expected256 = MessageDigest.getInstance("SHA-256").digest(data);
+        Assert.assertArrayEquals(expected256, Digests.sha256(data));
+        Assert.assertArrayEquals(expected256, Digests.sha256(
+                Arrays.copyOfRange(data, 0, 10), Arrays.copyOfRange(data, 10, 1000)));
+        Assert.assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(
+                Arrays.copyOfRange(data, 100, 300)), Digests.sha256(data, 100, 200));
+
+        Assert.assertArrayEquals(MessageDigest.getInstance("SHA-512").digest(data),
+                Digests.sha512(data));
+    }
+
+    @Test
+    public void providerInstancesAreIndependent() throws Exception {
+        byte[] data = "keepassj".getBytes("UTF-8");
+
+        // A digest that is being updated must not be affected by the
+        // static methods on the same thread
+        MessageDigest md = Digests.getInstance().sha256();
+        md.update(data, 0, 4);
+        Digests.sha256(data);
+        md.update(data, 4, 4);
+        Assert.assertArrayEquals(Digests.sha256(data), md.digest());
+    }
+
+    @Test
+    public void noLookupPerHash() {
+        Digests.sha256(new byte[1]);
+        Digests.getInstance().sha256();
+
+        long lookups = Digests.getLookupCount();
+        long hashes = Digests.getHashCount();
+        for (int i = 0; i < 100; i++) {
+            Digests.sha256(new byte[i]);
+            Digests.getInstance().sha256().digest();
+        }
+        Assert.assertEquals(lookups, Digests.getLookupCount());
+        Assert.assertEquals(hashes + 100, Digests.getHashCount());
+    }
+}
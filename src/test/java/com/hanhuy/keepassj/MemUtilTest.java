@@ -0,0 +1,41 @@
+package com.hanhuy.keepassj;
+
+import com.google.common.io.BaseEncoding;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @author pfnguyen
+ */
+public class MemUtilTest {
+    @Test
+    public void decodeBase64MatchesGuava() {
+        Random r = new Random(7);
+        for (int n = 0; n < 300; n++) {
+            byte[] data = new byte[n];
+            r.nextBytes(data);
+            String encoded = BaseEncoding.base64().encode(data);
+            char[] v = ("xx" + encoded + "yy").toCharArray();
+            Assert.assertArrayEquals(data, MemUtil.DecodeBase64(v, 2, encoded.length()));
+
+            String unpadded = BaseEncoding.base64().omitPadding().encode(data);
+            Assert.assertArrayEquals(data,
+                    MemUtil.DecodeBase64(unpadded.toCharArray(), 0, unpadded.length()));
+        }
+    }
+
+    @Test
+    public void decodeBase64RejectsInvalidInput() {
+        String[] invalid = { "Q", "QUJ=D", "QQ=", "Q===", "QU J", "QUJé" };
+        for (String s : invalid) {
+            try {
+                MemUtil.DecodeBase64(s.toCharArray(), 0, s.length());
+                Assert.fail(s);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+}
@@ -27,6 +27,17 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class PwGroupTest {
 
     static PwGroup mPG;
@@ -44,6 +55,536 @@ public class PwGroupTest {
         Assert.assertTrue("Name was " + mPG.getName(), mPG.getName().equals("General"));
     }
 
+    @Test
+    public void testUuidIndexMatchesTreeSearch() throws Exception {
+        PwGroup pgRoot = TestData.GetTest1().getRootGroup();
+        PwObjectList<PwGroup> groups = pgRoot.GetGroups(true);
+        PwObjectList<PwEntry> entries = pgRoot.GetEntries(true);
+
+        pgRoot.SetUuidIndexEnabled(true);
+        try {
+            for (PwGroup pg : groups) {
+                Assert.assertSame(pg, pgRoot.FindGroup(pg.getUuid(), true));
+                Assert.assertSame(pg, pgRoot.FindObject(pg.getUuid(), true, null));
+            }
+            for (PwEntry pe : entries)
+                Assert.assertSame(pe, pgRoot.FindEntry(pe.getUuid(), true));
+            Assert.assertNull(pgRoot.FindEntry(new PwUuid(true), true));
+            Assert.assertNull(pgRoot.FindGroup(new PwUuid(true), true));
+        } finally {
+            pgRoot.SetUuidIndexEnabled(false);
+        }
+    }
+
+    @Test
+    public void testUuidIndexConcurrentLookups() throws Exception {
+        final PwGroup pgRoot = createSearchTree(20, 500);
+        final List<PwEntry> lEntries = pgRoot.GetEntries(true).CloneShallowToList();
+        final AtomicInteger nMissing = new AtomicInteger();
+
+        for (int r = 0; r < 10; r++) {
+            // Each new index is built by the first lookups
+            pgRoot.SetUuidIndexEnabled(true);
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Thread> lThreads = new ArrayList<Thread>();
+            for (int t = 0; t < 8; t++) {
+                Thread th = new Thread() {
+                    @Override
+                    public void run() {
+                        try { start.await(); } catch (InterruptedException e) { return; }
+                        for (PwEntry pe : lEntries) {
+                            if (pgRoot.FindEntry(pe.getUuid(), true) != pe)
+                                nMissing.incrementAndGet();
+                        }
+                    }
+                };
+                th.start();
+                lThreads.add(th);
+            }
+            start.countDown();
+            for (Thread th : lThreads) th.join();
+            pgRoot.SetUuidIndexEnabled(false);
+        }
+
+        Assert.assertEquals(0, nMissing.get());
+    }
+
+    @Test
+    public void testUuidIndexMaintenance() {
+        PwGroup pgRoot = new PwGroup(true, true);
+        PwGroup pgA = new PwGroup(true, true);
+        PwGroup pgB = new PwGroup(true, true);
+        pgRoot.AddGroup(pgA, true);
+        pgRoot.AddGroup(pgB, true);
+        pgRoot.SetUuidIndexEnabled(true);
+
+        PwEntry pe = new PwEntry(true, true);
+        pgA.AddEntry(pe, true);
+        Assert.assertSame(pe, pgRoot.FindEntry(pe.getUuid(), true));
+        Assert.assertNull(pgB.FindEntry(pe.getUuid(), true));
+
+        // Move the entry to another group
+        pgA.getEntries().Remove(pe);
+        pgB.AddEntry(pe, true);
+        Assert.assertSame(pe, pgB.FindEntry(pe.getUuid(), true));
+        Assert.assertNull(pgA.FindEntry(pe.getUuid(), true));
+
+        // Change the UUID
+        PwUuid uuidOld = pe.getUuid();
+        pe.setUuid(new PwUuid(true));
+        Assert.assertNull(pgRoot.FindEntry(uuidOld, true));
+        Assert.assertSame(pe, pgRoot.FindEntry(pe.getUuid(), true));
+
+        // Subtrees added later are indexed as well
+        PwGroup pgC = new PwGroup(true, true);
+        PwEntry peC = new PwEntry(true, true);
+        pgC.AddEntry(peC, true);
+        pgB.AddGroup(pgC, true);
+        Assert.assertSame(pgC, pgRoot.FindGroup(pgC.getUuid(), true));
+        Assert.assertSame(peC, pgRoot.FindEntry(peC.getUuid(), true));
+
+        pgB.getGroups().Remove(pgC);
+        Assert.assertNull(pgRoot.FindGroup(pgC.getUuid(), true));
+        Assert.assertNull(pgRoot.FindEntry(peC.getUuid(), true));
+
+        // Duplicate UUIDs: fall back to searching the tree
+        PwEntry peDup = pe.CloneDeep();
+        pgA.AddEntry(peDup, true);
+        Assert.assertSame(peDup, pgA.FindEntry(pe.getUuid(), true));
+        Assert.assertSame(pe, pgB.FindEntry(pe.getUuid(), true));
+
+        pgA.getEntries().Clear();
+        Assert.assertSame(pe, pgRoot.FindEntry(pe.getUuid(), true));
+        Assert.assertNull(pgA.FindEntry(pe.getUuid(), true));
+    }
+
+    static PwGroup createSearchTree(int nGroups, int nEntriesPerGroup) {
+        PwGroup pgRoot = new PwGroup(true, true);
+        PwGroup pgParent = pgRoot;
+        for (int g = 0; g < nGroups; g++) {
+            PwGroup pg = new PwGroup(true, true, "Group " + g, PwIcon.Folder);
+            // Nest every other group, such that the tree has some depth
+            ((g % 2) == 0 ? pgRoot : pgParent).AddGroup(pg, true);
+            pgParent = pg;
+            for (int e = 0; e < nEntriesPerGroup; e++) {
+                PwEntry pe = new PwEntry(true, true);
+                pe.getStrings().Set(PwDefs.TitleField, new ProtectedString(false, "Title " + g + "-" + e));
+                pe.getStrings().Set(PwDefs.UserNameField, new ProtectedString(false, "user" + (e % 7)));
+                pe.getStrings().Set(PwDefs.PasswordField, new ProtectedString(true, "pw" + (e % 3)));
+                pe.getStrings().Set(PwDefs.NotesField, new ProtectedString(false, "Note " + (g * e)));
+                pg.AddEntry(pe, true);
+            }
+        }
+        return pgRoot;
+    }
+
+    @Test
+    public void testTreeIterators() throws Exception {
+        PwGroup pgTree = createSearchTree(9, 3);
+        // Empty groups at various levels
+        pgTree.getGroups().GetAt(0).AddGroup(new PwGroup(true, true), true);
+        pgTree.AddGroup(new PwGroup(true, true), true);
+
+        for (PwGroup pg : new PwGroup[] { pgTree, pgTree.getGroups().GetAt(1),
+                TestData.GetTest1().getRootGroup(), new PwGroup(true, true) }) {
+            List<PwEntry> lEntries = new ArrayList<PwEntry>();
+            for (PwEntry pe : pg.IterateEntries(true)) lEntries.add(pe);
+            Assert.assertEquals(pg.GetEntries(true).CloneShallowToList(), lEntries);
+
+            List<PwGroup> lGroups = new ArrayList<PwGroup>();
+            for (PwGroup pgSub : pg.IterateGroups(true)) lGroups.add(pgSub);
+            Assert.assertEquals(pg.GetFlatGroupList(), lGroups);
+
+            Assert.assertSame(pg.getEntries(), pg.IterateEntries(false));
+            Assert.assertSame(pg.getGroups(), pg.IterateGroups(false));
+        }
+    }
+
+    private static void assertCounts(PwGroup pg) {
+        int[] uGroups = new int[1], uEntries = new int[1];
+        pg.GetCounts(true, uGroups, uEntries);
+        Assert.assertEquals(pg.GetGroups(true).getUCount(), uGroups[0]);
+        Assert.assertEquals(pg.GetEntries(true).getUCount(), uEntries[0]);
+        Assert.assertEquals(uEntries[0], pg.GetEntriesCount(true));
+    }
+
+    @Test
+    public void testCachedCounts() {
+        PwGroup pgRoot = createSearchTree(6, 4);
+        PwGroup pgA = pgRoot.getGroups().GetAt(1);
+        PwGroup pgDeep = pgA.getGroups().GetAt(0);
+        assertCounts(pgRoot);
+        assertCounts(pgA);
+
+        pgDeep.AddEntry(new PwEntry(true, true), true);
+        assertCounts(pgRoot);
+        pgDeep.AddGroup(new PwGroup(true, true), true);
+        assertCounts(pgRoot);
+
+        // Move a subtree
+        pgA.getGroups().Remove(pgDeep);
+        pgRoot.getGroups().GetAt(0).AddGroup(pgDeep, true);
+        assertCounts(pgRoot);
+        assertCounts(pgA);
+        pgDeep.getEntries().Clear();
+        assertCounts(pgRoot);
+
+        // Clones and groups that are not owned
+        PwGroup pgClone = pgRoot.CloneDeep();
+        assertCounts(pgClone);
+        pgClone.getGroups().GetAt(0).getGroups().GetAt(0).AddEntry(new PwEntry(true, true), true);
+        assertCounts(pgClone);
+        assertCounts(pgRoot);
+
+        PwGroup pgView = new PwGroup(true, true);
+        pgView.AddGroup(pgA, false);
+        assertCounts(pgView);
+        pgA.AddEntry(new PwEntry(true, true), true);
+        assertCounts(pgView);
+        assertCounts(pgRoot);
+    }
+
+    @Test
+    public void testParallelSearchMatchesSequential() {
+        PwGroup pgRoot = createSearchTree(40, 50);
+        ForkJoinPool fjp = new ForkJoinPool(4);
+        try {
+            for (String strSearch : new String[] { "", "user3", "NOTE 1", "Title 1 -user2", "xyz" }) {
+                SearchParameters sp = new SearchParameters();
+                sp.setSearchString(strSearch);
+
+                PwObjectList<PwEntry> lSeq = new PwObjectList<PwEntry>();
+                pgRoot.SearchEntries(sp, lSeq);
+                PwObjectList<PwEntry> lPar = new PwObjectList<PwEntry>();
+                pgRoot.SearchEntries(sp, lPar, null, fjp);
+
+                Assert.assertEquals(strSearch, lSeq.CloneShallowToList(), lPar.CloneShallowToList());
+            }
+        } finally {
+            fjp.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelSearchCancel() {
+        PwGroup pgRoot = createSearchTree(10, 100);
+        SearchParameters sp = new SearchParameters();
+        sp.setSearchString("nothing");
+        sp.setDataTransformationFn(new StrPwEntryDelegate() {
+            public String delegate(String str, PwEntry pe) {
+                try { Thread.sleep(1); } catch (InterruptedException e) { }
+                return str + "!";
+            }
+        });
+
+        final int[] nCalls = new int[1];
+        IStatusLogger sl = new NullStatusLogger() {
+            @Override
+            public boolean SetProgress(int uPercent) {
+                ++nCalls[0];
+                return false;
+            }
+        };
+
+        ForkJoinPool fjp = new ForkJoinPool(2);
+        try {
+            PwObjectList<PwEntry> l = new PwObjectList<PwEntry>();
+            long lStart = System.currentTimeMillis();
+            pgRoot.SearchEntries(sp, l, sl, fjp);
+            Assert.assertEquals(1, nCalls[0]);
+            Assert.assertEquals(0, l.getUCount());
+            Assert.assertTrue(System.currentTimeMillis() - lStart < 2000);
+        } finally {
+            fjp.shutdown();
+        }
+    }
+
+    private static List<PwEntry> search(PwGroup pg, String strSearch) {
+        SearchParameters sp = new SearchParameters();
+        sp.setSearchString(strSearch);
+        PwObjectList<PwEntry> l = new PwObjectList<PwEntry>();
+        pg.SearchEntries(sp, l);
+        return l.CloneShallowToList();
+    }
+
+    @Test
+    public void testNegatedTerms() {
+        PwGroup pgRoot = createSearchTree(20, 30);
+
+        // Expected: entries matching "title" and "3-", but neither
+        // "user2" nor "user4"
+        List<PwEntry> lExpected = new ArrayList<PwEntry>(search(pgRoot, "title"));
+        lExpected.retainAll(search(pgRoot, "3-"));
+        lExpected.removeAll(search(pgRoot, "user2"));
+        lExpected.removeAll(search(pgRoot, "user4"));
+        Assert.assertFalse(lExpected.isEmpty());
+
+        Assert.assertEquals(lExpected, search(pgRoot, "title -user2 3- -user4"));
+        Assert.assertEquals(lExpected, search(pgRoot, "-user4 -user2 title 3-"));
+
+        // Only negated terms: everything except the matches
+        List<PwEntry> lAll = pgRoot.GetEntries(true).CloneShallowToList();
+        lAll.removeAll(search(pgRoot, "user2"));
+        lAll.removeAll(search(pgRoot, "user3"));
+        Assert.assertEquals(lAll, search(pgRoot, "-user2 -user3"));
+    }
+
+    @Test
+    public void testSearchIndexMatchesFullSearch() {
+        PwGroup pgRoot = createSearchTree(20, 30);
+        PwGroup pgSub = pgRoot.getGroups().GetAt(3);
+        PwEntry peSecret = pgSub.getEntries().GetAt(0);
+        peSecret.getStrings().Set("Secret", new ProtectedString(true, "hidden needle"));
+
+        String[] vSearch = { "user3", "NOTE 1", "Title 1 -user2", "itl", "xyz", "needle", "pw1", "e 1" };
+        List<List<PwEntry>> lExpected = new ArrayList<List<PwEntry>>();
+        for (String strSearch : vSearch) lExpected.add(search(pgRoot, strSearch));
+
+        pgRoot.SetSearchIndexEnabled(true);
+        try {
+            for (int i = 0; i < vSearch.length; i++)
+                Assert.assertEquals(vSearch[i], lExpected.get(i), search(pgRoot, vSearch[i]));
+            Assert.assertEquals(1, search(pgSub, "needle").size());
+
+            // Modified entries are reindexed when touched
+            PwEntry pe = pgSub.getEntries().GetAt(1);
+            pe.getStrings().Set(PwDefs.UrlField, new ProtectedString(false, "https://Example.org"));
+            pe.Touch(true);
+            Assert.assertEquals(Collections.singletonList(pe), search(pgRoot, "example"));
+
+            // Added and removed entries
+            PwEntry peNew = new PwEntry(true, true);
+            peNew.getStrings().Set(PwDefs.TitleField, new ProtectedString(false, "Example 2"));
+            pgRoot.AddEntry(peNew, true);
+            Assert.assertEquals(Arrays.asList(peNew, pe), search(pgRoot, "example"));
+            Assert.assertEquals(Collections.singletonList(pe), search(pgSub, "example"));
+
+            pgSub.getEntries().Remove(pe);
+            Assert.assertEquals(Collections.singletonList(peNew), search(pgRoot, "example"));
+        } finally {
+            pgRoot.SetSearchIndexEnabled(false);
+        }
+    }
+
+    private static List<PwEntry> searchUnindexed(PwGroup pg, String strSearch) {
+        SearchParameters sp = new SearchParameters();
+        sp.setSearchString(strSearch);
+        EntrySearcher es = new EntrySearcher(sp);
+        List<PwEntry> l = new ArrayList<PwEntry>();
+        for (PwEntry pe : pg.IterateEntries(true)) {
+            if (es.Matches(pe)) l.add(pe);
+        }
+        return l;
+    }
+
+    @Test
+    public void testSearchIndexSeesChangesWithoutTouch() {
+        PwGroup pgRoot = createSearchTree(20, 30);
+        PwObjectList<PwEntry> lEntries = pgRoot.GetEntries(true);
+        PwEntry pe1 = lEntries.GetAt(10), pe2 = lEntries.GetAt(200), pe3 = lEntries.GetAt(400);
+        String[] vSearch = { "zebra", "yak", "walrus", "narwhal", "quokka" };
+
+        pgRoot.SetSearchIndexEnabled(true);
+        try {
+            for (String strSearch : vSearch)
+                Assert.assertEquals(strSearch, 0, search(pgRoot, strSearch).size());
+
+            pe1.getStrings().Set(PwDefs.TitleField, new ProtectedString(false, "Zebra crossing"));
+
+            PwEntry peTemplate = pe2.CloneDeep();
+            peTemplate.getStrings().Set(PwDefs.NotesField, new ProtectedString(false, "yak herd"));
+            pe2.AssignProperties(peTemplate, false, true, true);
+
+            pe3.AddTag("Walrus");
+            for (String strSearch : vSearch)
+                Assert.assertEquals(strSearch, searchUnindexed(pgRoot, strSearch), search(pgRoot, strSearch));
+            Assert.assertEquals(Collections.singletonList(pe1), search(pgRoot, "zebra"));
+            Assert.assertEquals(Collections.singletonList(pe2), search(pgRoot, "yak"));
+            Assert.assertEquals(Collections.singletonList(pe3), search(pgRoot, "walrus"));
+
+            pe3.setTags(new ArrayList<String>(Arrays.asList("Narwhal")));
+            ProtectedStringDictionary d = pe1.getStrings().CloneDeep();
+            d.Set(PwDefs.UserNameField, new ProtectedString(false, "quokka"));
+            pe1.setStrings(d);
+            for (String strSearch : vSearch)
+                Assert.assertEquals(strSearch, searchUnindexed(pgRoot, strSearch), search(pgRoot, strSearch));
+            Assert.assertEquals(Collections.singletonList(pe3), search(pgRoot, "narwhal"));
+            Assert.assertEquals(Collections.singletonList(pe1), search(pgRoot, "quokka"));
+        } finally {
+            pgRoot.SetSearchIndexEnabled(false);
+        }
+    }
+
+    @Test
+    public void testSearchIndexProgress() {
+        PwGroup pgRoot = createSearchTree(20, 100);
+        SearchParameters sp = new SearchParameters();
+        sp.setSearchString("user3");
+        PwObjectList<PwEntry> lExpected = new PwObjectList<PwEntry>();
+        pgRoot.SearchEntries(sp, lExpected);
+        Assert.assertTrue(lExpected.getUCount() > EntrySearcher.ParallelThreshold);
+
+        pgRoot.SetSearchIndexEnabled(true);
+        try {
+            // Progress is reported over the candidates only
+            final List<Integer> lProgress = new ArrayList<Integer>();
+            IStatusLogger sl = new NullStatusLogger() {
+                @Override
+                public boolean SetProgress(int uPercent) {
+                    lProgress.add(uPercent);
+                    return true;
+                }
+            };
+            PwObjectList<PwEntry> l = new PwObjectList<PwEntry>();
+            pgRoot.SearchEntries(sp, l, sl);
+            Assert.assertEquals(lExpected.CloneShallowToList(), l.CloneShallowToList());
+            Assert.assertTrue(lProgress.size() >= lExpected.getUCount());
+            Assert.assertTrue(lProgress.size() < pgRoot.GetEntriesCount(true));
+            Assert.assertTrue(lProgress.get(lProgress.size() - 1) >= 90);
+            Assert.assertTrue(Collections.max(lProgress) <= 100);
+
+            // Canceling stops the search
+            final int[] nCalls = new int[1];
+            sl = new NullStatusLogger() {
+                @Override
+                public boolean SetProgress(int uPercent) {
+                    ++nCalls[0];
+                    return false;
+                }
+            };
+            l = new PwObjectList<PwEntry>();
+            pgRoot.SearchEntries(sp, l, sl);
+            Assert.assertEquals(1, nCalls[0]);
+            Assert.assertEquals(0, l.getUCount());
+
+            // Candidates are evaluated on the pool
+            final AtomicInteger nThreads = new AtomicInteger();
+            ForkJoinPool fjp = new ForkJoinPool(2, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    nThreads.incrementAndGet();
+                    return ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                }
+            }, null, false);
+            try {
+                l = new PwObjectList<PwEntry>();
+                pgRoot.SearchEntries(sp, l, null, fjp);
+                Assert.assertEquals(lExpected.CloneShallowToList(), l.CloneShallowToList());
+                Assert.assertTrue(nThreads.get() > 0);
+            } finally {
+                fjp.shutdown();
+            }
+        } finally {
+            pgRoot.SetSearchIndexEnabled(false);
+        }
+    }
+
+    @Test
+    public void testCaseFoldingMatcher() {
+        String[] vText = { "", "abc", "ABCABD", "User 3", "Stra\u00dfe", "\u0130stanbul",
+            "\u039f\u0394\u039f\u03a3", "\ud801\udc00\ud801\udc28x", "\u00c4rger" };
+        String[] vTerm = { "a", "abd", "CAB", "er 3", "STRASSE", "stra\u00dfe", "i\u0307s",
+            "\u03c3", "\u03c2", "\ud801\udc28", "\u00e4r", "x" };
+        for (String strTerm : vTerm) {
+            CaseFoldingMatcher cfm = new CaseFoldingMatcher(strTerm);
+            for (String str : vText)
+                Assert.assertEquals(strTerm + " in " + str,
+                    str.toLowerCase().contains(strTerm.toLowerCase()), cfm.Find(str));
+        }
+
+        Random r = new Random(42);
+        String strAlphabet = "aAbB\u00e4\u00c4\u0101\u0100 ";
+        for (int i = 0; i < 2000; i++) {
+            String str = randomString(r, strAlphabet, r.nextInt(12));
+            String strTerm = randomString(r, strAlphabet, 1 + r.nextInt(3));
+            Assert.assertEquals(strTerm + " in " + str,
+                str.toLowerCase().contains(strTerm.toLowerCase()),
+                new CaseFoldingMatcher(strTerm).Find(str));
+        }
+    }
+
+    private static String randomString(Random r, String strAlphabet, int nLength) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < nLength; i++)
+            sb.append(strAlphabet.charAt(r.nextInt(strAlphabet.length())));
+        return sb.toString();
+    }
+
+    @Test
+    public void testProtectedFieldSearch() {
+        String[] vValues = { "Alpha Beta", "ALPHA", "gamma \u00c4rger", "\u212aelvin",
+            "\u00e4rger", "\u0130z", "\ud801\udc00" };
+        PwGroup pgPlain = new PwGroup(true, true);
+        PwGroup pgProt = new PwGroup(true, true);
+        for (String strValue : vValues) {
+            PwEntry pe = new PwEntry(true, true);
+            pe.getStrings().Set("Custom", new ProtectedString(false, strValue));
+            pgPlain.AddEntry(pe, true);
+            pe = new PwEntry(true, true);
+            pe.getStrings().Set("Custom", new ProtectedString(true, strValue.getBytes(StrUtil.Utf8)));
+            pgProt.AddEntry(pe, true);
+        }
+
+        for (String strSearch : new String[] { "alpha", "ALPHA b", "kel", "\u00e4r",
+                "\u00c4R", "i\u0307", "\ud801\udc28", "e", "zz" }) {
+            for (boolean bCase : new boolean[] { false, true }) {
+                SearchParameters sp = new SearchParameters();
+                sp.setSearchString(strSearch);
+                if (bCase) sp.setComparisonMode(StringComparison.Ordinal);
+                PwObjectList<PwEntry> lPlain = new PwObjectList<PwEntry>();
+                pgPlain.SearchEntries(sp, lPlain);
+                PwObjectList<PwEntry> lProt = new PwObjectList<PwEntry>();
+                pgProt.SearchEntries(sp, lProt);
+
+                Assert.assertEquals(strSearch, lPlain.getUCount(), lProt.getUCount());
+                for (int i = 0; i < lPlain.getUCount(); i++)
+                    Assert.assertArrayEquals(lPlain.GetAt(i).getStrings().Get("Custom").ReadUtf8(),
+                        lProt.GetAt(i).getStrings().Get("Custom").ReadUtf8());
+            }
+        }
+
+        // Searching does not unprotect the strings
+        for (PwEntry pe : pgProt.getEntries())
+            Assert.assertNull(pe.getStrings().Get("Custom").ReadStringIfPlainText());
+    }
+
+    @Test
+    public void testProtectedFieldSearchSpecialLocale() {
+        Locale lcDefault = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            PwGroup pg = new PwGroup(true, true);
+            for (boolean bProtect : new boolean[] { false, true }) {
+                PwEntry pe = new PwEntry(true, true);
+                pe.getStrings().Set("Custom", new ProtectedString(bProtect, "ISTANBUL".getBytes(StrUtil.Utf8)));
+                pg.AddEntry(pe, true);
+            }
+
+            // 'I' is lower-cased to U+0131 in Turkish
+            for (String strSearch : new String[] { "is", "\u0131s", "STAN" }) {
+                SearchParameters sp = new SearchParameters();
+                sp.setSearchString(strSearch);
+                PwObjectList<PwEntry> l = new PwObjectList<PwEntry>();
+                pg.SearchEntries(sp, l);
+                int nExpected = ("ISTANBUL".toLowerCase().contains(strSearch.toLowerCase()) ? 2 : 0);
+                Assert.assertEquals(strSearch, nExpected, l.getUCount());
+            }
+        } finally {
+            Locale.setDefault(lcDefault);
+        }
+    }
+
+    @Test
+    public void testRegexFindsSubstring() {
+        PwGroup pgRoot = createSearchTree(2, 10);
+        SearchParameters sp = new SearchParameters();
+        sp.setRegularExpression(true);
+        sp.setSearchString("SER[3]");
+        PwObjectList<PwEntry> l = new PwObjectList<PwEntry>();
+        pgRoot.SearchEntries(sp, l);
+        Assert.assertEquals(search(pgRoot, "user3"), l.CloneShallowToList());
+        Assert.assertEquals(2, l.getUCount());
+    }
+
     final static Function<PwGroup,String> groupToName = new Function<PwGroup,String>() {
         @Override
         public String apply(PwGroup input) {
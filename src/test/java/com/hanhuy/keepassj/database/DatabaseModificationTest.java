@@ -5,8 +5,15 @@ import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author pfnguyen
@@ -42,6 +49,35 @@ public class DatabaseModificationTest {
         f.delete();
     }
 
+    @Test
+    public void saveAndReloadSharedBinaries() throws Exception {
+        PwDatabase db = TestData.GetDb1();
+        byte[] data = "attachment data".getBytes("UTF-8");
+        PwEntry e1 = new PwEntry(true, true);
+        PwEntry e2 = new PwEntry(true, true);
+        e1.getBinaries().Set("a.txt", new ProtectedBinary(true, data));
+        e2.getBinaries().Set("b.txt", new ProtectedBinary(true, data));
+        e2.getBinaries().Set("c.txt", new ProtectedBinary(false, data));
+        db.getRootGroup().AddEntry(e1, true);
+        db.getRootGroup().AddEntry(e2, true);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        new KdbxFile(db).Save(bout, null, KdbxFormat.Default, null);
+        PwDatabase db2 = TestData.GetDb(new ByteArrayInputStream(bout.toByteArray()),
+                TestData.TEST1_PASSWORD, TestData.TEST1_KEYFILE);
+
+        ProtectedBinary pb1 = db2.getRootGroup().FindEntry(e1.getUuid(), true)
+                .getBinaries().Get("a.txt");
+        ProtectedBinary pb2 = db2.getRootGroup().FindEntry(e2.getUuid(), true)
+                .getBinaries().Get("b.txt");
+        ProtectedBinary pb3 = db2.getRootGroup().FindEntry(e2.getUuid(), true)
+                .getBinaries().Get("c.txt");
+        Assert.assertArrayEquals(data, pb1.ReadData());
+        Assert.assertSame("equal binaries should share a pool item", pb1, pb2);
+        Assert.assertNotSame("protection differs", pb1, pb3);
+        Assert.assertArrayEquals(data, pb3.ReadData());
+    }
+
     @Test
     public void changeMasterKey() throws Exception {
 
@@ -91,4 +127,190 @@ public class DatabaseModificationTest {
         f2.delete();
         f3.delete();
     }
+
+    private static PwDatabase createDuplicatesDb(long lSeed) {
+        Random r = new Random(lSeed);
+        PwGroup pgRoot = new PwGroup(true, true);
+        PwGroup pgBin = new PwGroup(true, true);
+        pgRoot.AddGroup(pgBin, true);
+        List<PwGroup> lGroups = new ArrayList<PwGroup>();
+        lGroups.add(pgRoot);
+        lGroups.add(pgBin);
+        for (int i = 0; i < 4; i++) {
+            PwGroup pg = new PwGroup(true, true);
+            lGroups.get(r.nextInt(lGroups.size())).AddGroup(pg, true);
+            lGroups.add(pg);
+        }
+
+        for (int i = 0; i < 300; i++) {
+            byte[] pbUuid = new byte[16];
+            r.nextBytes(pbUuid);
+            PwEntry pe = new PwEntry(false, false);
+            pe.setUuid(new PwUuid(pbUuid));
+            pe.getStrings().Set(PwDefs.TitleField, new ProtectedString(false, "t" + r.nextInt(3)));
+            pe.getStrings().Set(PwDefs.PasswordField, new ProtectedString(true,
+                    ("p" + r.nextInt(2)).getBytes(StrUtil.Utf8)));
+            if (r.nextBoolean())
+                pe.getStrings().Set(PwDefs.UserNameField, new ProtectedString(false, ""));
+            if (r.nextInt(4) == 0)
+                pe.getStrings().Set("Custom", new ProtectedString(r.nextBoolean(), "c"));
+            if (r.nextInt(4) == 0)
+                pe.getBinaries().Set("a.bin", new ProtectedBinary(false, new byte[] { (byte) r.nextInt(2) }));
+            pe.setLastModificationTime(new Date(1000000L * r.nextInt(3)));
+            lGroups.get(r.nextInt(lGroups.size())).AddEntry(pe, true);
+        }
+
+        PwDatabase db = new PwDatabase();
+        db.setRootGroup(pgRoot);
+        db.setRecycleBinEnabled(true);
+        db.setRecycleBinUuid(pgBin.getUuid());
+        return db;
+    }
+
+    private static boolean refEntriesEqual(PwEntry a, PwEntry b) {
+        for (String strKey : new String[] { PwDefs.TitleField, PwDefs.UserNameField,
+                PwDefs.PasswordField, PwDefs.UrlField, PwDefs.NotesField }) {
+            if (!a.getStrings().ReadSafe(strKey).equals(b.getStrings().ReadSafe(strKey)))
+                return false;
+        }
+        if (a.getStrings().Exists("Custom") != b.getStrings().Exists("Custom")) return false;
+        ProtectedBinary pbA = a.getBinaries().Get("a.bin"), pbB = b.getBinaries().Get("a.bin");
+        if ((pbA == null) || (pbB == null)) return pbA == pbB;
+        return java.util.Arrays.equals(pbA.ReadData(), pbB.ReadData());
+    }
+
+    // Pairwise comparison of all entries, as originally implemented
+    private static void refDeleteDuplicates(PwDatabase db) {
+        PwGroup pgBin = db.getRootGroup().FindGroup(db.getRecycleBinUuid(), true);
+        List<PwEntry> l = db.getRootGroup().GetEntries(true).CloneShallowToList();
+        for (int i = 0; i < l.size() - 1; i++) {
+            PwEntry peA = l.get(i);
+            for (int j = i + 1; j < l.size(); j++) {
+                PwEntry peB = l.get(j);
+                if (!refEntriesEqual(peA, peB)) continue;
+
+                boolean bDeleteA = peA.getLastModificationTime().compareTo(
+                        peB.getLastModificationTime()) <= 0;
+                boolean bAInBin = peA.IsContainedIn(pgBin), bBInBin = peB.IsContainedIn(pgBin);
+                if (bAInBin && !bBInBin) bDeleteA = true;
+                else if (bBInBin && !bAInBin) bDeleteA = false;
+
+                PwEntry peDel = bDeleteA ? peA : peB;
+                peDel.getParentGroup().getEntries().Remove(peDel);
+                db.getDeletedObjects().Add(new PwDeletedObject(peDel.getUuid(), new Date()));
+                l.remove(peDel);
+                if (bDeleteA) --i;
+                break;
+            }
+        }
+    }
+
+    private static List<PwUuid> deletedUuids(PwDatabase db) {
+        List<PwUuid> l = new ArrayList<PwUuid>();
+        for (PwDeletedObject pdo : db.getDeletedObjects()) l.add(pdo.getUuid());
+        return l;
+    }
+
+    @Test
+    public void deleteDuplicateEntriesMatchesPairwise() {
+        for (long lSeed = 0; lSeed < 5; lSeed++) {
+            PwDatabase db = createDuplicatesDb(lSeed);
+            PwDatabase dbRef = createDuplicatesDb(lSeed);
+            refDeleteDuplicates(dbRef);
+
+            int uDeleted = db.DeleteDuplicateEntries(null);
+            Assert.assertTrue(uDeleted > 0);
+            Assert.assertEquals(deletedUuids(dbRef), deletedUuids(db));
+            Assert.assertEquals(dbRef.getRootGroup().GetEntries(true).getUCount(),
+                    db.getRootGroup().GetEntries(true).getUCount());
+        }
+    }
+
+    // Two databases with the same groups and entries; the source has
+    // moved, modified and new objects
+    private static PwDatabase createMergeDb(boolean bSource) {
+        Random r = new Random(11);
+        PwGroup pgRoot = new PwGroup(false, true);
+        pgRoot.setUuid(new PwUuid(randomUuid(r)));
+        List<PwGroup> lGroups = new ArrayList<PwGroup>();
+        for (int g = 0; g < 20; g++) {
+            PwGroup pg = new PwGroup(false, true);
+            pg.setUuid(new PwUuid(randomUuid(r)));
+            pg.setLocationChanged(new Date(1000));
+            ((g < 4) ? pgRoot : lGroups.get(g % 4)).AddGroup(pg, true);
+            lGroups.add(pg);
+            for (int e = 0; e < 10; e++) {
+                PwEntry pe = new PwEntry(false, true);
+                pe.setUuid(new PwUuid(randomUuid(r)));
+                pe.getStrings().Set(PwDefs.TitleField, new ProtectedString(false, g + "-" + e));
+                pe.setLastModificationTime(new Date(5000));
+                pe.setLocationChanged(new Date(1000));
+                pg.AddEntry(pe, true);
+            }
+        }
+        PwDatabase db = new PwDatabase();
+        db.setRootGroup(pgRoot);
+        if (!bSource) return db;
+
+        PwEntry peMod = lGroups.get(5).getEntries().GetAt(3);
+        peMod.getStrings().Set(PwDefs.NotesField, new ProtectedString(false, "modified"));
+        peMod.setLastModificationTime(new Date(9000));
+
+        PwEntry peMove = lGroups.get(6).getEntries().GetAt(0);
+        lGroups.get(6).getEntries().Remove(peMove);
+        lGroups.get(7).AddEntry(peMove, true);
+        peMove.setLocationChanged(new Date(9000));
+
+        PwEntry peNew = new PwEntry(false, true);
+        peNew.setUuid(new PwUuid(randomUuid(r)));
+        peNew.getStrings().Set(PwDefs.TitleField, new ProtectedString(false, "new"));
+        lGroups.get(8).getEntries().Insert(2, peNew);
+        peNew.setParentGroup(lGroups.get(8));
+
+        PwGroup pgNew = new PwGroup(false, true);
+        pgNew.setUuid(new PwUuid(randomUuid(r)));
+        lGroups.get(9).AddGroup(pgNew, true);
+        return db;
+    }
+
+    private static byte[] randomUuid(Random r) {
+        byte[] pb = new byte[16];
+        r.nextBytes(pb);
+        return pb;
+    }
+
+    private static void dumpTree(PwGroup pg, StringBuilder sb) {
+        sb.append(pg.getUuid().ToHexString()).append('{');
+        for (PwEntry pe : pg.getEntries())
+            sb.append(pe.getUuid().ToHexString()).append(':')
+                    .append(pe.getStrings().ReadSafe(PwDefs.NotesField)).append(',');
+        for (PwGroup pgSub : pg.getGroups()) dumpTree(pgSub, sb);
+        sb.append('}');
+    }
+
+    @Test
+    public void mergeInSynchronize() {
+        PwDatabase dbSrc = createMergeDb(true);
+        StringBuilder sbSrc = new StringBuilder();
+        dumpTree(dbSrc.getRootGroup(), sbSrc);
+
+        PwDatabase db = createMergeDb(false);
+        db.MergeIn(createMergeDb(true), PwMergeMethod.Synchronize);
+        StringBuilder sb = new StringBuilder();
+        dumpTree(db.getRootGroup(), sb);
+        // The source is newer in every respect
+        Assert.assertEquals(sbSrc.toString(), sb.toString());
+        Assert.assertFalse(db.getUseUuidIndex());
+
+        ForkJoinPool fjp = new ForkJoinPool(2);
+        try {
+            PwDatabase dbPar = createMergeDb(false);
+            dbPar.MergeIn(createMergeDb(true), PwMergeMethod.Synchronize, null, fjp);
+            StringBuilder sbPar = new StringBuilder();
+            dumpTree(dbPar.getRootGroup(), sbPar);
+            Assert.assertEquals(sb.toString(), sbPar.toString());
+        } finally {
+            fjp.shutdown();
+        }
+    }
 }
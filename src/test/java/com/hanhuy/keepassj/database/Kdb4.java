@@ -27,6 +27,7 @@ import org.junit.Test;
 import java.awt.*;
 import java.io.*;
 import java.security.Security;
+import java.util.Date;
 
 public class Kdb4 {
     @Test
@@ -112,4 +113,143 @@ public class Kdb4 {
         is.close();
 	}
 	
+    @Test
+    public void testPipelinedLoad() throws IOException {
+        byte[] serial = loadAsPlainXml("test.kdbx", false);
+        byte[] pipelined = loadAsPlainXml("test.kdbx", true);
+        Assert.assertArrayEquals(serial, pipelined);
+
+        Assert.assertArrayEquals(loadAsPlainXml("no-encrypt.kdbx", false),
+                loadAsPlainXml("no-encrypt.kdbx", true));
+    }
+
+    @Test
+    public void testPipelinedLoadCorrupted() throws IOException {
+        InputStream is = Kdb4.class.getClassLoader().getResourceAsStream("test.kdbx");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = is.read(buf)) != -1) bos.write(buf, 0, n);
+        is.close();
+
+        byte[] data = bos.toByteArray();
+        data[data.length - 100] ^= 1;
+
+        PwDatabase db = new PwDatabase();
+        CompositeKey key = new CompositeKey();
+        key.AddUserKey(new KcpPassword("12345"));
+        db.setMasterKey(key);
+        KdbxFile kdbx = new KdbxFile(db);
+        kdbx.setPipelinedLoad(true);
+        try {
+            kdbx.Load(new ByteArrayInputStream(data), KdbxFormat.Default, null);
+            Assert.fail("corrupted file loaded");
+        } catch (KdbxFileFormatException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testPipelinedSave() throws IOException {
+        InputStream is = Kdb4.class.getClassLoader().getResourceAsStream("test.kdbx");
+        PwDatabase db = new PwDatabase();
+        CompositeKey key = new CompositeKey();
+        key.AddUserKey(new KcpPassword("12345"));
+        db.setMasterKey(key);
+        new KdbxFile(db).Load(is, KdbxFormat.Default, null);
+        is.close();
+
+        ByteArrayOutputStream bosXml = new ByteArrayOutputStream();
+        new KdbxFile(db).Save(bosXml, db.getRootGroup(), KdbxFormat.PlainXml, null);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        KdbxFile kdbx = new KdbxFile(db);
+        kdbx.setPipelinedSave(true);
+        kdbx.Save(bos, db.getRootGroup(), KdbxFormat.Default, null);
+
+        PwDatabase db2 = new PwDatabase();
+        db2.setMasterKey(key);
+        new KdbxFile(db2).Load(new ByteArrayInputStream(bos.toByteArray()),
+                KdbxFormat.Default, null);
+
+        ByteArrayOutputStream bosXml2 = new ByteArrayOutputStream();
+        new KdbxFile(db2).Save(bosXml2, db2.getRootGroup(), KdbxFormat.PlainXml, null);
+        Assert.assertArrayEquals(bosXml.toByteArray(), bosXml2.toByteArray());
+    }
+
+    @Test
+    public void testDeferredBinaries() throws IOException {
+        InputStream is = Kdb4.class.getClassLoader().getResourceAsStream("test.kdbx");
+        PwDatabase db = new PwDatabase();
+        CompositeKey key = new CompositeKey();
+        key.AddUserKey(new KcpPassword("12345"));
+        db.setMasterKey(key);
+        new KdbxFile(db).Load(is, KdbxFormat.Default, null);
+        is.close();
+
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; ++i) data[i] = (byte) (i % 7);
+        PwEntry pe = db.getRootGroup().GetEntries(true).GetAt(0);
+        pe.getBinaries().Set("a.bin", new ProtectedBinary(false, data));
+        pe.getBinaries().Set("b.bin", new ProtectedBinary(true, data));
+        pe.getBinaries().Set("empty.bin", new ProtectedBinary(false, new byte[0]));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new KdbxFile(db).Save(bos, db.getRootGroup(), KdbxFormat.Default, null);
+
+        PwDatabase db2 = new PwDatabase();
+        db2.setMasterKey(key);
+        KdbxFile kdbx = new KdbxFile(db2);
+        kdbx.setDeferBinaries(true);
+        kdbx.Load(new ByteArrayInputStream(bos.toByteArray()), KdbxFormat.Default, null);
+
+        PwEntry pe2 = db2.getRootGroup().FindEntry(pe.getUuid(), true);
+        ProtectedBinary pbA = pe2.getBinaries().Get("a.bin");
+        Assert.assertTrue(pbA.isDeferred());
+        Assert.assertFalse(pbA.isProtected());
+        // Protected binaries are not compressed in the file
+        Assert.assertFalse(pe2.getBinaries().Get("b.bin").isDeferred());
+        Assert.assertEquals(data.length, pbA.getLength());
+        Assert.assertFalse(pbA.isDeferred());
+        Assert.assertArrayEquals(data, pbA.ReadData());
+        Assert.assertArrayEquals(data, pe2.getBinaries().Get("b.bin").ReadData());
+        Assert.assertEquals(0, pe2.getBinaries().Get("empty.bin").getLength());
+        Assert.assertTrue(pe.getBinaries().EqualsDictionary(pe2.getBinaries()));
+
+        ByteArrayOutputStream bosXml = new ByteArrayOutputStream();
+        new KdbxFile(db).Save(bosXml, db.getRootGroup(), KdbxFormat.PlainXml, null);
+        ByteArrayOutputStream bosXml2 = new ByteArrayOutputStream();
+        new KdbxFile(db2).Save(bosXml2, db2.getRootGroup(), KdbxFormat.PlainXml, null);
+        Assert.assertArrayEquals(bosXml.toByteArray(), bosXml2.toByteArray());
+    }
+
+    @Test
+    public void testDeferredBinaryCorrupted() {
+        ProtectedBinary pb = ProtectedBinary.Deferred(new byte[] { 1, 2, 3, 4 });
+        try {
+            pb.getLength();
+            Assert.fail();
+        } catch (KdbxFileFormatException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    private static byte[] loadAsPlainXml(String file, boolean pipelined) throws IOException {
+        InputStream is = Kdb4.class.getClassLoader().getResourceAsStream(file);
+
+        PwDatabase db = new PwDatabase();
+        CompositeKey key = new CompositeKey();
+        key.AddUserKey(new KcpPassword("12345"));
+        db.setMasterKey(key);
+        // Not stored in all files; the default is the current time
+        db.setMasterKeyChanged(new Date(0));
+        KdbxFile kdbx = new KdbxFile(db);
+        kdbx.setPipelinedLoad(pipelined);
+        kdbx.Load(is, KdbxFormat.Default, null);
+        is.close();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new KdbxFile(db).Save(bos, db.getRootGroup(), KdbxFormat.PlainXml, null);
+        return bos.toByteArray();
+    }
 }
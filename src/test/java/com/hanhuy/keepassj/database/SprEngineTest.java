@@ -20,12 +20,18 @@
 package com.hanhuy.keepassj.database;
 
 import com.google.common.io.BaseEncoding;
+import com.hanhuy.keepassj.EventHandler;
 import com.hanhuy.keepassj.PwDatabase;
+import com.hanhuy.keepassj.PwDefs;
 import com.hanhuy.keepassj.PwEntry;
+import com.hanhuy.keepassj.PwGroup;
+import com.hanhuy.keepassj.ProtectedString;
+import com.hanhuy.keepassj.ProtectedStringDictionary;
 import com.hanhuy.keepassj.PwUuid;
 import com.hanhuy.keepassj.spr.SprCompileFlags;
 import com.hanhuy.keepassj.spr.SprContext;
 import com.hanhuy.keepassj.spr.SprEngine;
+import com.hanhuy.keepassj.spr.SprEventArgs;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -62,6 +68,153 @@ public class SprEngineTest {
 
 	}
 	
+	@Test
+	public void testFindRefTargetIndexed() {
+		PwDatabase pd = new PwDatabase();
+		pd.setRootGroup(new PwGroup(true, true));
+		PwGroup pgSub = new PwGroup(true, true);
+		pd.getRootGroup().AddGroup(pgSub, true);
+
+		PwEntry peA = newEntry(pgSub, "Foo Bar");
+		PwEntry peB = newEntry(pd.getRootGroup(), "foo");
+		PwEntry peC = newEntry(pgSub, "Other");
+		char[] chScan = new char[1], chWanted = new char[1];
+		SprContext ctx = new SprContext(null, pd, SprCompileFlags.All.flags, false, false);
+
+		// Root entries come first; substring matches are found, too
+		assertSame(peB, SprEngine.FindRefTarget("{REF:U@T:FOO}", ctx, chScan, chWanted));
+		assertSame(peA, SprEngine.FindRefTarget("{REF:U@T:bar}", ctx, chScan, chWanted));
+		assertSame(peC, SprEngine.FindRefTarget("{REF:U@T:other}", ctx, chScan, chWanted));
+		assertNull(SprEngine.FindRefTarget("{REF:U@T:none}", ctx, chScan, chWanted));
+		assertSame(peC, SprEngine.FindRefTarget("{REF:U@I:" +
+			peC.getUuid().ToHexString().toLowerCase() + "}", ctx, chScan, chWanted));
+		assertEquals('U', chWanted[0]);
+		assertEquals('I', chScan[0]);
+
+		peB.getStrings().Set(PwDefs.TitleField, new ProtectedString(false, "Changed"));
+		peB.Touch(true, false);
+		assertSame(peA, SprEngine.FindRefTarget("{REF:U@T:FOO}", ctx, chScan, chWanted));
+	}
+
+	@Test
+	public void testFindRefTargetIndexStaysCurrent() {
+		PwDatabase pd = new PwDatabase();
+		pd.setRootGroup(new PwGroup(true, true));
+		PwGroup pgA = new PwGroup(true, true);
+		PwGroup pgB = new PwGroup(true, true);
+		pd.getRootGroup().AddGroup(pgA, true);
+		pd.getRootGroup().AddGroup(pgB, true);
+
+		PwEntry peA = newEntry(pgA, "alpha");
+		char[] chScan = new char[1], chWanted = new char[1];
+		SprContext ctx = new SprContext(null, pd, SprCompileFlags.All.flags, false, false);
+		assertSame(peA, SprEngine.FindRefTarget("{REF:U@T:alpha}", ctx, chScan, chWanted));
+		assertNull(SprEngine.FindRefTarget("{REF:U@T:beta}", ctx, chScan, chWanted));
+
+		// Added without touching
+		PwEntry peB = new PwEntry(true, true);
+		peB.getStrings().Set(PwDefs.TitleField, new ProtectedString(false, "beta"));
+		pgB.AddEntry(peB, true);
+		assertSame(peB, SprEngine.FindRefTarget("{REF:U@T:beta}", ctx, chScan, chWanted));
+
+		// Strings edited without touching
+		peB.getStrings().Set(PwDefs.TitleField, new ProtectedString(false, "gamma"));
+		assertNull(SprEngine.FindRefTarget("{REF:U@T:beta}", ctx, chScan, chWanted));
+		assertSame(peB, SprEngine.FindRefTarget("{REF:U@T:gamma}", ctx, chScan, chWanted));
+		ProtectedStringDictionary d = new ProtectedStringDictionary();
+		d.Set(PwDefs.TitleField, new ProtectedString(false, "delta"));
+		peB.setStrings(d);
+		assertSame(peB, SprEngine.FindRefTarget("{REF:U@T:delta}", ctx, chScan, chWanted));
+
+		// Moved in front of another match, and reordered
+		PwEntry peA2 = newEntry(pgB, "alpha");
+		assertSame(peA, SprEngine.FindRefTarget("{REF:U@T:alpha}", ctx, chScan, chWanted));
+		pgB.getEntries().Remove(peA2);
+		pgA.getEntries().Insert(0, peA2);
+		peA2.setParentGroup(pgA);
+		assertSame(peA2, SprEngine.FindRefTarget("{REF:U@T:alpha}", ctx, chScan, chWanted));
+		pgA.getEntries().MoveOne(peA, true);
+		assertSame(peA, SprEngine.FindRefTarget("{REF:U@T:alpha}", ctx, chScan, chWanted));
+
+		// Removed
+		pgA.getEntries().Remove(peA);
+		assertSame(peA2, SprEngine.FindRefTarget("{REF:U@T:alpha}", ctx, chScan, chWanted));
+		pgA.getEntries().Remove(peA2);
+		assertNull(SprEngine.FindRefTarget("{REF:U@T:alpha}", ctx, chScan, chWanted));
+
+		// Changes in another database keep the results intact
+		PwDatabase pdOther = new PwDatabase();
+		pdOther.setRootGroup(new PwGroup(true, true));
+		newEntry(pdOther.getRootGroup(), "delta");
+		assertSame(peB, SprEngine.FindRefTarget("{REF:U@T:delta}", ctx, chScan, chWanted));
+	}
+
+	@Test
+	public void testCompiledTemplates() {
+		PwDatabase pd = new PwDatabase();
+		pd.setRootGroup(new PwGroup(true, true));
+		pd.getRootGroup().setName("Root");
+		PwGroup pgSub = new PwGroup(true, true);
+		pgSub.setName("Sub (1)");
+		pd.getRootGroup().AddGroup(pgSub, true);
+
+		String[] vValues = new String[] { "bob", "a+b^(c)~[d]", "50%", "p%w%d",
+			"{NOTES}", "{S:Custom}x", "line\nbreak", "\u0130", "q\"uote", "" };
+		String[] vTemplates = new String[] { "{USERNAME}{TAB}{PASSWORD}{ENTER}",
+			"{Title} - {url} {s:custom}", "{GROUP}/{GROUPPATH}", "{{}USERNAME{}}",
+			"{USERNAME", "x{S:missing}y{DELAY 5}", "%a%{USERNAME}", "{USERNAME}%",
+			"{C:note}{USERNAME}", "{{USERNAME}}", "{NOTES}{PASSWORD_ENC}" };
+
+		// Registered filters make the engine skip compiled templates
+		EventHandler<SprEventArgs> hNoOp = new EventHandler<SprEventArgs>() {
+			public void delegate(Object sender, SprEventArgs e) { }
+		};
+
+		for(String strValue : vValues) {
+			PwEntry pe = new PwEntry(true, true);
+			pe.getStrings().Set(PwDefs.TitleField, new ProtectedString(false, "T+" + strValue));
+			pe.getStrings().Set(PwDefs.UserNameField, new ProtectedString(false, strValue));
+			pe.getStrings().Set(PwDefs.PasswordField, new ProtectedString(true, strValue));
+			pe.getStrings().Set(PwDefs.UrlField, new ProtectedString(false, "https://" + strValue));
+			pe.getStrings().Set(PwDefs.NotesField, new ProtectedString(false, "n\n"));
+			pe.getStrings().Set("Custom", new ProtectedString(false, "c+d"));
+			pgSub.AddEntry(pe, true);
+
+			for(String strTemplate : vTemplates) {
+				for(int i = 0; i < 4; ++i) {
+					SprContext ctx = new SprContext(pe, pd, SprCompileFlags.All.flags,
+						(i & 1) != 0, (i & 2) != 0);
+					ctx.setForcePlainTextPasswords(i != 3);
+
+					String strFast = SprEngine.Compile(strTemplate, ctx);
+					SprEngine.FilterCompilePre.add(hNoOp);
+					try {
+						assertEquals(strTemplate + " / " + strValue,
+							SprEngine.Compile(strTemplate, ctx), strFast);
+					}
+					finally {
+						SprEngine.FilterCompilePre.remove(hNoOp);
+					}
+				}
+			}
+		}
+
+		PwEntry pe = pgSub.GetEntries(false).GetAt(0);
+		SprContext ctx = new SprContext(pe, pd, SprCompileFlags.All.flags, true, false);
+		assertEquals("bob{TAB}bob{ENTER}", SprEngine.Compile(
+			"{USERNAME}{TAB}{PASSWORD}{ENTER}", ctx));
+		assertEquals("Sub {(}1{)}/Sub {(}1{)}", SprEngine.Compile(
+			"{GROUP}/{GROUPPATH}", ctx));
+	}
+
+	private static PwEntry newEntry(PwGroup pg, String strTitle) {
+		PwEntry pe = new PwEntry(true, true);
+		pe.getStrings().Set(PwDefs.TitleField, new ProtectedString(false, strTitle));
+		pe.getStrings().Set(PwDefs.UserNameField, new ProtectedString(false, "user"));
+		pg.AddEntry(pe, true);
+		return pe;
+	}
+
 	private PwUuid decodeUUID(String encoded) {
 		if (encoded == null || encoded.length() == 0 ) {
 			return PwUuid.Zero;
@@ -6,6 +6,9 @@ import org.junit.Test;
 
 import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.Random;
 import java.util.TimeZone;
 
 /**
@@ -62,4 +65,63 @@ public class TimeUtilTest {
         Assert.assertEquals(19, c.get(Calendar.MINUTE));
         Assert.assertEquals(19, c.get(Calendar.SECOND));
     }
+
+    @Test
+    public void fuzzAgainstCalendar() {
+        Random r = new Random(42);
+        long min = -12212553600000L; // 1583-01-01
+        long max = 253402300800000L; // 10000-01-01
+        Date[] res = new Date[1];
+        char[] buf = new char[TimeUtil.UtcLength + 2];
+        for (int i = 0; i < 100000; ++i) {
+            long ms = min + (long) (r.nextDouble() * (max - min));
+            Date d = new Date(ms);
+            String expected = calendarSerialize(d);
+            Assert.assertEquals(expected, TimeUtil.SerializeUtc(d));
+            Assert.assertTrue(TimeUtil.SerializeUtc(d, buf, 1));
+            Assert.assertEquals(expected, new String(buf, 1, TimeUtil.UtcLength));
+
+            Assert.assertTrue(TimeUtil.TryDeserializeUtc(expected, res));
+            Assert.assertEquals(calendarDeserialize(expected).getTime(), res[0].getTime());
+            Assert.assertEquals(ms - (((ms % 1000) + 1000) % 1000), res[0].getTime());
+        }
+
+        // Lenient and out-of-range values go through the Calendar code
+        String[] vOther = { "0001-01-01T00:00:00Z", "1582-10-04T12:00:00Z",
+                "2016-02-30T00:00:00Z", "2015-13-01T00:00:00Z",
+                "2015-01-01T24:00:00Z", "2015-01-01 10:00:00Z" };
+        for (String str : vOther) {
+            Assert.assertTrue(str, TimeUtil.TryDeserializeUtc(str, res));
+            Assert.assertEquals(str, calendarDeserialize(str).getTime(), res[0].getTime());
+        }
+        Assert.assertFalse(TimeUtil.TryDeserializeUtc("2015-01-0", res));
+        Assert.assertFalse(TimeUtil.TryDeserializeUtc("2015-01-0xT00:00:00Z", res));
+
+        Date d = calendarDeserialize("1000-06-15T10:20:30Z");
+        Assert.assertEquals(calendarSerialize(d), TimeUtil.SerializeUtc(d));
+        Assert.assertFalse(TimeUtil.SerializeUtc(d, buf, 0));
+    }
+
+    private static String calendarSerialize(Date d) {
+        Calendar c = new GregorianCalendar(TimeUtil.UTC, Locale.US);
+        c.setTime(d);
+        return TimeUtil.pad0s(c.get(Calendar.YEAR), 4) + "-" +
+                TimeUtil.pad0s(c.get(Calendar.MONTH) + 1, 2) + "-" +
+                TimeUtil.pad0s(c.get(Calendar.DAY_OF_MONTH), 2) + "T" +
+                TimeUtil.pad0s(c.get(Calendar.HOUR_OF_DAY), 2) + ":" +
+                TimeUtil.pad0s(c.get(Calendar.MINUTE), 2) + ":" +
+                TimeUtil.pad0s(c.get(Calendar.SECOND), 2) + "Z";
+    }
+
+    private static Date calendarDeserialize(String str) {
+        Calendar c = new GregorianCalendar(TimeUtil.UTC, Locale.US);
+        c.set(Calendar.YEAR, Integer.parseInt(str.substring(0, 4)));
+        c.set(Calendar.MONTH, Integer.parseInt(str.substring(5, 7)) - 1);
+        c.set(Calendar.DAY_OF_MONTH, Integer.parseInt(str.substring(8, 10)));
+        c.set(Calendar.HOUR_OF_DAY, Integer.parseInt(str.substring(11, 13)));
+        c.set(Calendar.MINUTE, Integer.parseInt(str.substring(14, 16)));
+        c.set(Calendar.SECOND, Integer.parseInt(str.substring(17, 19)));
+        c.set(Calendar.MILLISECOND, 0);
+        return c.getTime();
+    }
 }
@@ -0,0 +1,70 @@
+package com.hanhuy.keepassj.stream;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import com.hanhuy.keepassj.ICipherEngine;
+import com.hanhuy.keepassj.JceAesEngine;
+import com.hanhuy.keepassj.StandardAesEngine;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class AesEngineCompat {
+
+	private static Random rand = new Random();
+
+	@Test
+	public void testJceMatchesBouncyCastle() throws IOException {
+		Assume.assumeTrue(JceAesEngine.IsSupported());
+
+		byte[] key = new byte[32];
+		byte[] iv = new byte[16];
+		rand.nextBytes(key);
+		rand.nextBytes(iv);
+
+		// Sizes around the block and internal buffer boundaries
+		for (int size : new int[] { 0, 1, 15, 16, 17, 65535, 65536, 65537, 200000 }) {
+			byte[] plain = new byte[size];
+			rand.nextBytes(plain);
+
+			byte[] bc = encrypt(new StandardAesEngine(), plain, key, iv);
+			byte[] jce = encrypt(new JceAesEngine(), plain, key, iv);
+			assertArrayEquals(bc, jce);
+
+			assertArrayEquals(plain, decrypt(new JceAesEngine(), bc, key, iv));
+			assertArrayEquals(plain, decrypt(new StandardAesEngine(), jce, key, iv));
+		}
+	}
+
+	private static byte[] encrypt(ICipherEngine engine, byte[] plain, byte[] key,
+			byte[] iv) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		OutputStream os = engine.EncryptStream(bos, key, iv);
+		// Uneven writes
+		int pos = 0;
+		while (pos < plain.length) {
+			int n = Math.min(plain.length - pos, 1 + rand.nextInt(70000));
+			os.write(plain, pos, n);
+			pos += n;
+		}
+		os.close();
+		return bos.toByteArray();
+	}
+
+	private static byte[] decrypt(ICipherEngine engine, byte[] enc, byte[] key,
+			byte[] iv) throws IOException {
+		InputStream is = engine.DecryptStream(new ByteArrayInputStream(enc), key, iv);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[1000];
+		int n;
+		while ((n = is.read(buf)) != -1) out.write(buf, 0, n);
+		is.close();
+		return out.toByteArray();
+	}
+}
@@ -108,4 +108,20 @@ public class HashedBlock {
 		
 		
 	}
+
+	@Test
+	public void testReadSingleBytes() throws IOException {
+		byte[] orig = new byte[3000];
+		rand.nextBytes(orig);
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		HashedBlockStream.Output output = new HashedBlockStream.Output(bos, 1024);
+		for (byte b : orig) output.write(b);
+		output.close();
+
+		HashedBlockStream.Input input = new HashedBlockStream.Input(
+				new ByteArrayInputStream(bos.toByteArray()), true);
+		for (byte b : orig) assertEquals(b & 0xff, input.read());
+		assertEquals(-1, input.read());
+	}
 }